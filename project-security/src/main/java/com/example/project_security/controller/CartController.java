@@ -1,5 +1,6 @@
 package com.example.project_security.controller;
 
+import java.util.Locale;
 import java.util.Map;
 
 import org.springframework.http.ResponseEntity;
@@ -11,13 +12,18 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.example.project_security.dto.CartDTO;
-import com.example.project_security.dto.UserDTO;
+import com.example.project_security.dto.request.CartOperationsDTO;
 import com.example.project_security.dto.request.UpdateCartItemDTO;
 import com.example.project_security.dto.response.AddToCartDTO;
+import com.example.project_security.service.AbandonedCartSweeper;
+import com.example.project_security.service.CartChange;
+import com.example.project_security.service.CartCountCache;
 import com.example.project_security.service.CartService;
 import com.example.project_security.service.UserService;
 
@@ -29,6 +35,8 @@ import lombok.RequiredArgsConstructor;
 /**
  * REST Controller per la gestione del carrello della spesa.
  * Gestisce l'aggiunta, rimozione e aggiornamento degli articoli nel carrello.
+ * Le modifiche restituiscono il carrello completo oppure, su richiesta del client,
+ * solo la variazione con la nuova versione del carrello.
  */
 @RestController
 @RequestMapping("/api/cart")
@@ -37,8 +45,12 @@ import lombok.RequiredArgsConstructor;
 @Tag(name = "Shopping Cart", description = "API per la gestione del carrello")
 public class CartController {
 
+    private static final String VIEW_DELTA = "delta";
+    private static final String PREFER_MINIMAL = "return=minimal";
+
     private final CartService cartService;
     private final UserService userService;
+    private final AbandonedCartSweeper abandonedCartSweeper;
 
     /**
      * Recupera il carrello attivo dell'utente corrente
@@ -56,12 +68,13 @@ public class CartController {
      */
     @PostMapping("/items")
     @Operation(summary = "Aggiunge un prodotto al carrello")
-    public ResponseEntity<CartDTO> addToCart(
+    public ResponseEntity<?> addToCart(
             Authentication authentication,
-            @Valid @RequestBody AddToCartDTO addToCartDTO) {
+            @Valid @RequestBody AddToCartDTO addToCartDTO,
+            @RequestHeader(value = "Prefer", required = false) String prefer,
+            @RequestParam(required = false) String view) {
         Long userId = getUserId(authentication);
-        CartDTO updatedCart = cartService.addToCart(userId, addToCartDTO);
-        return ResponseEntity.ok(updatedCart);
+        return respond(cartService.addToCart(userId, addToCartDTO), prefer, view);
     }
 
     /**
@@ -69,13 +82,14 @@ public class CartController {
      */
     @PutMapping("/items/{itemId}")
     @Operation(summary = "Aggiorna la quantità di un item nel carrello")
-    public ResponseEntity<CartDTO> updateCartItem(
+    public ResponseEntity<?> updateCartItem(
             Authentication authentication,
             @PathVariable Long itemId,
-            @Valid @RequestBody UpdateCartItemDTO updateDTO) {
+            @Valid @RequestBody UpdateCartItemDTO updateDTO,
+            @RequestHeader(value = "Prefer", required = false) String prefer,
+            @RequestParam(required = false) String view) {
         Long userId = getUserId(authentication);
-        CartDTO updatedCart = cartService.updateCartItem(userId, itemId, updateDTO);
-        return ResponseEntity.ok(updatedCart);
+        return respond(cartService.updateCartItem(userId, itemId, updateDTO), prefer, view);
     }
 
     /**
@@ -83,12 +97,56 @@ public class CartController {
      */
     @DeleteMapping("/items/{itemId}")
     @Operation(summary = "Rimuove un item dal carrello")
-    public ResponseEntity<CartDTO> removeFromCart(
+    public ResponseEntity<?> removeFromCart(
+            Authentication authentication,
+            @PathVariable Long itemId,
+            @RequestHeader(value = "Prefer", required = false) String prefer,
+            @RequestParam(required = false) String view) {
+        Long userId = getUserId(authentication);
+        return respond(cartService.removeFromCart(userId, itemId), prefer, view);
+    }
+
+    /**
+     * Aggiorna la quantità di un prodotto nel carrello
+     */
+    @PutMapping("/products/{productId}")
+    @Operation(summary = "Aggiorna la quantità di un prodotto nel carrello")
+    public ResponseEntity<?> updateCartProduct(
+            Authentication authentication,
+            @PathVariable Long productId,
+            @Valid @RequestBody UpdateCartItemDTO updateDTO,
+            @RequestHeader(value = "Prefer", required = false) String prefer,
+            @RequestParam(required = false) String view) {
+        Long userId = getUserId(authentication);
+        return respond(cartService.updateCartProduct(userId, productId, updateDTO), prefer, view);
+    }
+
+    /**
+     * Rimuove un prodotto dal carrello
+     */
+    @DeleteMapping("/products/{productId}")
+    @Operation(summary = "Rimuove un prodotto dal carrello")
+    public ResponseEntity<?> removeProductFromCart(
             Authentication authentication,
-            @PathVariable Long itemId) {
+            @PathVariable Long productId,
+            @RequestHeader(value = "Prefer", required = false) String prefer,
+            @RequestParam(required = false) String view) {
         Long userId = getUserId(authentication);
-        CartDTO updatedCart = cartService.removeFromCart(userId, itemId);
-        return ResponseEntity.ok(updatedCart);
+        return respond(cartService.removeProductFromCart(userId, productId), prefer, view);
+    }
+
+    /**
+     * Applica in blocco più modifiche al carrello e restituisce il carrello finale
+     */
+    @PostMapping("/operations")
+    @Operation(summary = "Applica in blocco aggiunte, modifiche e rimozioni al carrello")
+    public ResponseEntity<?> applyCartOperations(
+            Authentication authentication,
+            @Valid @RequestBody CartOperationsDTO operationsDTO,
+            @RequestHeader(value = "Prefer", required = false) String prefer,
+            @RequestParam(required = false) String view) {
+        Long userId = getUserId(authentication);
+        return respond(cartService.applyCartOperations(userId, operationsDTO), prefer, view);
     }
 
     /**
@@ -114,22 +172,46 @@ public class CartController {
     }
 
     /**
-     * Conta gli item nel carrello
+     * Conta gli item nel carrello (righe e quantità totale), di norma senza accessi al database
      */
     @GetMapping("/count")
     @Operation(summary = "Conta il numero di item nel carrello")
     public ResponseEntity<Map<String, Long>> countCartItems(Authentication authentication) {
         Long userId = getUserId(authentication);
-        long count = cartService.countItemsInCart(userId);
-        return ResponseEntity.ok(Map.of("count", count));
+        CartCountCache.CartCount count = cartService.countItemsInCart(userId);
+        return ResponseEntity.ok(Map.of("count", (long) count.lines(), "quantity", (long) count.quantity()));
+    }
+
+    /**
+     * Avanzamento della ricerca dei carrelli abbandonati (admin)
+     */
+    @GetMapping("/abandoned/progress")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Avanzamento della ricerca dei carrelli abbandonati")
+    public ResponseEntity<AbandonedCartSweeper.Progress> getAbandonedCartProgress() {
+        return ResponseEntity.ok(abandonedCartSweeper.progress());
+    }
+
+    /**
+     * Risposta di una modifica: carrello completo, oppure solo la variazione se il client
+     * la chiede con ?view=delta o con l'header Prefer: return=minimal (RFC 7240)
+     */
+    private ResponseEntity<?> respond(CartChange change, String prefer, String view) {
+        if (VIEW_DELTA.equalsIgnoreCase(view)) {
+            return ResponseEntity.ok(cartService.toDeltaDTO(change));
+        }
+        if (prefer != null && prefer.toLowerCase(Locale.ROOT).contains(PREFER_MINIMAL)) {
+            return ResponseEntity.ok()
+                    .header("Preference-Applied", PREFER_MINIMAL)
+                    .body(cartService.toDeltaDTO(change));
+        }
+        return ResponseEntity.ok(cartService.toCartDTO(change));
     }
 
     /**
      * Metodo helper per ottenere l'ID utente dall'autenticazione
      */
     private Long getUserId(Authentication authentication) {
-        String email = authentication.getName();
-        UserDTO user = userService.getUserByEmail(email);
-        return user.getId();
+        return userService.getUserIdByEmail(authentication.getName());
     }
 }
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.example.project_security.controller;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.WebRequest;
+
+/**
+ * Supporto alle GET condizionali sulle risposte pubbliche del catalogo.
+ * Se l'If-None-Match del client coincide con l'ETag calcolato dalla mappa
+ * delle versioni si risponde 304 senza caricare il body.
+ */
+@Component
+public class CatalogHttpCache {
+
+    private final CacheControl cacheControl;
+
+    public CatalogHttpCache(@Value("${silkroad.catalog.cache-control.max-age-seconds:0}") long maxAgeSeconds) {
+        this.cacheControl = maxAgeSeconds > 0
+                ? CacheControl.maxAge(Duration.ofSeconds(maxAgeSeconds)).cachePublic()
+                : CacheControl.noCache().cachePublic();
+    }
+
+    /**
+     * Risponde 304 se l'ETag corrisponde, altrimenti 200 con il body prodotto dal supplier
+     */
+    public <T> ResponseEntity<T> conditional(WebRequest request, String etag, Supplier<T> body) {
+        if (request.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+        }
+        return ResponseEntity.ok().eTag(etag).cacheControl(cacheControl).body(body.get());
+    }
+}
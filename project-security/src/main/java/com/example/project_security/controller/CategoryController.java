@@ -14,12 +14,16 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import com.example.project_security.dto.CategoryDTO;
 import com.example.project_security.dto.request.CreateCategoryDTO;
+import com.example.project_security.dto.request.ReorderCategoriesDTO;
 import com.example.project_security.dto.request.UpdateCategoryDTO;
 import com.example.project_security.dto.response.CategoryTreeDTO;
+import com.example.project_security.service.CatalogVersionService;
 import com.example.project_security.service.CategoryService;
 
 import io.swagger.v3.oas.annotations.Operation;
@@ -38,15 +42,17 @@ import lombok.RequiredArgsConstructor;
 public class CategoryController {
 
     private final CategoryService categoryService;
+    private final CatalogVersionService catalogVersionService;
+    private final CatalogHttpCache catalogHttpCache;
 
     /**
      * Recupera tutte le categorie attive
      */
     @GetMapping
     @Operation(summary = "Recupera tutte le categorie attive")
-    public ResponseEntity<List<CategoryDTO>> getAllCategories() {
-        List<CategoryDTO> categories = categoryService.getAllActiveCategories();
-        return ResponseEntity.ok(categories);
+    public ResponseEntity<List<CategoryDTO>> getAllCategories(WebRequest request) {
+        return catalogHttpCache.conditional(request, catalogVersionService.categoryETag(),
+                categoryService::getAllActiveCategories);
     }
 
     /**
@@ -54,9 +60,9 @@ public class CategoryController {
      */
     @GetMapping("/tree")
     @Operation(summary = "Recupera l'albero gerarchico delle categorie")
-    public ResponseEntity<List<CategoryTreeDTO>> getCategoryTree() {
-        List<CategoryTreeDTO> categoryTree = categoryService.getCategoryTree();
-        return ResponseEntity.ok(categoryTree);
+    public ResponseEntity<List<CategoryTreeDTO>> getCategoryTree(WebRequest request) {
+        return catalogHttpCache.conditional(request, catalogVersionService.categoryETag(),
+                categoryService::getCategoryTree);
     }
 
     /**
@@ -64,9 +70,9 @@ public class CategoryController {
      */
     @GetMapping("/roots")
     @Operation(summary = "Recupera le categorie radice")
-    public ResponseEntity<List<CategoryDTO>> getRootCategories() {
-        List<CategoryDTO> rootCategories = categoryService.getRootCategories();
-        return ResponseEntity.ok(rootCategories);
+    public ResponseEntity<List<CategoryDTO>> getRootCategories(WebRequest request) {
+        return catalogHttpCache.conditional(request, catalogVersionService.categoryETag(),
+                categoryService::getRootCategories);
     }
 
     /**
@@ -74,9 +80,9 @@ public class CategoryController {
      */
     @GetMapping("/{id}")
     @Operation(summary = "Recupera una categoria specifica per ID")
-    public ResponseEntity<CategoryDTO> getCategoryById(@PathVariable Long id) {
-        CategoryDTO category = categoryService.getCategoryById(id);
-        return ResponseEntity.ok(category);
+    public ResponseEntity<CategoryDTO> getCategoryById(@PathVariable Long id, WebRequest request) {
+        return catalogHttpCache.conditional(request, catalogVersionService.categoryETag(),
+                () -> categoryService.getCategoryById(id));
     }
 
     /**
@@ -84,9 +90,9 @@ public class CategoryController {
      */
     @GetMapping("/name/{name}")
     @Operation(summary = "Recupera una categoria per nome")
-    public ResponseEntity<CategoryDTO> getCategoryByName(@PathVariable String name) {
-        CategoryDTO category = categoryService.getCategoryByName(name);
-        return ResponseEntity.ok(category);
+    public ResponseEntity<CategoryDTO> getCategoryByName(@PathVariable String name, WebRequest request) {
+        return catalogHttpCache.conditional(request, catalogVersionService.categoryETag(),
+                () -> categoryService.getCategoryByName(name));
     }
 
     /**
@@ -94,9 +100,9 @@ public class CategoryController {
      */
     @GetMapping("/{id}/subcategories")
     @Operation(summary = "Recupera le sottocategorie di una categoria")
-    public ResponseEntity<List<CategoryDTO>> getSubcategories(@PathVariable Long id) {
-        List<CategoryDTO> subcategories = categoryService.getSubcategories(id);
-        return ResponseEntity.ok(subcategories);
+    public ResponseEntity<List<CategoryDTO>> getSubcategories(@PathVariable Long id, WebRequest request) {
+        return catalogHttpCache.conditional(request, catalogVersionService.categoryETag(),
+                () -> categoryService.getSubcategories(id));
     }
 
     /**
@@ -104,9 +110,9 @@ public class CategoryController {
      */
     @GetMapping("/{id}/path")
     @Operation(summary = "Recupera il percorso completo di una categoria")
-    public ResponseEntity<List<CategoryDTO>> getCategoryPath(@PathVariable Long id) {
-        List<CategoryDTO> path = categoryService.getCategoryPath(id);
-        return ResponseEntity.ok(path);
+    public ResponseEntity<List<CategoryDTO>> getCategoryPath(@PathVariable Long id, WebRequest request) {
+        return catalogHttpCache.conditional(request, catalogVersionService.categoryETag(),
+                () -> categoryService.getCategoryPath(id));
     }
 
     /**
@@ -114,9 +120,9 @@ public class CategoryController {
      */
     @GetMapping("/with-products")
     @Operation(summary = "Recupera solo le categorie che contengono prodotti attivi")
-    public ResponseEntity<List<CategoryDTO>> getCategoriesWithProducts() {
-        List<CategoryDTO> categories = categoryService.getCategoriesWithProducts();
-        return ResponseEntity.ok(categories);
+    public ResponseEntity<List<CategoryDTO>> getCategoriesWithProducts(WebRequest request) {
+        return catalogHttpCache.conditional(request, catalogVersionService.categoryETag(),
+                categoryService::getCategoriesWithProducts);
     }
 
     /**
@@ -124,9 +130,9 @@ public class CategoryController {
      */
     @GetMapping("/product-count")
     @Operation(summary = "Conta i prodotti attivi per ogni categoria")
-    public ResponseEntity<List<Object[]>> getProductCountByCategory() {
-        List<Object[]> counts = categoryService.getProductCountByCategory();
-        return ResponseEntity.ok(counts);
+    public ResponseEntity<List<Object[]>> getProductCountByCategory(WebRequest request) {
+        return catalogHttpCache.conditional(request, catalogVersionService.categoryETag(),
+                categoryService::getProductCountByCategory);
     }
 
     // ===== ADMIN ENDPOINTS =====
@@ -161,11 +167,38 @@ public class CategoryController {
     @PatchMapping("/{id}/toggle-status")
     @PreAuthorize("hasRole('ADMIN')")
     @Operation(summary = "Attiva/disattiva una categoria (solo admin)")
-    public ResponseEntity<CategoryDTO> toggleCategoryStatus(@PathVariable Long id) {
-        CategoryDTO updatedCategory = categoryService.toggleCategoryStatus(id);
+    public ResponseEntity<CategoryDTO> toggleCategoryStatus(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "false") boolean includeProducts) {
+        CategoryDTO updatedCategory = categoryService.toggleCategoryStatus(id, includeProducts);
         return ResponseEntity.ok(updatedCategory);
     }
 
+    /**
+     * Attiva o disattiva una categoria con tutte le sottocategorie (solo admin)
+     */
+    @PatchMapping("/{id}/subtree-status")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Attiva o disattiva una categoria con tutte le sottocategorie (solo admin)")
+    public ResponseEntity<CategoryDTO> setSubtreeStatus(
+            @PathVariable Long id,
+            @RequestParam boolean active,
+            @RequestParam(defaultValue = "false") boolean includeProducts) {
+        CategoryDTO updatedCategory = categoryService.setSubtreeStatus(id, active, includeProducts);
+        return ResponseEntity.ok(updatedCategory);
+    }
+
+    /**
+     * Aggiorna in blocco l'ordine di visualizzazione delle categorie (solo admin)
+     */
+    @PutMapping("/display-order")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Aggiorna in blocco l'ordine di visualizzazione delle categorie (solo admin)")
+    public ResponseEntity<Map<String, Integer>> reorderCategories(@Valid @RequestBody ReorderCategoriesDTO reorderDTO) {
+        int updated = categoryService.reorderCategories(reorderDTO);
+        return ResponseEntity.ok(Map.of("updated", updated));
+    }
+
     /**
      * Elimina una categoria (solo admin)
      */
@@ -1,6 +1,7 @@
 package com.example.project_security.controller;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Map;
@@ -24,7 +25,9 @@ import com.example.project_security.dto.OrderDTO;
 import com.example.project_security.dto.UserDTO;
 import com.example.project_security.dto.request.CreateOrderDTO;
 import com.example.project_security.dto.request.UpdateOrderStatusDTO;
+import com.example.project_security.dto.response.BestSellerDTO;
 import com.example.project_security.model.OrderStatus;
+import com.example.project_security.service.BestSellerService;
 import com.example.project_security.service.OrderService;
 import com.example.project_security.service.UserService;
 
@@ -46,6 +49,7 @@ public class OrderController {
 
     private final OrderService orderService;
     private final UserService userService;
+    private final BestSellerService bestSellerService;
 
     /**
      * Crea un nuovo ordine dal carrello corrente
@@ -219,6 +223,20 @@ public class OrderController {
         return ResponseEntity.ok(report);
     }
 
+    /**
+     * Classifica dei prodotti più venduti in un periodo (solo admin)
+     */
+    @GetMapping("/reports/top-products")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Classifica dei prodotti più venduti in un periodo (solo admin)")
+    public ResponseEntity<List<BestSellerDTO>> getTopSellingProducts(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "10") int limit) {
+        List<BestSellerDTO> topProducts = bestSellerService.getBestSellersBetween(startDate, endDate, limit);
+        return ResponseEntity.ok(topProducts);
+    }
+
     /**
      * Metodo helper per ottenere l'ID utente dall'autenticazione
      */
@@ -1,9 +1,13 @@
 package com.example.project_security.controller;
 
+import java.time.Duration;
+import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Map;
 
 import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -17,12 +21,24 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.context.request.WebRequest;
 
 import com.example.project_security.dto.ProductDTO;
 import com.example.project_security.dto.request.CreateProductDTO;
+import com.example.project_security.dto.request.UpdatePricesDTO;
 import com.example.project_security.dto.request.UpdateProductDTO;
+import com.example.project_security.dto.response.BestSellerDTO;
+import com.example.project_security.dto.response.ProductBatchDTO;
 import com.example.project_security.dto.response.ProductFilterDTO;
+import com.example.project_security.dto.response.ProductSuggestionDTO;
+import com.example.project_security.dto.response.TrendingProductDTO;
+import com.example.project_security.service.BestSellerService;
+import com.example.project_security.service.CatalogExportService;
+import com.example.project_security.service.CatalogVersionService;
 import com.example.project_security.service.ProductService;
+import com.example.project_security.service.TrendingService;
+import com.example.project_security.service.TypeaheadService;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -39,20 +55,30 @@ import lombok.RequiredArgsConstructor;
 @Tag(name = "Product Management", description = "API per la gestione dei prodotti")
 public class ProductController {
 
+    private static final String CATALOG_WATERMARK_HEADER = "X-Catalog-Watermark";
+    private static final Duration CATALOG_WATERMARK_OVERLAP = Duration.ofSeconds(30);
+
     private final ProductService productService;
+    private final BestSellerService bestSellerService;
+    private final CatalogExportService catalogExportService;
+    private final CatalogVersionService catalogVersionService;
+    private final CatalogHttpCache catalogHttpCache;
+    private final TrendingService trendingService;
+    private final TypeaheadService typeaheadService;
 
     /**
      * Recupera tutti i prodotti attivi con paginazione
      */
     @GetMapping
-    @Operation(summary = "Recupera tutti i prodotti attivi con paginazione")
+    @Operation(summary = "Recupera tutti i prodotti attivi con paginazione (sortBy=popularity per i più venduti)")
     public ResponseEntity<Page<ProductDTO>> getAllProducts(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size,
             @RequestParam(defaultValue = "name") String sortBy,
-            @RequestParam(defaultValue = "ASC") String sortDirection) {
-        Page<ProductDTO> products = productService.getAllActiveProducts(page, size, sortBy, sortDirection);
-        return ResponseEntity.ok(products);
+            @RequestParam(defaultValue = "ASC") String sortDirection,
+            WebRequest request) {
+        return catalogHttpCache.conditional(request, catalogVersionService.catalogETag(),
+                () -> productService.getAllActiveProducts(page, size, sortBy, sortDirection));
     }
 
     /**
@@ -60,9 +86,32 @@ public class ProductController {
      */
     @GetMapping("/{id}")
     @Operation(summary = "Recupera un prodotto specifico per ID")
-    public ResponseEntity<ProductDTO> getProductById(@PathVariable Long id) {
-        ProductDTO product = productService.getProductById(id);
-        return ResponseEntity.ok(product);
+    public ResponseEntity<ProductDTO> getProductById(@PathVariable Long id, WebRequest request) {
+        ResponseEntity<ProductDTO> response = catalogHttpCache.conditional(request,
+                catalogVersionService.productETag(id), () -> productService.getProductById(id));
+        trendingService.recordView(id);
+        return response;
+    }
+
+    /**
+     * Recupera più prodotti per ID in un'unica richiesta
+     */
+    @GetMapping("/batch")
+    @Operation(summary = "Recupera più prodotti per ID (ordine preservato, id mancanti in 'missing')")
+    public ResponseEntity<ProductBatchDTO<Long>> getProductsByIds(@RequestParam List<Long> ids, WebRequest request) {
+        return catalogHttpCache.conditional(request, catalogVersionService.catalogETag(),
+                () -> productService.getProductsByIds(ids));
+    }
+
+    /**
+     * Recupera più prodotti per SKU in un'unica richiesta
+     */
+    @GetMapping("/batch/sku")
+    @Operation(summary = "Recupera più prodotti per SKU (ordine preservato, SKU mancanti in 'missing')")
+    public ResponseEntity<ProductBatchDTO<String>> getProductsBySkus(@RequestParam List<String> skus,
+            WebRequest request) {
+        return catalogHttpCache.conditional(request, catalogVersionService.catalogETag(),
+                () -> productService.getProductsBySkus(skus));
     }
 
     /**
@@ -70,9 +119,9 @@ public class ProductController {
      */
     @GetMapping("/sku/{sku}")
     @Operation(summary = "Recupera un prodotto per SKU")
-    public ResponseEntity<ProductDTO> getProductBySku(@PathVariable String sku) {
-        ProductDTO product = productService.getProductBySku(sku);
-        return ResponseEntity.ok(product);
+    public ResponseEntity<ProductDTO> getProductBySku(@PathVariable String sku, WebRequest request) {
+        return catalogHttpCache.conditional(request, catalogVersionService.catalogETag(),
+                () -> productService.getProductBySku(sku));
     }
 
     /**
@@ -83,22 +132,39 @@ public class ProductController {
     public ResponseEntity<Page<ProductDTO>> searchProductsByName(
             @RequestParam String name,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
-        Page<ProductDTO> products = productService.searchProductsByName(name, page, size);
-        return ResponseEntity.ok(products);
+            @RequestParam(defaultValue = "20") int size,
+            WebRequest request) {
+        return catalogHttpCache.conditional(request, catalogVersionService.catalogETag(),
+                () -> productService.searchProductsByName(name, page, size));
+    }
+
+    /**
+     * Suggerimenti di autocompletamento per il box di ricerca
+     */
+    @GetMapping("/autocomplete")
+    @Operation(summary = "Suggerisce prodotti per prefisso di nome o SKU, dai più venduti")
+    public ResponseEntity<List<ProductSuggestionDTO>> autocomplete(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "8") int limit) {
+        List<ProductSuggestionDTO> suggestions = typeaheadService.suggest(q, limit);
+        return ResponseEntity.ok(suggestions);
     }
 
     /**
      * Ricerca avanzata prodotti
      */
     @GetMapping("/search/advanced")
-    @Operation(summary = "Ricerca avanzata prodotti con keyword")
+    @Operation(summary = "Ricerca avanzata prodotti con keyword (fuzzy=true per tollerare errori di battitura)")
     public ResponseEntity<Page<ProductDTO>> searchProducts(
             @RequestParam String keyword,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
-        Page<ProductDTO> products = productService.searchProducts(keyword, page, size);
-        return ResponseEntity.ok(products);
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean fuzzy,
+            WebRequest request) {
+        return catalogHttpCache.conditional(request, catalogVersionService.catalogETag(),
+                () -> fuzzy
+                        ? productService.fuzzySearchProducts(keyword, page, size)
+                        : productService.searchProducts(keyword, page, size));
     }
 
     /**
@@ -112,16 +178,40 @@ public class ProductController {
     }
 
     /**
-     * Recupera prodotti per categoria
+     * Recupera prodotti per categoria, opzionalmente con tutte le sottocategorie
      */
     @GetMapping("/category/{categoryId}")
     @Operation(summary = "Recupera prodotti per categoria")
     public ResponseEntity<Page<ProductDTO>> getProductsByCategory(
             @PathVariable Long categoryId,
+            @RequestParam(defaultValue = "false") boolean includeSubcategories,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
-        Page<ProductDTO> products = productService.getProductsByCategory(categoryId, page, size);
-        return ResponseEntity.ok(products);
+            @RequestParam(defaultValue = "20") int size,
+            WebRequest request) {
+        return catalogHttpCache.conditional(request, catalogVersionService.catalogETag(),
+                () -> productService.getProductsByCategory(categoryId, includeSubcategories, page, size));
+    }
+
+    /**
+     * Recupera i prodotti più venduti
+     */
+    @GetMapping("/best-sellers")
+    @Operation(summary = "Recupera i prodotti più venduti")
+    public ResponseEntity<List<BestSellerDTO>> getBestSellers(
+            @RequestParam(defaultValue = "10") int limit) {
+        List<BestSellerDTO> bestSellers = bestSellerService.getBestSellers(limit);
+        return ResponseEntity.ok(bestSellers);
+    }
+
+    /**
+     * Recupera i prodotti di tendenza (più visualizzati di recente)
+     */
+    @GetMapping("/trending")
+    @Operation(summary = "Recupera i prodotti di tendenza in base alle visualizzazioni recenti")
+    public ResponseEntity<List<TrendingProductDTO>> getTrendingProducts(
+            @RequestParam(defaultValue = "10") int limit) {
+        List<TrendingProductDTO> trending = trendingService.getTrendingProducts(limit);
+        return ResponseEntity.ok(trending);
     }
 
     /**
@@ -131,7 +221,7 @@ public class ProductController {
     @PreAuthorize("hasRole('ADMIN')")
     @Operation(summary = "Recupera prodotti con stock basso (solo admin)")
     public ResponseEntity<List<ProductDTO>> getLowStockProducts(
-            @RequestParam(defaultValue = "10") int threshold) {
+            @RequestParam(required = false) Integer threshold) {
         List<ProductDTO> products = productService.getLowStockProducts(threshold);
         return ResponseEntity.ok(products);
     }
@@ -147,6 +237,24 @@ public class ProductController {
         return ResponseEntity.ok(products);
     }
 
+    /**
+     * Esporta il catalogo in NDJSON compresso gzip, in streaming (solo admin).
+     * L'header X-Catalog-Watermark va passato come updatedSince all'esportazione successiva.
+     */
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Esporta il catalogo in NDJSON gzip, completo o incrementale da updatedSince (solo admin)")
+    public ResponseEntity<StreamingResponseBody> exportCatalog(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime updatedSince) {
+        // Sovrapposizione per includere le transazioni ancora aperte all'avvio dell'esportazione
+        ZonedDateTime watermark = ZonedDateTime.now().minus(CATALOG_WATERMARK_OVERLAP);
+        StreamingResponseBody body = out -> catalogExportService.exportCatalog(updatedSince, out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .header(CATALOG_WATERMARK_HEADER, watermark.toString())
+                .body(body);
+    }
+
     // ===== ADMIN ENDPOINTS =====
 
     /**
@@ -173,6 +281,16 @@ public class ProductController {
         return ResponseEntity.ok(updatedProduct);
     }
 
+    /**
+     * Aggiorna in blocco il prezzo di più prodotti (solo admin)
+     */
+    @PatchMapping("/prices")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Aggiorna in blocco il prezzo di più prodotti (solo admin)")
+    public ResponseEntity<List<ProductDTO>> updatePrices(@Valid @RequestBody UpdatePricesDTO pricesDTO) {
+        return ResponseEntity.ok(productService.updatePrices(pricesDTO));
+    }
+
     /**
      * Aggiorna lo stock di un prodotto (solo admin)
      */
@@ -207,6 +325,23 @@ public class ProductController {
         return ResponseEntity.ok(updatedProduct);
     }
 
+    /**
+     * Attiva/disattiva la modalità hot dello stock di un prodotto (solo admin)
+     */
+    @PatchMapping("/{id}/hot-mode")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Attiva/disattiva la gestione in memoria dello stock per un prodotto (solo admin)")
+    public ResponseEntity<ProductDTO> setHotMode(
+            @PathVariable Long id,
+            @RequestBody Map<String, Boolean> hotModeData) {
+        Boolean enabled = hotModeData.get("enabled");
+        if (enabled == null) {
+            return ResponseEntity.badRequest().body(null);
+        }
+        ProductDTO updatedProduct = productService.setHotMode(id, enabled);
+        return ResponseEntity.ok(updatedProduct);
+    }
+
     /**
      * Attiva/disattiva un prodotto (solo admin)
      */
@@ -17,6 +17,10 @@ import java.util.List;
 public class CartDTO {
     private Long id;
     private Long userId;
+    /**
+     * Versione del contenuto, incrementata a ogni modifica delle righe
+     */
+    private long version;
     private List<CartItemDTO> items;
     private Integer totalItems;
     private BigDecimal totalPrice;
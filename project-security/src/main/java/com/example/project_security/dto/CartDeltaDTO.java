@@ -0,0 +1,43 @@
+package com.example.project_security.dto;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO ridotto restituito da una modifica del carrello quando il client lo richiede
+ * (Prefer: return=minimal oppure ?view=delta): solo le righe toccate, i totali e la
+ * versione. Il client ricarica il carrello completo solo se la sua versione è superata.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CartDeltaDTO {
+    private Long id;
+    private long version;
+    private List<Line> changedItems;
+    private List<Long> removedProductIds;
+    private Integer itemCount;
+    private Integer totalItems;
+    private BigDecimal totalPrice;
+
+    /**
+     * Riga modificata, senza i dati del prodotto che il client ha già
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class Line {
+        private Long id;
+        private Long productId;
+        private Integer quantity;
+        private BigDecimal unitPrice;
+        private BigDecimal subtotal;
+    }
+}
@@ -22,5 +22,9 @@ public class CategoryDTO {
     private Long parentCategoryId;
     private String parentCategoryName;
     private long productCount;
+    /**
+     * Prodotti attivi della categoria e delle sottocategorie attive
+     */
+    private long totalProductCount;
     private boolean hasSubcategories;
 }
@@ -12,7 +12,7 @@ import java.math.BigDecimal;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 public class ProductDTO {
     private Long id;
     private String name;
@@ -25,4 +25,6 @@ public class ProductDTO {
     private String categoryName;
     private boolean isActive;
     private boolean isAvailable;
+    private boolean isHot;
+    private Integer lowStockThreshold;
 }
@@ -0,0 +1,57 @@
+package com.example.project_security.dto.request;
+
+import java.util.List;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO per applicare in blocco più modifiche al carrello (sincronizzazione, riordino)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CartOperationsDTO {
+
+    @NotEmpty(message = "Specificare almeno un'operazione")
+    @Size(max = 200, message = "Massimo 200 operazioni per richiesta")
+    private List<@Valid Operation> operations;
+
+    /**
+     * Tipo di modifica: ADD somma la quantità, SET la sostituisce, REMOVE toglie il prodotto
+     */
+    public enum Type {
+        ADD, SET, REMOVE
+    }
+
+    /**
+     * Singola modifica, applicata nell'ordine in cui compare
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Operation {
+
+        @NotNull(message = "Il tipo di operazione è obbligatorio")
+        private Type type;
+
+        @NotNull(message = "L'ID del prodotto è obbligatorio")
+        @Positive(message = "L'ID del prodotto deve essere positivo")
+        private Long productId;
+
+        // Obbligatoria per ADD e SET, ignorata per REMOVE
+        @Min(value = 1, message = "La quantità minima è 1")
+        @Max(value = 100, message = "La quantità massima è 100")
+        private Integer quantity;
+    }
+}
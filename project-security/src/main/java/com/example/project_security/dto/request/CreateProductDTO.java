@@ -48,4 +48,7 @@ public class CreateProductDTO {
     private String imageUrl;
 
     private Long categoryId;
+
+    @Min(value = 0, message = "La soglia di stock basso non può essere negativa")
+    private Integer lowStockThreshold;
 }
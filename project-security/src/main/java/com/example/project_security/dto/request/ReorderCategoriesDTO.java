@@ -0,0 +1,41 @@
+package com.example.project_security.dto.request;
+
+import java.util.List;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO per aggiornare in blocco l'ordine di visualizzazione delle categorie
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReorderCategoriesDTO {
+
+    @NotEmpty(message = "Specificare almeno una categoria")
+    @Size(max = 1000, message = "Massimo 1000 categorie per richiesta")
+    private List<@Valid Item> items;
+
+    /**
+     * Nuovo ordine di una singola categoria
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+
+        @NotNull(message = "L'ID della categoria è obbligatorio")
+        private Long id;
+
+        @NotNull(message = "L'ordine di visualizzazione è obbligatorio")
+        private Integer displayOrder;
+    }
+}
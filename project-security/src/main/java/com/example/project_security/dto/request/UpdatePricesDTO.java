@@ -0,0 +1,46 @@
+package com.example.project_security.dto.request;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO per aggiornare in blocco il prezzo di più prodotti
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UpdatePricesDTO {
+
+    @NotEmpty(message = "Specificare almeno un prodotto")
+    @Size(max = 1000, message = "Massimo 1000 prodotti per richiesta")
+    private List<@Valid Item> items;
+
+    /**
+     * Nuovo prezzo di un singolo prodotto
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+
+        @NotNull(message = "L'ID del prodotto è obbligatorio")
+        private Long id;
+
+        @NotNull(message = "Il prezzo è obbligatorio")
+        @DecimalMin(value = "0.01", message = "Il prezzo minimo è 0.01")
+        @DecimalMax(value = "999999.99", message = "Il prezzo massimo è 999999.99")
+        private BigDecimal price;
+    }
+}
@@ -4,6 +4,7 @@ import java.math.BigDecimal;
 
 import jakarta.validation.constraints.DecimalMax;
 import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.Size;
 import lombok.AllArgsConstructor;
@@ -38,4 +39,7 @@ public class UpdateProductDTO {
     private String imageUrl;
 
     private Long categoryId;
+
+    @Min(value = 0, message = "La soglia di stock basso non può essere negativa")
+    private Integer lowStockThreshold;
 }
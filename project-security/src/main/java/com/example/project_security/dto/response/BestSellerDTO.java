@@ -0,0 +1,24 @@
+package com.example.project_security.dto.response;
+
+import java.math.BigDecimal;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO per la classifica dei prodotti più venduti
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BestSellerDTO {
+    private Long productId;
+    private String productName;
+    private String productSku;
+    private String productImageUrl;
+    private BigDecimal price;
+    private long unitsSold;
+}
@@ -20,5 +20,9 @@ public class CategoryTreeDTO {
     private String description;
     private String imageUrl;
     private long productCount;
+    /**
+     * Prodotti attivi della categoria e delle sottocategorie attive
+     */
+    private long totalProductCount;
     private List<CategoryTreeDTO> children;
 }
@@ -0,0 +1,23 @@
+package com.example.project_security.dto.response;
+
+import java.util.List;
+
+import com.example.project_security.dto.ProductDTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO per il recupero multiplo di prodotti: i prodotti trovati nell'ordine
+ * richiesto e le chiavi (id o SKU) che non corrispondono ad alcun prodotto
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductBatchDTO<K> {
+    private List<ProductDTO> products;
+    private List<K> missing;
+}
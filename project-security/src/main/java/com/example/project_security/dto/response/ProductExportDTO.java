@@ -0,0 +1,43 @@
+package com.example.project_security.dto.response;
+
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO di una riga dell'esportazione del catalogo (una riga NDJSON per prodotto)
+ */
+@Data
+@NoArgsConstructor
+public class ProductExportDTO {
+    private Long id;
+    private String name;
+    private String description;
+    private BigDecimal price;
+    private Integer stockQuantity;
+    private String sku;
+    private String imageUrl;
+    private Long categoryId;
+    private String categoryPath;
+    private boolean isActive;
+    private ZonedDateTime updatedAt;
+
+    /**
+     * Costruttore usato dalla constructor expression JPQL
+     */
+    public ProductExportDTO(Long id, String name, String description, BigDecimal price, Integer stockQuantity,
+            String sku, String imageUrl, Long categoryId, boolean isActive, ZonedDateTime updatedAt) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.price = price;
+        this.stockQuantity = stockQuantity;
+        this.sku = sku;
+        this.imageUrl = imageUrl;
+        this.categoryId = categoryId;
+        this.isActive = isActive;
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.project_security.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO per i suggerimenti di autocompletamento dei prodotti
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductSuggestionDTO {
+    private Long productId;
+    private String name;
+    private String sku;
+}
@@ -0,0 +1,24 @@
+package com.example.project_security.dto.response;
+
+import java.math.BigDecimal;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO per la classifica dei prodotti di tendenza
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TrendingProductDTO {
+    private Long productId;
+    private String productName;
+    private String productSku;
+    private String productImageUrl;
+    private BigDecimal price;
+    private double score;
+}
@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import lombok.*;
 
 import java.math.BigDecimal;
+import java.time.ZonedDateTime;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -39,8 +40,36 @@ public class Cart {
     @Column(name = "is_active", nullable = false)
     private boolean isActive = true;
 
+    /**
+     * Versione del contenuto, incrementata a ogni modifica delle righe
+     */
+    @Column(nullable = false)
+    private long version;
+
+    /**
+     * Data dell'ultima modifica del carrello, usata per riconoscere i carrelli abbandonati
+     */
+    @Column(name = "updated_at")
+    private ZonedDateTime updatedAt;
+
+    /**
+     * Data in cui il carrello è stato segnalato come abbandonato (null se non lo è).
+     * Si azzera alla prima modifica successiva
+     */
+    @Column(name = "abandoned_at")
+    private ZonedDateTime abandonedAt;
+
     // Metodi di utilità
 
+    /**
+     * Aggiorna la data di ultima modifica a ogni insert/update tramite entità
+     */
+    @PrePersist
+    @PreUpdate
+    protected void touchUpdatedAt() {
+        this.updatedAt = ZonedDateTime.now();
+    }
+
     /**
      * Aggiunge un item al carrello
      */
@@ -58,17 +87,15 @@ public class Cart {
     }
 
     /**
-     * Calcola il totale del carrello
+     * Calcola il totale del carrello, sommando in centesimi
      */
     @Transient
     public BigDecimal getTotalPrice() {
-        return cartItems.stream()
-                .map(item -> {
-                    BigDecimal price = item.getUnitPrice() != null ? item.getUnitPrice() : BigDecimal.ZERO;
-                    Integer quantity = item.getQuantity() != null ? item.getQuantity() : 0;
-                    return price.multiply(BigDecimal.valueOf(quantity));
-                })
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        long cents = 0;
+        for (CartItem item : cartItems) {
+            cents = Math.addExact(cents, item.getSubtotalAmount().cents());
+        }
+        return new Money(cents).toBigDecimal();
     }
 
     /**
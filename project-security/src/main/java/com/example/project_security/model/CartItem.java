@@ -56,9 +56,16 @@ public class CartItem {
      */
     @Transient
     public BigDecimal getSubtotal() {
-        BigDecimal safeUnitPrice = unitPrice != null ? unitPrice : BigDecimal.ZERO;
+        return getSubtotalAmount().toBigDecimal();
+    }
+
+    /**
+     * Subtotale in centesimi, per i totali calcolati in memoria
+     */
+    @Transient
+    public Money getSubtotalAmount() {
         int safeQuantity = quantity != null ? quantity : 0;
-        return safeUnitPrice.multiply(BigDecimal.valueOf(safeQuantity));
+        return unitPrice != null ? Money.of(unitPrice).times(safeQuantity) : Money.ZERO;
     }
 
     /**
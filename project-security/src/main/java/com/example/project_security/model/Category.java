@@ -120,6 +120,8 @@ public class Category {
     /**
      * Conta il numero di prodotti attivi in questa categoria
      * FIX: Aggiunto controllo null per evitare NullPointerException
+     * Inizializza l'intera collezione products: nei service usare
+     * CategoryRepository.countActiveProducts
      */
     @Transient
     public long getActiveProductCount() {
@@ -0,0 +1,48 @@
+package com.example.project_security.model;
+
+import java.io.Serializable;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Riga della closure table della gerarchia delle categorie: una per ogni coppia
+ * antenato-discendente, compresa la coppia della categoria con se stessa (depth 0).
+ * Permette di risolvere sottoalberi e percorsi con un'unica join indicizzata.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@IdClass(CategoryClosure.Key.class)
+@Table(name = "category_closure", indexes = {
+        @Index(name = "idx_category_closure_descendant", columnList = "descendant_id, depth")
+})
+public class CategoryClosure {
+
+    @Id
+    @Column(name = "ancestor_id", nullable = false)
+    private Long ancestorId;
+
+    @Id
+    @Column(name = "descendant_id", nullable = false)
+    private Long descendantId;
+
+    /**
+     * Distanza tra antenato e discendente (0 per la categoria stessa)
+     */
+    @Column(nullable = false)
+    private int depth;
+
+    /**
+     * Chiave composta (antenato, discendente)
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long ancestorId;
+        private Long descendantId;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.project_security.model;
+
+import java.time.ZonedDateTime;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Punto di ripresa di un job a blocchi: l'ultimo id elaborato con successo.
+ * Viene aggiornato nella stessa transazione del blocco, così dopo un arresto
+ * il job riprende dal blocco successivo all'ultimo confermato.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "job_checkpoints")
+public class JobCheckpoint {
+
+    @Id
+    @Column(length = 64)
+    private String name;
+
+    /**
+     * Ultimo id elaborato nel passaggio corrente (0 all'inizio di un passaggio)
+     */
+    @Column(name = "last_id", nullable = false)
+    private long lastId;
+
+    @Column(name = "updated_at")
+    private ZonedDateTime updatedAt;
+}
@@ -0,0 +1,74 @@
+package com.example.project_security.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Importo in centesimi, usato per i totali calcolati in memoria.
+ *
+ * Le colonne dei prezzi hanno scala 2, quindi un long di centesimi rappresenta
+ * esattamente ogni importo e le somme non allocano oggetti intermedi.
+ * La conversione da e verso BigDecimal avviene solo ai confini: lettura e
+ * scrittura sul database e DTO restituiti al client.
+ * Le operazioni aritmetiche falliscono con ArithmeticException in caso di overflow.
+ */
+public record Money(long cents) implements Comparable<Money> {
+
+    public static final int SCALE = 2;
+
+    public static final Money ZERO = new Money(0);
+
+    /**
+     * Importo dal BigDecimal letto dal database, arrotondato ai centesimi come fa una colonna DECIMAL(10,2)
+     */
+    public static Money of(BigDecimal amount) {
+        return new Money(toCents(amount));
+    }
+
+    /**
+     * Come of, ma restituisce null per un valore null (colonne di LEFT JOIN)
+     */
+    public static Money ofNullable(BigDecimal amount) {
+        return amount != null ? of(amount) : null;
+    }
+
+    /**
+     * Centesimi dell'importo, zero se null: per le somme su long senza creare un Money
+     */
+    public static long centsOf(BigDecimal amount) {
+        return amount != null ? toCents(amount) : 0;
+    }
+
+    private static long toCents(BigDecimal amount) {
+        return amount.movePointRight(SCALE).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    public Money plus(Money other) {
+        return new Money(Math.addExact(cents, other.cents));
+    }
+
+    public Money minus(Money other) {
+        return new Money(Math.subtractExact(cents, other.cents));
+    }
+
+    public Money times(int quantity) {
+        return new Money(Math.multiplyExact(cents, (long) quantity));
+    }
+
+    /**
+     * Valore da scrivere sul database o da restituire nei DTO
+     */
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
@@ -14,6 +14,7 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToMany;
@@ -35,7 +36,9 @@ import lombok.ToString;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_user_date", columnList = "user_id, order_date")
+})
 @EqualsAndHashCode(exclude = {"user", "orderItems"})
 @ToString(exclude = {"user", "orderItems"})
 public class Order {
@@ -133,12 +136,15 @@ public class Order {
     }
     
     /**
-     * Calcola il totale dell'ordine basandosi sugli OrderItem
+     * Calcola il totale dell'ordine basandosi sugli OrderItem.
+     * La somma avviene in centesimi; il BigDecimal si crea una sola volta per la colonna
      */
     public void calculateTotalPrice() {
-        this.totalPrice = orderItems.stream()
-                .map(item -> item.getUnitPrice().multiply(BigDecimal.valueOf(item.getQuantity())))
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        long cents = 0;
+        for (OrderItem item : orderItems) {
+            cents = Math.addExact(cents, item.getSubtotalBeforeDiscountAmount().cents());
+        }
+        this.totalPrice = new Money(cents).toBigDecimal();
     }
     
     /**
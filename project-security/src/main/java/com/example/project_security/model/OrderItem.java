@@ -16,6 +16,8 @@ import java.math.BigDecimal;
 @Builder
 @Table(name = "order_items", uniqueConstraints = {
         @UniqueConstraint(columnNames = { "order_id", "product_id" })
+}, indexes = {
+        @Index(name = "idx_order_items_stock_pending", columnList = "stock_pending, product_id")
 })
 @EqualsAndHashCode(exclude = { "order", "product" })
 @ToString(exclude = { "order", "product" })
@@ -71,6 +73,13 @@ public class OrderItem {
     @Column(name = "discount_amount", precision = 10, scale = 2)
     private BigDecimal discountAmount = BigDecimal.ZERO;
 
+    /**
+     * True finché la quantità non è stata scalata da stock_quantity del prodotto:
+     * vale solo per i prodotti hot, il cui stock viene allineato in differita da HotStockService
+     */
+    @Column(name = "stock_pending", nullable = false)
+    private boolean stockPending;
+
     // Metodi di utilità
 
     /**
@@ -78,11 +87,9 @@ public class OrderItem {
      */
     @Transient
     public BigDecimal getSubtotal() {
-        BigDecimal safeUnitPrice = unitPrice != null ? unitPrice : BigDecimal.ZERO;
-        BigDecimal safeDiscount = discountAmount != null ? discountAmount : BigDecimal.ZERO;
         int safeQuantity = quantity != null ? quantity : 0;
-
-        return safeUnitPrice.multiply(BigDecimal.valueOf(safeQuantity)).subtract(safeDiscount);
+        Money subtotal = unitPrice != null ? Money.of(unitPrice).times(safeQuantity) : Money.ZERO;
+        return (discountAmount != null ? subtotal.minus(Money.of(discountAmount)) : subtotal).toBigDecimal();
     }
 
     /**
@@ -90,7 +97,15 @@ public class OrderItem {
      */
     @Transient
     public BigDecimal getSubtotalBeforeDiscount() {
-        return unitPrice.multiply(BigDecimal.valueOf(quantity));
+        return getSubtotalBeforeDiscountAmount().toBigDecimal();
+    }
+
+    /**
+     * Subtotale senza sconti in centesimi, per i totali calcolati in memoria
+     */
+    @Transient
+    public Money getSubtotalBeforeDiscountAmount() {
+        return Money.of(unitPrice).times(quantity);
     }
 
     /**
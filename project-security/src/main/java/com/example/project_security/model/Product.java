@@ -2,7 +2,10 @@ package com.example.project_security.model;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.DynamicUpdate;
+
 import java.math.BigDecimal;
+import java.time.ZonedDateTime;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -15,7 +18,10 @@ import java.util.Set;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-@Table(name = "products")
+@Table(name = "products", indexes = {
+        @Index(name = "idx_products_updated_at", columnList = "updated_at")
+})
+@DynamicUpdate
 @EqualsAndHashCode(exclude = {"category", "cartItems", "orderItems"})
 @ToString(exclude = {"category", "cartItems", "orderItems"})
 public class Product {
@@ -76,8 +82,43 @@ public class Product {
     @Column(unique = true, length = 50)
     private String sku;
     
+    /**
+     * Soglia di stock basso specifica del prodotto (se null si usa quella globale)
+     */
+    @Column(name = "low_stock_threshold")
+    private Integer lowStockThreshold;
+    
+    /**
+     * Modalità "hot": lo stock disponibile è gestito in memoria da HotStockService
+     * e stock_quantity viene aggiornato in differita
+     */
+    @Column(name = "is_hot", nullable = false)
+    private boolean isHot;
+    
+    /**
+     * Prodotto disattivato insieme al sottoalbero della sua categoria e non singolarmente:
+     * solo questi prodotti tornano attivi quando il sottoalbero viene riattivato
+     */
+    @Column(name = "deactivated_by_category", nullable = false)
+    private boolean deactivatedByCategory;
+    
+    /**
+     * Data dell'ultima modifica, usata come watermark per le esportazioni incrementali
+     */
+    @Column(name = "updated_at")
+    private ZonedDateTime updatedAt;
+    
     // Metodi di utilità
     
+    /**
+     * Aggiorna la data di ultima modifica a ogni insert/update tramite entità
+     */
+    @PrePersist
+    @PreUpdate
+    protected void touchUpdatedAt() {
+        this.updatedAt = ZonedDateTime.now();
+    }
+    
     /**
      * Verifica se il prodotto è disponibile per l'acquisto
      */
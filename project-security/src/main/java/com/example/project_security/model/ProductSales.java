@@ -0,0 +1,36 @@
+package com.example.project_security.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Contatore cumulativo delle vendite di un prodotto.
+ * Aggiornato dall'OrderService alla creazione dell'ordine e stornato
+ * in caso di annullamento o rimborso, evita di aggregare order_items.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "product_sales", indexes = {
+        @Index(name = "idx_product_sales_units", columnList = "units_sold")
+})
+public class ProductSales {
+
+    @Id
+    @Column(name = "product_id")
+    private Long productId;
+
+    /**
+     * Unità vendute al netto di annullamenti e rimborsi
+     */
+    @Column(name = "units_sold", nullable = false)
+    private long unitsSold;
+
+    /**
+     * Numero di ordini che contengono il prodotto
+     */
+    @Column(name = "order_count", nullable = false)
+    private long orderCount;
+}
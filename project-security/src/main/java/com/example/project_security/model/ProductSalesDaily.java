@@ -0,0 +1,33 @@
+package com.example.project_security.model;
+
+import java.time.LocalDate;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Vendite giornaliere di un prodotto, per le classifiche su un intervallo di date
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "product_sales_daily", uniqueConstraints = {
+        @UniqueConstraint(columnNames = { "sales_date", "product_id" })
+})
+public class ProductSalesDaily {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Column(name = "sales_date", nullable = false)
+    private LocalDate salesDate;
+
+    @Column(name = "units_sold", nullable = false)
+    private long unitsSold;
+}
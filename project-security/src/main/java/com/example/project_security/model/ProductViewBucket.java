@@ -0,0 +1,33 @@
+package com.example.project_security.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Visualizzazioni di un prodotto in una fascia oraria, per il calcolo dei prodotti di tendenza
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "product_views", uniqueConstraints = {
+        @UniqueConstraint(columnNames = { "bucket_start", "product_id" })
+})
+public class ProductViewBucket {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+
+    @Column(name = "view_count", nullable = false)
+    private long viewCount;
+}
@@ -0,0 +1,117 @@
+package com.example.project_security.repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Accesso JDBC per la ricerca a blocchi dei carrelli abbandonati.
+ * I carrelli attivi si scorrono per id (keyset sulla chiave primaria); dentro
+ * ogni blocco l'abbandono si valuta con anti-join sugli indici di cart_items
+ * (cart_id) e orders (user_id, order_date).
+ */
+@Repository
+@RequiredArgsConstructor
+public class AbandonedCartJdbcRepository {
+
+    private static final String FIND_CHUNK_SQL =
+            "SELECT COUNT(*), MAX(chunk.id) FROM (" +
+            "SELECT id FROM carts WHERE is_active = true AND id > ? ORDER BY id LIMIT ?) chunk";
+
+    private static final String FIND_ABANDONED_SQL =
+            "SELECT c.id, c.user_id, c.version, c.abandoned_at FROM carts c " +
+            "WHERE c.id > ? AND c.id <= ? AND c.is_active = true " +
+            "AND (c.updated_at IS NULL OR c.updated_at < ?) " +
+            "AND EXISTS (SELECT 1 FROM cart_items ci WHERE ci.cart_id = c.id) " +
+            "AND NOT EXISTS (SELECT 1 FROM orders o WHERE o.user_id = c.user_id AND o.order_date >= ?)";
+
+    /**
+     * Blocco di carrelli attivi: quanti sono e id dell'ultimo
+     */
+    public record Chunk(int size, long lastId) {
+    }
+
+    /**
+     * Carrello abbandonato del blocco alla versione letta; abandonedAt è null se non era ancora segnalato
+     */
+    public record AbandonedCartRow(long cartId, long userId, long version, ZonedDateTime abandonedAt) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    /**
+     * Legge il punto di ripresa del job bloccandone la riga fino al commit,
+     * così due esecuzioni concorrenti non elaborano lo stesso blocco
+     */
+    public long lockCheckpoint(String name) {
+        jdbcTemplate.update("INSERT IGNORE INTO job_checkpoints (name, last_id, updated_at) VALUES (?, 0, ?)",
+                name, Timestamp.from(Instant.now()));
+        return jdbcTemplate.queryForObject("SELECT last_id FROM job_checkpoints WHERE name = ? FOR UPDATE",
+                Long.class, name);
+    }
+
+    public void saveCheckpoint(String name, long lastId) {
+        jdbcTemplate.update("UPDATE job_checkpoints SET last_id = ?, updated_at = ? WHERE name = ?",
+                lastId, Timestamp.from(Instant.now()), name);
+    }
+
+    /**
+     * Prossimo blocco di carrelli attivi dopo l'id indicato (size 0 a fine passaggio)
+     */
+    public Chunk findChunk(long afterId, int chunkSize) {
+        return jdbcTemplate.queryForObject(FIND_CHUNK_SQL,
+                (rs, rowNum) -> new Chunk(rs.getInt(1), rs.getLong(2)), afterId, chunkSize);
+    }
+
+    /**
+     * Carrelli del blocco (afterId, lastId] non modificati e senza ordini dell'utente dalla data indicata
+     */
+    public List<AbandonedCartRow> findAbandoned(long afterId, long lastId, ZonedDateTime since) {
+        Timestamp cutoff = Timestamp.from(since.toInstant());
+        return jdbcTemplate.query(FIND_ABANDONED_SQL, (rs, rowNum) -> {
+            Timestamp abandonedAt = rs.getTimestamp("abandoned_at");
+            return new AbandonedCartRow(rs.getLong("id"), rs.getLong("user_id"), rs.getLong("version"),
+                    abandonedAt != null ? abandonedAt.toInstant().atZone(since.getZone()) : null);
+        }, afterId, lastId, cutoff, cutoff);
+    }
+
+    /**
+     * Segnala come abbandonati i carrelli indicati
+     */
+    public int markAbandoned(List<Long> cartIds, ZonedDateTime at) {
+        if (cartIds.isEmpty()) {
+            return 0;
+        }
+        return namedParameterJdbcTemplate.update(
+                "UPDATE carts SET abandoned_at = :at WHERE id IN (:ids) AND abandoned_at IS NULL",
+                new MapSqlParameterSource("ids", cartIds).addValue("at", Timestamp.from(at.toInstant())));
+    }
+
+    /**
+     * Disattiva i carrelli indicati ancora segnalati come abbandonati e ne cancella le righe.
+     * Una modifica dopo la lettura azzera abandoned_at e salva il carrello; le righe di un
+     * carrello non più attivo non servono, il compattatore elimina poi il carrello vuoto
+     */
+    public int expire(List<Long> cartIds) {
+        if (cartIds.isEmpty()) {
+            return 0;
+        }
+        MapSqlParameterSource ids = new MapSqlParameterSource("ids", cartIds);
+        int expired = namedParameterJdbcTemplate.update(
+                "UPDATE carts SET is_active = false WHERE id IN (:ids) AND is_active = true " +
+                "AND abandoned_at IS NOT NULL", ids);
+        namedParameterJdbcTemplate.update(
+                "DELETE ci FROM cart_items ci JOIN carts c ON c.id = ci.cart_id " +
+                "WHERE ci.cart_id IN (:ids) AND c.is_active = false", ids);
+        return expired;
+    }
+}
@@ -0,0 +1,351 @@
+package com.example.project_security.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import com.example.project_security.exception.ResourceNotFoundException;
+import com.example.project_security.model.Money;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Accesso JDBC alle tabelle carts e cart_items per i CartStore.
+ * Le righe si scrivono con upsert sul vincolo unico (cart_id, product_id),
+ * in batch anche su più carrelli insieme.
+ */
+@Repository
+@RequiredArgsConstructor
+public class CartJdbcRepository {
+
+    private static final String FIND_ACTIVE_CART_LINES_SQL =
+            "SELECT c.id AS cart_id, c.version, ci.id AS item_id, ci.product_id, ci.quantity, ci.unit_price " +
+            "FROM carts c LEFT JOIN cart_items ci ON ci.cart_id = c.id " +
+            "WHERE c.id = (SELECT MAX(a.id) FROM carts a WHERE a.user_id = ? AND a.is_active = true) " +
+            "ORDER BY ci.id";
+
+    private static final String FIND_ACTIVE_CART_VIEW_SQL =
+            "SELECT c.id AS cart_id, c.version, ci.id AS item_id, ci.quantity, ci.unit_price, " +
+            "p.id AS product_id, p.name, p.sku, p.image_url, p.price, p.stock_quantity, p.is_active " +
+            "FROM carts c LEFT JOIN cart_items ci ON ci.cart_id = c.id " +
+            "LEFT JOIN products p ON p.id = ci.product_id " +
+            "WHERE c.id = (SELECT MAX(a.id) FROM carts a WHERE a.user_id = ? AND a.is_active = true) " +
+            "ORDER BY ci.id";
+
+    private static final String FIND_CART_PRODUCTS_SQL =
+            "SELECT p.id AS product_id, p.name, p.sku, p.image_url, p.price, p.stock_quantity, p.is_active " +
+            "FROM products p WHERE p.id IN (:productIds)";
+
+    private static final String FIND_ACTIVE_CART_ID_SQL =
+            "SELECT MAX(id) FROM carts WHERE user_id = ? AND is_active = true";
+
+    /**
+     * Aggiunge la quantità alla riga del prodotto (o la crea) nel carrello, al prezzo corrente.
+     * Il SELECT non produce righe, e quindi non scrive nulla, se il carrello non è più attivo,
+     * se il prodotto non è attivo o se lo stock non copre la quantità risultante.
+     * I valori proposti si leggono dalla tabella derivata new: VALUES() è deprecato da MySQL 8.0.20
+     */
+    private static final String ADD_LINE_SQL =
+            "INSERT INTO cart_items (cart_id, product_id, quantity, unit_price) " +
+            "SELECT * FROM (SELECT c.id AS cart_id, p.id AS product_id, ? AS quantity, p.price AS unit_price " +
+            "FROM carts c INNER JOIN products p ON p.id = ? " +
+            "LEFT JOIN cart_items ci ON ci.cart_id = c.id AND ci.product_id = p.id " +
+            "WHERE c.id = ? AND c.is_active = true " +
+            "AND p.is_active = true AND p.stock_quantity >= COALESCE(ci.quantity, 0) + ?) AS new " +
+            "ON DUPLICATE KEY UPDATE unit_price = new.unit_price, quantity = cart_items.quantity + new.quantity";
+
+    /**
+     * Ogni modifica del carrello ne aggiorna la data e annulla l'eventuale segnalazione di abbandono
+     */
+    private static final String BUMP_CART_VERSION_SQL =
+            "UPDATE carts SET version = version + 1, updated_at = ?, abandoned_at = NULL WHERE id = ?";
+
+    /**
+     * Incrementa la versione dei carrelli attivi con righe a un prezzo diverso da quello corrente
+     * (va eseguito prima del riallineamento dei prezzi)
+     */
+    private static final String BUMP_CARTS_TO_REPRICE_SQL =
+            "UPDATE carts c JOIN cart_items ci ON ci.cart_id = c.id JOIN products p ON p.id = ci.product_id " +
+            "SET c.version = c.version + 1 " +
+            "WHERE ci.product_id IN (:productIds) AND c.is_active = true AND ci.unit_price <> p.price";
+
+    private static final String REPRICE_ACTIVE_LINES_SQL =
+            "UPDATE cart_items ci JOIN carts c ON c.id = ci.cart_id JOIN products p ON p.id = ci.product_id " +
+            "SET ci.unit_price = p.price " +
+            "WHERE ci.product_id IN (:productIds) AND c.is_active = true AND ci.unit_price <> p.price";
+
+    private static final String UPSERT_LINE_SQL =
+            "INSERT INTO cart_items (cart_id, product_id, quantity, unit_price) VALUES (?, ?, ?, ?) AS new " +
+            "ON DUPLICATE KEY UPDATE quantity = new.quantity, unit_price = new.unit_price";
+
+    private static final String DELETE_LINE_SQL = "DELETE FROM cart_items WHERE cart_id = ? AND product_id = ?";
+
+    private static final String UPDATE_VERSION_SQL =
+            "UPDATE carts SET version = ?, updated_at = ?, abandoned_at = NULL WHERE id = ?";
+
+    /**
+     * Riga del carrello attivo; con carrello vuoto i campi della riga sono null
+     */
+    public record CartLineRow(long cartId, long cartVersion, Long itemId, Long productId, Integer quantity,
+            Money unitPrice) {
+    }
+
+    /**
+     * Dati del prodotto mostrati e verificati nel carrello
+     */
+    public record CartProductRow(long id, String name, String sku, String imageUrl, Money price,
+            int stockQuantity, boolean active) {
+
+        public boolean isAvailable() {
+            return active && stockQuantity > 0;
+        }
+
+        public boolean hasStock(int quantity) {
+            return stockQuantity >= quantity;
+        }
+
+        public CartProductRow withStockQuantity(int stockQuantity) {
+            return new CartProductRow(id, name, sku, imageUrl, price, stockQuantity, active);
+        }
+    }
+
+    /**
+     * Riga del carrello attivo con il relativo prodotto; con carrello vuoto riga e prodotto sono null
+     */
+    public record CartViewRow(long cartId, long cartVersion, Long itemId, Integer quantity, Money unitPrice,
+            CartProductRow product) {
+    }
+
+    /**
+     * Quantità e prezzo da scrivere per un prodotto di un carrello
+     */
+    public record LineWrite(long cartId, long productId, int quantity, Money unitPrice) {
+    }
+
+    /**
+     * Prodotto da togliere da un carrello
+     */
+    public record LineKey(long cartId, long productId) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    /**
+     * Carrello attivo dell'utente con le sue righe, in un'unica query (lista vuota se non esiste)
+     */
+    public List<CartLineRow> findActiveCartLines(long userId) {
+        return jdbcTemplate.query(FIND_ACTIVE_CART_LINES_SQL, (rs, rowNum) -> new CartLineRow(
+                rs.getLong("cart_id"),
+                rs.getLong("version"),
+                rs.getObject("item_id", Long.class),
+                rs.getObject("product_id", Long.class),
+                rs.getObject("quantity", Integer.class),
+                Money.ofNullable(rs.getBigDecimal("unit_price"))), userId);
+    }
+
+    /**
+     * Carrello attivo dell'utente con righe e prodotti, in un'unica query (lista vuota se non esiste)
+     */
+    public List<CartViewRow> findActiveCartView(long userId) {
+        return jdbcTemplate.query(FIND_ACTIVE_CART_VIEW_SQL, (rs, rowNum) -> new CartViewRow(
+                rs.getLong("cart_id"),
+                rs.getLong("version"),
+                rs.getObject("item_id", Long.class),
+                rs.getObject("quantity", Integer.class),
+                Money.ofNullable(rs.getBigDecimal("unit_price")),
+                rs.getObject("product_id") != null ? mapProduct(rs) : null), userId);
+    }
+
+    /**
+     * Prodotti indicati, con i soli campi usati dal carrello
+     */
+    public Map<Long, CartProductRow> findCartProducts(Collection<Long> productIds) {
+        Map<Long, CartProductRow> products = new HashMap<>();
+        if (productIds.isEmpty()) {
+            return products;
+        }
+        namedParameterJdbcTemplate.query(FIND_CART_PRODUCTS_SQL,
+                new MapSqlParameterSource("productIds", productIds),
+                rs -> {
+                    CartProductRow product = mapProduct(rs);
+                    products.put(product.id(), product);
+                });
+        return products;
+    }
+
+    /**
+     * Id del carrello attivo dell'utente, null se non ne ha uno
+     */
+    public Long findActiveCartId(long userId) {
+        return jdbcTemplate.queryForObject(FIND_ACTIVE_CART_ID_SQL, Long.class, userId);
+    }
+
+    /**
+     * Aggiunta diretta di un prodotto a un carrello attivo con un solo statement.
+     * Restituisce false se non è stato scritto nulla (carrello non più attivo, prodotto
+     * non disponibile o stock insufficiente)
+     */
+    public boolean addLine(long cartId, long productId, int quantity) {
+        return jdbcTemplate.update(ADD_LINE_SQL, quantity, productId, cartId, quantity) > 0;
+    }
+
+    /**
+     * Incrementa la versione di un carrello
+     */
+    public int bumpCartVersion(long cartId) {
+        return jdbcTemplate.update(BUMP_CART_VERSION_SQL, Timestamp.from(Instant.now()), cartId);
+    }
+
+    /**
+     * Riallinea al prezzo corrente dei prodotti indicati le righe dei carrelli attivi,
+     * con due UPDATE su tutti i carrelli (versione e righe). Restituisce le righe aggiornate.
+     * I nuovi prezzi devono essere già scritti su products
+     */
+    public int repriceActiveCartLines(Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return 0;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource("productIds", productIds);
+        namedParameterJdbcTemplate.update(BUMP_CARTS_TO_REPRICE_SQL, params);
+        return namedParameterJdbcTemplate.update(REPRICE_ACTIVE_LINES_SQL, params);
+    }
+
+    /**
+     * Crea il carrello attivo di un utente e ne restituisce l'id.
+     * I carrelli si creano alla prima aggiunta: la riga dell'utente viene bloccata
+     * fino al commit, così due prime aggiunte concorrenti non creano due carrelli attivi
+     * (la seconda trova e usa quello creato dalla prima)
+     *
+     * @throws ResourceNotFoundException se l'utente non esiste (ad esempio è stato eliminato)
+     */
+    public long insertCart(long userId) {
+        if (jdbcTemplate.queryForList("SELECT id FROM utenti WHERE id = ? FOR UPDATE", Long.class, userId).isEmpty()) {
+            throw new ResourceNotFoundException("Utente non trovato con ID: " + userId);
+        }
+        // Lettura con lock: vede anche un carrello appena confermato da un'altra transazione
+        List<Long> existing = jdbcTemplate.queryForList(
+                "SELECT id FROM carts WHERE user_id = ? AND is_active = true ORDER BY id DESC LIMIT 1 FOR UPDATE",
+                Long.class, userId);
+        if (!existing.isEmpty()) {
+            return existing.get(0);
+        }
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO carts (user_id, is_active, version, updated_at) VALUES (?, true, 0, ?)",
+                    Statement.RETURN_GENERATED_KEYS);
+            statement.setLong(1, userId);
+            statement.setTimestamp(2, Timestamp.from(Instant.now()));
+            return statement;
+        }, keyHolder);
+        return keyHolder.getKey().longValue();
+    }
+
+    /**
+     * Inserisce o aggiorna le righe indicate, in un unico batch
+     */
+    public int[] upsertLines(List<LineWrite> lines) {
+        if (lines.isEmpty()) {
+            return new int[0];
+        }
+        List<Object[]> args = lines.stream()
+                .map(line -> new Object[] {
+                        line.cartId(), line.productId(), line.quantity(), line.unitPrice().toBigDecimal() })
+                .toList();
+        return jdbcTemplate.batchUpdate(UPSERT_LINE_SQL, args);
+    }
+
+    /**
+     * Elimina le righe indicate, in un unico batch
+     */
+    public int[] deleteLines(List<LineKey> lines) {
+        if (lines.isEmpty()) {
+            return new int[0];
+        }
+        List<Object[]> args = lines.stream()
+                .map(line -> new Object[] { line.cartId(), line.productId() })
+                .toList();
+        return jdbcTemplate.batchUpdate(DELETE_LINE_SQL, args);
+    }
+
+    /**
+     * Aggiorna la versione dei carrelli indicati, in un unico batch
+     */
+    public int[] updateVersions(Map<Long, Long> versionByCart) {
+        if (versionByCart.isEmpty()) {
+            return new int[0];
+        }
+        Timestamp now = Timestamp.from(Instant.now());
+        List<Object[]> args = versionByCart.entrySet().stream()
+                .map(entry -> new Object[] { entry.getValue(), now, entry.getKey() })
+                .toList();
+        return jdbcTemplate.batchUpdate(UPDATE_VERSION_SQL, args);
+    }
+
+    /**
+     * Id delle righe dei carrelli indicati: cartId -> (productId -> itemId)
+     */
+    public Map<Long, Map<Long, Long>> findItemIds(Collection<Long> cartIds) {
+        Map<Long, Map<Long, Long>> itemIds = new HashMap<>();
+        if (cartIds.isEmpty()) {
+            return itemIds;
+        }
+        namedParameterJdbcTemplate.query(
+                "SELECT id, cart_id, product_id FROM cart_items WHERE cart_id IN (:cartIds)",
+                new MapSqlParameterSource("cartIds", cartIds),
+                rs -> {
+                    itemIds.computeIfAbsent(rs.getLong("cart_id"), id -> new HashMap<>())
+                            .put(rs.getLong("product_id"), rs.getLong("id"));
+                });
+        return itemIds;
+    }
+
+    /**
+     * Id dei carrelli inattivi senza righe dopo l'id indicato, in ordine di id
+     */
+    public List<Long> findEmptyInactiveCartIds(long afterId, int limit) {
+        return jdbcTemplate.queryForList(
+                "SELECT c.id FROM carts c WHERE c.id > ? AND c.is_active = false " +
+                "AND NOT EXISTS (SELECT 1 FROM cart_items ci WHERE ci.cart_id = c.id) ORDER BY c.id LIMIT ?",
+                Long.class, afterId, limit);
+    }
+
+    /**
+     * Elimina i carrelli indicati se sono ancora inattivi e senza righe
+     */
+    public int deleteEmptyInactiveCarts(List<Long> cartIds) {
+        if (cartIds.isEmpty()) {
+            return 0;
+        }
+        return namedParameterJdbcTemplate.update(
+                "DELETE FROM carts WHERE id IN (:ids) AND is_active = false " +
+                "AND NOT EXISTS (SELECT 1 FROM cart_items ci WHERE ci.cart_id = carts.id)",
+                new MapSqlParameterSource("ids", cartIds));
+    }
+
+    static CartProductRow mapProduct(ResultSet rs) throws SQLException {
+        return new CartProductRow(
+                rs.getLong("product_id"),
+                rs.getString("name"),
+                rs.getString("sku"),
+                rs.getString("image_url"),
+                Money.of(rs.getBigDecimal("price")),
+                rs.getInt("stock_quantity"),
+                rs.getBoolean("is_active"));
+    }
+}
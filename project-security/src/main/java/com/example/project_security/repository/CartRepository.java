@@ -54,14 +54,4 @@ public interface CartRepository extends JpaRepository<Cart, Long> {
      */
     @Query("SELECT SUM(ci.unitPrice * ci.quantity) FROM Cart c JOIN c.cartItems ci WHERE c.isActive = true")
     Double calculateTotalValueOfActiveCarts();
-    
-    /**
-     * Trova carrelli abbandonati (attivi da più di X giorni senza ordine)
-     */
-    @Query(value = "SELECT c.* FROM carts c WHERE c.is_active = true " +
-           "AND c.id IN (SELECT cart_id FROM cart_items) " +
-           "AND NOT EXISTS (SELECT 1 FROM orders o WHERE o.user_id = c.user_id " +
-           "AND o.order_date > DATE_SUB(NOW(), INTERVAL :days DAY))", 
-           nativeQuery = true)
-    List<Cart> findAbandonedCarts(@Param("days") int days);
 }
\ No newline at end of file
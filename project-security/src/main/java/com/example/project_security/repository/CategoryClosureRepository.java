@@ -0,0 +1,80 @@
+package com.example.project_security.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.project_security.model.CategoryClosure;
+
+/**
+ * Repository della closure table delle categorie.
+ * Le modifiche sono statement set-based da eseguire nella stessa transazione
+ * che cambia il padre della categoria.
+ */
+@Repository
+public interface CategoryClosureRepository extends JpaRepository<CategoryClosure, CategoryClosure.Key> {
+
+    /**
+     * Verifica se una categoria è discendente (o coincide con) un'altra
+     */
+    @Query("SELECT COUNT(cc) > 0 FROM CategoryClosure cc " +
+           "WHERE cc.ancestorId = :ancestorId AND cc.descendantId = :descendantId")
+    boolean isAncestorOf(@Param("ancestorId") Long ancestorId, @Param("descendantId") Long descendantId);
+
+    /**
+     * Numero di categorie censite con la riga di profondità 0, per verificare l'allineamento all'avvio
+     */
+    @Query("SELECT COUNT(cc) FROM CategoryClosure cc WHERE cc.depth = 0")
+    long countNodes();
+
+    /**
+     * Inserisce le righe di una nuova categoria: se stessa più tutti gli antenati del padre
+     */
+    @Modifying
+    @Query(value = "INSERT INTO category_closure (ancestor_id, descendant_id, depth) " +
+           "SELECT :categoryId, :categoryId, 0 " +
+           "UNION ALL " +
+           "SELECT cc.ancestor_id, :categoryId, cc.depth + 1 FROM category_closure cc " +
+           "WHERE cc.descendant_id = :parentId", nativeQuery = true)
+    int insertNode(@Param("categoryId") Long categoryId, @Param("parentId") Long parentId);
+
+    /**
+     * Scollega il sottoalbero della categoria dai suoi antenati esterni
+     */
+    @Modifying
+    @Query(value = "DELETE link FROM category_closure link " +
+           "INNER JOIN category_closure sub ON sub.descendant_id = link.descendant_id " +
+           "LEFT JOIN category_closure inner_link " +
+           "  ON inner_link.ancestor_id = sub.ancestor_id AND inner_link.descendant_id = link.ancestor_id " +
+           "WHERE sub.ancestor_id = :categoryId AND inner_link.ancestor_id IS NULL", nativeQuery = true)
+    int detachSubtree(@Param("categoryId") Long categoryId);
+
+    /**
+     * Collega il sottoalbero della categoria a tutti gli antenati del nuovo padre
+     */
+    @Modifying
+    @Query(value = "INSERT INTO category_closure (ancestor_id, descendant_id, depth) " +
+           "SELECT above.ancestor_id, below.descendant_id, above.depth + below.depth + 1 " +
+           "FROM category_closure above CROSS JOIN category_closure below " +
+           "WHERE above.descendant_id = :parentId AND below.ancestor_id = :categoryId", nativeQuery = true)
+    int attachSubtree(@Param("categoryId") Long categoryId, @Param("parentId") Long parentId);
+
+    @Modifying
+    @Query(value = "DELETE FROM category_closure", nativeQuery = true)
+    int deleteAllRows();
+
+    /**
+     * Ricostruisce l'intera tabella dalla colonna parent_category_id
+     */
+    @Modifying
+    @Query(value = "INSERT INTO category_closure (ancestor_id, descendant_id, depth) " +
+           "WITH RECURSIVE closure AS (" +
+           "  SELECT id AS ancestor_id, id AS descendant_id, 0 AS depth FROM categories " +
+           "  UNION ALL " +
+           "  SELECT cl.ancestor_id, c.id, cl.depth + 1 FROM closure cl " +
+           "  INNER JOIN categories c ON c.parent_category_id = cl.descendant_id" +
+           ") SELECT ancestor_id, descendant_id, depth FROM closure", nativeQuery = true)
+    int rebuildFromParents();
+}
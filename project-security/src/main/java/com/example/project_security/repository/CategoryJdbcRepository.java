@@ -0,0 +1,32 @@
+package com.example.project_security.repository;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Accesso JDBC alla tabella categories per gli aggiornamenti in blocco,
+ * eseguiti come un unico batch invece di un save per categoria.
+ */
+@Repository
+@RequiredArgsConstructor
+public class CategoryJdbcRepository {
+
+    private static final String UPDATE_DISPLAY_ORDER_SQL = "UPDATE categories SET display_order = ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Aggiorna l'ordine di visualizzazione delle categorie indicate in un unico batch
+     */
+    public int[] updateDisplayOrders(Map<Long, Integer> displayOrderById) {
+        List<Object[]> args = displayOrderById.entrySet().stream()
+                .map(entry -> new Object[] { entry.getValue(), entry.getKey() })
+                .toList();
+        return jdbcTemplate.batchUpdate(UPDATE_DISPLAY_ORDER_SQL, args);
+    }
+}
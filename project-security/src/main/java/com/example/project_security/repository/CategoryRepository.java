@@ -1,9 +1,11 @@
 package com.example.project_security.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -57,24 +59,75 @@ public interface CategoryRepository extends JpaRepository<Category, Long> {
     List<Object[]> countActiveProductsByCategory();
     
     /**
-     * Trova tutte le categorie figlie ricorsivamente
+     * Trova la categoria e tutte le categorie figlie ricorsivamente, dalla closure table
      */
-    @Query(value = "WITH RECURSIVE category_tree AS (" +
-           "  SELECT * FROM categories WHERE id = :categoryId " +
-           "  UNION ALL " +
-           "  SELECT c.* FROM categories c " +
-           "  INNER JOIN category_tree ct ON c.parent_category_id = ct.id" +
-           ") SELECT * FROM category_tree", nativeQuery = true)
+    @Query("SELECT c FROM CategoryClosure cc JOIN Category c ON c.id = cc.descendantId " +
+           "WHERE cc.ancestorId = :categoryId ORDER BY cc.depth, c.displayOrder")
     List<Category> findAllSubcategoriesRecursive(@Param("categoryId") Long categoryId);
     
     /**
-     * Trova il percorso completo di una categoria (dalla radice alla categoria)
+     * Trova il percorso completo di una categoria (dalla radice alla categoria), dalla closure table
      */
-    @Query(value = "WITH RECURSIVE category_path AS (" +
-           "  SELECT * FROM categories WHERE id = :categoryId " +
-           "  UNION ALL " +
-           "  SELECT c.* FROM categories c " +
-           "  INNER JOIN category_path cp ON c.id = cp.parent_category_id" +
-           ") SELECT * FROM category_path ORDER BY id", nativeQuery = true)
+    @Query("SELECT c FROM CategoryClosure cc JOIN Category c ON c.id = cc.ancestorId " +
+           "WHERE cc.descendantId = :categoryId ORDER BY cc.depth DESC")
     List<Category> findCategoryPath(@Param("categoryId") Long categoryId);
-}
\ No newline at end of file
+    
+    /**
+     * Proiezione piatta (id, nome, id padre) di tutte le categorie, per costruire i percorsi in memoria
+     */
+    @Query("SELECT c.id, c.name, parent.id FROM Category c LEFT JOIN c.parentCategory parent")
+    List<Object[]> findAllIdNameAndParentId();
+    
+    /**
+     * Proiezione piatta di tutte le categorie:
+     * id, nome, descrizione, immagine, ordine, attiva, id padre
+     */
+    @Query("SELECT c.id, c.name, c.description, c.imageUrl, c.displayOrder, c.isActive, parent.id " +
+           "FROM Category c LEFT JOIN c.parentCategory parent")
+    List<Object[]> findAllFlat();
+    
+    /**
+     * Numero di prodotti attivi per id categoria, con un'unica aggregazione su products
+     */
+    @Query("SELECT p.category.id, COUNT(p) FROM Product p WHERE p.isActive = true AND p.category IS NOT NULL " +
+           "GROUP BY p.category.id")
+    List<Object[]> countActiveProductsByCategoryId();
+    
+    /**
+     * Numero di prodotti attivi di una categoria, senza caricare la collezione products
+     */
+    @Query("SELECT COUNT(p) FROM Product p WHERE p.category.id = :categoryId AND p.isActive = true")
+    long countActiveProducts(@Param("categoryId") Long categoryId);
+    
+    /**
+     * Numero di prodotti attivi di una categoria e delle sue sottocategorie attive.
+     * Come nello snapshot dell'albero, una sottocategoria conta solo se tutte le categorie
+     * tra lei e la radice (esclusa) sono attive: un nipote attivo sotto un figlio inattivo
+     * non conta. Le categorie intermedie sono gli antenati del discendente a distanza
+     * minore di quella della radice
+     */
+    @Query("SELECT COUNT(p) FROM CategoryClosure cc JOIN Product p ON p.category.id = cc.descendantId " +
+           "WHERE cc.ancestorId = :categoryId AND p.isActive = true " +
+           "AND NOT EXISTS (SELECT 1 FROM CategoryClosure up JOIN Category mid ON mid.id = up.ancestorId " +
+           "  WHERE up.descendantId = cc.descendantId AND up.depth < cc.depth AND mid.isActive = false)")
+    long countActiveProductsInSubtree(@Param("categoryId") Long categoryId);
+    
+    /**
+     * Attiva o disattiva con un unico UPDATE la categoria e tutto il suo sottoalbero
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Category c SET c.isActive = :active WHERE c.id IN " +
+           "(SELECT cc.descendantId FROM CategoryClosure cc WHERE cc.ancestorId = :categoryId)")
+    int setSubtreeActive(@Param("categoryId") Long categoryId, @Param("active") boolean active);
+    
+    /**
+     * Numero di categorie esistenti tra gli id indicati
+     */
+    long countByIdIn(Collection<Long> ids);
+    
+    /**
+     * Verifica se una categoria ha sottocategorie
+     */
+    @Query("SELECT COUNT(c) > 0 FROM Category c WHERE c.parentCategory.id = :categoryId")
+    boolean hasSubcategories(@Param("categoryId") Long categoryId);
+}
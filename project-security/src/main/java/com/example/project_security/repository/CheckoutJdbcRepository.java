@@ -0,0 +1,197 @@
+package com.example.project_security.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import com.example.project_security.model.Money;
+import com.example.project_security.model.OrderStatus;
+import com.example.project_security.repository.CartJdbcRepository.CartProductRow;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Accesso JDBC per il checkout: trasforma il carrello attivo in un ordine con un
+ * numero fisso di statement, indipendente dal numero di righe (una lettura,
+ * un UPDATE del carrello, un batch sullo stock e la rilettura dello stock aggiornato,
+ * l'inserimento dell'ordine, un batch di righe d'ordine e una DELETE delle righe del carrello).
+ */
+@Repository
+@RequiredArgsConstructor
+public class CheckoutJdbcRepository {
+
+    /**
+     * Utente, carrello attivo, righe e prodotti in un'unica query.
+     * Nessuna riga se l'utente non esiste; cart_id null se non ha un carrello attivo
+     */
+    private static final String FIND_CHECKOUT_SQL =
+            "SELECT u.email, u.address, c.id AS cart_id, ci.quantity, " +
+            "p.id AS product_id, p.name, p.sku, p.image_url, p.price, p.stock_quantity, p.is_active " +
+            "FROM utenti u " +
+            "LEFT JOIN carts c ON c.id = " +
+            "(SELECT MAX(a.id) FROM carts a WHERE a.user_id = u.id AND a.is_active = true) " +
+            "LEFT JOIN cart_items ci ON ci.cart_id = c.id " +
+            "LEFT JOIN products p ON p.id = ci.product_id " +
+            "WHERE u.id = ? ORDER BY ci.id";
+
+    /**
+     * Disattiva il carrello solo se è ancora attivo: la riga resta bloccata fino al commit,
+     * così un secondo checkout concorrente dello stesso carrello non aggiorna nulla
+     */
+    private static final String DEACTIVATE_CART_SQL =
+            "UPDATE carts SET is_active = false, version = version + 1, updated_at = ? " +
+            "WHERE id = ? AND is_active = true";
+
+    /**
+     * Scala lo stock solo se basta: con stock insufficiente non aggiorna nulla
+     */
+    private static final String DECREMENT_STOCK_SQL =
+            "UPDATE products SET stock_quantity = stock_quantity - ?, updated_at = ? " +
+            "WHERE id = ? AND stock_quantity >= ?";
+
+    private static final String INSERT_ORDER_SQL =
+            "INSERT INTO orders (user_id, order_date, order_status, total_price, shipping_address, " +
+            "billing_address, notes, payment_method) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_ORDER_ITEM_SQL =
+            "INSERT INTO order_items (order_id, product_id, quantity, unit_price, product_name, product_sku, " +
+            "discount_amount, stock_pending) VALUES (?, ?, ?, ?, ?, ?, 0, ?)";
+
+    /**
+     * Riga del checkout; con carrello assente o vuoto quantità e prodotto sono null
+     */
+    public record CheckoutRow(String email, String address, Long cartId, Integer quantity,
+            CartProductRow product) {
+    }
+
+    /**
+     * Ordine da inserire
+     */
+    public record OrderInsert(long userId, ZonedDateTime orderDate, OrderStatus status, Money totalPrice,
+            String shippingAddress, String billingAddress, String notes, String paymentMethod) {
+    }
+
+    /**
+     * Riga d'ordine da inserire, con nome e SKU del prodotto al momento dell'ordine.
+     * stockPending è true per i prodotti hot, il cui stock_quantity viene scalato in differita
+     */
+    public record OrderLineInsert(long productId, int quantity, Money unitPrice, String productName,
+            String productSku, boolean stockPending) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<CheckoutRow> findCheckout(long userId) {
+        return jdbcTemplate.query(FIND_CHECKOUT_SQL, (rs, rowNum) -> new CheckoutRow(
+                rs.getString("email"),
+                rs.getString("address"),
+                rs.getObject("cart_id", Long.class),
+                rs.getObject("quantity", Integer.class),
+                rs.getObject("product_id") != null ? CartJdbcRepository.mapProduct(rs) : null), userId);
+    }
+
+    /**
+     * Restituisce false se il carrello non era più attivo (già usato da un altro checkout)
+     */
+    public boolean deactivateCart(long cartId) {
+        return jdbcTemplate.update(DEACTIVATE_CART_SQL, Timestamp.from(Instant.now()), cartId) > 0;
+    }
+
+    /**
+     * Scala lo stock dei prodotti indicati in un unico batch.
+     * Restituisce gli id dei prodotti con stock insufficiente (nessuna riga aggiornata)
+     */
+    public List<Long> decrementStock(Map<Long, Integer> quantityByProduct) {
+        if (quantityByProduct.isEmpty()) {
+            return List.of();
+        }
+        Timestamp now = Timestamp.from(Instant.now());
+        List<Long> productIds = new ArrayList<>(quantityByProduct.keySet());
+        List<Object[]> args = productIds.stream()
+                .map(id -> new Object[] { quantityByProduct.get(id), now, id, quantityByProduct.get(id) })
+                .toList();
+        int[] updated = jdbcTemplate.batchUpdate(DECREMENT_STOCK_SQL, args);
+        List<Long> insufficient = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++) {
+            // SUCCESS_NO_INFO (-2) conta come riuscito: il driver non ha riportato il conteggio
+            if (updated[i] == 0) {
+                insufficient.add(productIds.get(i));
+            }
+        }
+        return insufficient;
+    }
+
+    /**
+     * Inserisce l'ordine e ne restituisce l'id
+     */
+    public long insertOrder(OrderInsert order) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(INSERT_ORDER_SQL,
+                    Statement.RETURN_GENERATED_KEYS);
+            statement.setLong(1, order.userId());
+            statement.setTimestamp(2, Timestamp.from(order.orderDate().toInstant()));
+            statement.setString(3, order.status().name());
+            statement.setBigDecimal(4, order.totalPrice().toBigDecimal());
+            statement.setString(5, order.shippingAddress());
+            statement.setString(6, order.billingAddress());
+            statement.setString(7, order.notes());
+            statement.setString(8, order.paymentMethod());
+            return statement;
+        }, keyHolder);
+        return keyHolder.getKey().longValue();
+    }
+
+    /**
+     * Inserisce le righe dell'ordine in un unico batch e ne restituisce gli id, nello stesso ordine
+     */
+    public List<Long> insertOrderItems(long orderId, List<OrderLineInsert> lines) {
+        if (lines.isEmpty()) {
+            return List.of();
+        }
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                connection -> connection.prepareStatement(INSERT_ORDER_ITEM_SQL, Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement statement, int i) throws SQLException {
+                        OrderLineInsert line = lines.get(i);
+                        statement.setLong(1, orderId);
+                        statement.setLong(2, line.productId());
+                        statement.setInt(3, line.quantity());
+                        statement.setBigDecimal(4, line.unitPrice().toBigDecimal());
+                        statement.setString(5, line.productName());
+                        statement.setString(6, line.productSku());
+                        statement.setBoolean(7, line.stockPending());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return lines.size();
+                    }
+                },
+                keyHolder);
+        return keyHolder.getKeyList().stream()
+                .map(keys -> ((Number) keys.values().iterator().next()).longValue())
+                .toList();
+    }
+
+    /**
+     * Elimina tutte le righe del carrello con un solo statement
+     */
+    public int deleteCartLines(long cartId) {
+        return jdbcTemplate.update("DELETE FROM cart_items WHERE cart_id = ?", cartId);
+    }
+}
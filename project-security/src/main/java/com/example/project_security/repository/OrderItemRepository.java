@@ -41,7 +41,8 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
     Long calculateTotalQuantitySold(@Param("product") Product product);
     
     /**
-     * Trova i prodotti più venduti in un periodo
+     * Trova i prodotti più venduti in un periodo aggregando tutti gli order item.
+     * Per le classifiche usare ProductSalesDailyRepository, aggiornato in modo incrementale
      */
     @Query("SELECT oi.product, SUM(oi.quantity) as totalSold " +
            "FROM OrderItem oi " +
@@ -1,17 +1,26 @@
 package com.example.project_security.repository;
 
+import com.example.project_security.dto.response.ProductExportDTO;
 import com.example.project_security.model.Category;
 import com.example.project_security.model.Product;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.QueryHint;
+
 import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Repository per la gestione delle operazioni CRUD sull'entità Product.
@@ -31,6 +40,24 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     Page<Product> findByIsActiveTrue(Pageable pageable);
     List<Product> findByIsActiveTrue();
     
+    /**
+     * Trova tutti i prodotti attivi caricando anche la categoria
+     */
+    @Query("SELECT p FROM Product p LEFT JOIN FETCH p.category WHERE p.isActive = true")
+    List<Product> findActiveWithCategory();
+    
+    /**
+     * Trova i prodotti con gli id indicati caricando anche la categoria, in un'unica query
+     */
+    @Query("SELECT p FROM Product p LEFT JOIN FETCH p.category WHERE p.id IN :ids")
+    List<Product> findWithCategoryByIdIn(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * Trova i prodotti con gli SKU indicati caricando anche la categoria, in un'unica query
+     */
+    @Query("SELECT p FROM Product p LEFT JOIN FETCH p.category WHERE p.sku IN :skus")
+    List<Product> findWithCategoryBySkuIn(@Param("skus") Collection<String> skus);
+    
     /**
      * Trova prodotti per categoria
      */
@@ -70,7 +97,8 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     List<Product> findByStockQuantityAndIsActiveTrue(int stockQuantity);
     
     /**
-     * Trova i prodotti più venduti
+     * Trova i prodotti più venduti aggregando tutti gli order item.
+     * Per le classifiche usare ProductSalesRepository, aggiornato in modo incrementale
      */
     @Query("SELECT p, COUNT(oi) as salesCount FROM Product p " +
            "JOIN p.orderItems oi " +
@@ -78,6 +106,74 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
            "ORDER BY salesCount DESC")
     List<Object[]> findBestSellingProducts(Pageable pageable);
     
+    /**
+     * Trova i prodotti attivi ordinati per popolarità (unità vendute dai contatori)
+     */
+    @Query(value = "SELECT p FROM Product p LEFT JOIN ProductSales s ON s.productId = p.id " +
+           "WHERE p.isActive = true " +
+           "ORDER BY COALESCE(s.unitsSold, 0) DESC, p.id ASC",
+           countQuery = "SELECT COUNT(p) FROM Product p WHERE p.isActive = true")
+    Page<Product> findActiveOrderByPopularity(Pageable pageable);
+    
+    /**
+     * Trova i prodotti attivi di una categoria e di tutte le sue sottocategorie attive,
+     * con un'unica join sulla closure table. Si escludono i discendenti con una categoria
+     * inattiva nel percorso dalla radice (stessa regola di countActiveProductsInSubtree)
+     */
+    @Query(value = "SELECT p FROM CategoryClosure cc JOIN Product p ON p.category.id = cc.descendantId " +
+                   "WHERE cc.ancestorId = :categoryId AND p.isActive = true " +
+                   "AND NOT EXISTS (SELECT 1 FROM CategoryClosure up JOIN Category mid ON mid.id = up.ancestorId " +
+                   "  WHERE up.descendantId = cc.descendantId AND up.depth < cc.depth AND mid.isActive = false)",
+           countQuery = "SELECT COUNT(p) FROM CategoryClosure cc JOIN Product p ON p.category.id = cc.descendantId " +
+                        "WHERE cc.ancestorId = :categoryId AND p.isActive = true " +
+                        "AND NOT EXISTS (SELECT 1 FROM CategoryClosure up JOIN Category mid " +
+                        "  ON mid.id = up.ancestorId WHERE up.descendantId = cc.descendantId " +
+                        "  AND up.depth < cc.depth AND mid.isActive = false)")
+    Page<Product> findActiveInCategorySubtree(@Param("categoryId") Long categoryId, Pageable pageable);
+    
+    /**
+     * Id dei prodotti attivi del sottoalbero di una categoria
+     */
+    @Query("SELECT p.id FROM CategoryClosure cc JOIN Product p ON p.category.id = cc.descendantId " +
+           "WHERE cc.ancestorId = :categoryId AND p.isActive = true")
+    List<Long> findActiveIdsInCategorySubtree(@Param("categoryId") Long categoryId);
+    
+    /**
+     * Id dei prodotti del sottoalbero di una categoria disattivati da una disattivazione in blocco
+     */
+    @Query("SELECT p.id FROM CategoryClosure cc JOIN Product p ON p.category.id = cc.descendantId " +
+           "WHERE cc.ancestorId = :categoryId AND p.isActive = false AND p.deactivatedByCategory = true")
+    List<Long> findDeactivatedByCategoryIdsInCategorySubtree(@Param("categoryId") Long categoryId);
+    
+    /**
+     * Disattiva con un unico UPDATE i prodotti attivi del sottoalbero di una categoria,
+     * marcandoli come disattivati dalla categoria
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Product p SET p.isActive = false, p.deactivatedByCategory = true, p.updatedAt = :updatedAt " +
+           "WHERE p.isActive = true " +
+           "AND p.category.id IN (SELECT cc.descendantId FROM CategoryClosure cc WHERE cc.ancestorId = :categoryId)")
+    int deactivateInCategorySubtree(@Param("categoryId") Long categoryId, @Param("updatedAt") ZonedDateTime updatedAt);
+    
+    /**
+     * Riattiva con un unico UPDATE i prodotti del sottoalbero disattivati da una disattivazione
+     * in blocco; quelli eliminati o disattivati singolarmente restano inattivi
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Product p SET p.isActive = true, p.deactivatedByCategory = false, p.updatedAt = :updatedAt " +
+           "WHERE p.isActive = false AND p.deactivatedByCategory = true " +
+           "AND p.category.id IN (SELECT cc.descendantId FROM CategoryClosure cc WHERE cc.ancestorId = :categoryId)")
+    int reactivateInCategorySubtree(@Param("categoryId") Long categoryId, @Param("updatedAt") ZonedDateTime updatedAt);
+    
+    /**
+     * Aggiorna updated_at di tutti i prodotti del sottoalbero di una categoria, così le
+     * esportazioni incrementali riprendono i prodotti il cui percorso o stato di categoria è cambiato
+     */
+    @Modifying
+    @Query("UPDATE Product p SET p.updatedAt = :updatedAt WHERE p.category.id IN " +
+           "(SELECT cc.descendantId FROM CategoryClosure cc WHERE cc.ancestorId = :categoryId)")
+    int touchCategorySubtree(@Param("categoryId") Long categoryId, @Param("updatedAt") ZonedDateTime updatedAt);
+    
     /**
      * Trova prodotti per categoria con filtri avanzati
      */
@@ -102,4 +198,47 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
      * Verifica se esiste un prodotto con lo stesso SKU
      */
     boolean existsBySku(String sku);
+    
+    /**
+     * Trova i prodotti in modalità hot
+     */
+    List<Product> findByIsHotTrue();
+    
+    /**
+     * Aggiorna lo stock con un delta relativo, senza leggere il valore corrente
+     */
+    @Modifying
+    @Query("UPDATE Product p SET p.stockQuantity = p.stockQuantity + :delta, p.updatedAt = :updatedAt WHERE p.id = :id")
+    int adjustStock(@Param("id") Long id, @Param("delta") int delta, @Param("updatedAt") ZonedDateTime updatedAt);
+    
+    default int adjustStock(Long id, int delta) {
+        return adjustStock(id, delta, ZonedDateTime.now());
+    }
+    
+    /**
+     * Stream dei prodotti attivi per l'esportazione completa del catalogo.
+     * Il fetch size Integer.MIN_VALUE attiva lo streaming riga per riga del driver MySQL
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "-2147483648"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT new com.example.project_security.dto.response.ProductExportDTO(" +
+           "p.id, p.name, p.description, p.price, p.stockQuantity, p.sku, p.imageUrl, c.id, p.isActive, p.updatedAt) " +
+           "FROM Product p LEFT JOIN p.category c " +
+           "WHERE p.isActive = true ORDER BY p.id")
+    Stream<ProductExportDTO> streamActiveForExport();
+    
+    /**
+     * Stream dei prodotti (anche disattivati) modificati dopo il watermark, sull'indice di updated_at
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "-2147483648"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT new com.example.project_security.dto.response.ProductExportDTO(" +
+           "p.id, p.name, p.description, p.price, p.stockQuantity, p.sku, p.imageUrl, c.id, p.isActive, p.updatedAt) " +
+           "FROM Product p LEFT JOIN p.category c " +
+           "WHERE p.updatedAt > :updatedSince ORDER BY p.updatedAt, p.id")
+    Stream<ProductExportDTO> streamUpdatedSinceForExport(@Param("updatedSince") ZonedDateTime updatedSince);
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+package com.example.project_security.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.project_security.model.ProductSalesDaily;
+
+/**
+ * Repository per i bucket giornalieri delle vendite per prodotto.
+ */
+@Repository
+public interface ProductSalesDailyRepository extends JpaRepository<ProductSalesDaily, Long> {
+
+    /**
+     * Prodotti più venduti in un intervallo di date, aggregando solo i bucket giornalieri
+     */
+    @Query("SELECT p, SUM(d.unitsSold) AS totalSold FROM ProductSalesDaily d JOIN Product p ON p.id = d.productId " +
+           "WHERE d.salesDate BETWEEN :startDate AND :endDate " +
+           "GROUP BY p " +
+           "HAVING SUM(d.unitsSold) > 0 " +
+           "ORDER BY totalSold DESC")
+    List<Object[]> findTopSellersBetween(@Param("startDate") LocalDate startDate,
+                                         @Param("endDate") LocalDate endDate,
+                                         Pageable pageable);
+
+    /**
+     * Ricostruisce i bucket giornalieri dallo storico degli ordini (usato solo se la tabella è vuota).
+     * Come per i totali, i bucket già scritti da checkout concorrenti prendono il valore aggregato
+     */
+    @Modifying
+    @Query(value = "INSERT INTO product_sales_daily (product_id, sales_date, units_sold) " +
+           "SELECT * FROM (SELECT oi.product_id, DATE(o.order_date) AS sales_date, SUM(oi.quantity) AS units_sold " +
+           "  FROM order_items oi JOIN orders o ON o.id = oi.order_id " +
+           "  WHERE o.order_status NOT IN ('CANCELLED', 'REFUNDED') " +
+           "  GROUP BY oi.product_id, DATE(o.order_date)) AS rebuilt " +
+           "ON DUPLICATE KEY UPDATE units_sold = rebuilt.units_sold",
+           nativeQuery = true)
+    int rebuildFromOrderItems();
+}
@@ -0,0 +1,50 @@
+package com.example.project_security.repository;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Aggiornamento in batch dei contatori di vendita (totali e giornalieri):
+ * due statement per ordine, qualunque sia il numero di righe.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ProductSalesJdbcRepository {
+
+    private static final String ADD_SALES_SQL =
+            "INSERT INTO product_sales (product_id, units_sold, order_count) VALUES (?, ?, ?) AS new " +
+            "ON DUPLICATE KEY UPDATE units_sold = units_sold + new.units_sold, " +
+            "order_count = order_count + new.order_count";
+
+    private static final String ADD_DAILY_SALES_SQL =
+            "INSERT INTO product_sales_daily (product_id, sales_date, units_sold) VALUES (?, ?, ?) AS new " +
+            "ON DUPLICATE KEY UPDATE units_sold = units_sold + new.units_sold";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Somma (sign 1) o storna (sign -1) le quantità vendute di un ordine
+     * nei contatori totali e nel bucket del giorno indicato
+     */
+    public void addSales(LocalDate salesDate, Map<Long, Integer> quantityByProduct, int sign) {
+        if (quantityByProduct.isEmpty()) {
+            return;
+        }
+        Date date = Date.valueOf(salesDate);
+        List<Object[]> totals = quantityByProduct.entrySet().stream()
+                .map(entry -> new Object[] { entry.getKey(), (long) sign * entry.getValue(), sign })
+                .toList();
+        List<Object[]> daily = quantityByProduct.entrySet().stream()
+                .map(entry -> new Object[] { entry.getKey(), date, (long) sign * entry.getValue() })
+                .toList();
+        jdbcTemplate.batchUpdate(ADD_SALES_SQL, totals);
+        jdbcTemplate.batchUpdate(ADD_DAILY_SALES_SQL, daily);
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.project_security.repository;
+
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import com.example.project_security.model.ProductSales;
+
+/**
+ * Repository per i contatori cumulativi delle vendite per prodotto.
+ */
+@Repository
+public interface ProductSalesRepository extends JpaRepository<ProductSales, Long> {
+
+    /**
+     * Prodotti attivi più venduti, tramite l'indice su units_sold
+     */
+    @Query("SELECT p, s.unitsSold FROM ProductSales s JOIN Product p ON p.id = s.productId " +
+           "WHERE p.isActive = true AND s.unitsSold > 0 " +
+           "ORDER BY s.unitsSold DESC")
+    List<Object[]> findTopSellers(Pageable pageable);
+
+    /**
+     * Ricostruisce i contatori dallo storico degli ordini (usato solo se la tabella è vuota).
+     * Le righe già inserite da checkout concorrenti vengono sovrascritte con il valore aggregato,
+     * che include anche quegli ordini: la ricostruzione non fallisce e non conta due volte
+     */
+    @Modifying
+    @Query(value = "INSERT INTO product_sales (product_id, units_sold, order_count) " +
+           "SELECT * FROM (SELECT oi.product_id, SUM(oi.quantity) AS units_sold, COUNT(*) AS order_count " +
+           "  FROM order_items oi JOIN orders o ON o.id = oi.order_id " +
+           "  WHERE o.order_status NOT IN ('CANCELLED', 'REFUNDED') " +
+           "  GROUP BY oi.product_id) AS rebuilt " +
+           "ON DUPLICATE KEY UPDATE units_sold = rebuilt.units_sold, order_count = rebuilt.order_count",
+           nativeQuery = true)
+    int rebuildFromOrderItems();
+}
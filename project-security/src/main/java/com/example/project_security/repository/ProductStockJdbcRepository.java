@@ -0,0 +1,169 @@
+package com.example.project_security.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Accesso JDBC diretto alla colonna stock_quantity per i prodotti in modalità "hot".
+ * Le scritture sono aggiornamenti relativi (mai valori assoluti letti in memoria),
+ * così non entrano in conflitto con le altre transazioni sulla stessa riga.
+ *
+ * Gli order item dei prodotti hot nascono con stock_pending = true e vengono scalati
+ * uno per uno: ogni item è marcato nella stessa transazione in cui la sua quantità
+ * viene tolta da stock_quantity, quindi non viene mai scalato due volte né saltato,
+ * anche se la transazione che lo ha inserito fa commit in ritardo.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ProductStockJdbcRepository {
+
+    /**
+     * Order item pendenti già committati. SKIP LOCKED salta quelli ancora in una
+     * transazione aperta (e quelli presi da un flush concorrente): restano pendenti
+     * e vengono scalati al ciclo successivo
+     */
+    private static final String CLAIM_PENDING_SQL =
+            "SELECT id, product_id, quantity FROM order_items WHERE stock_pending = true " +
+            "ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED";
+
+    private static final String CLAIM_PENDING_FOR_PRODUCT_SQL =
+            "SELECT id, product_id, quantity FROM order_items WHERE stock_pending = true AND product_id = ? " +
+            "FOR UPDATE SKIP LOCKED";
+
+    private static final String DECREMENT_STOCK_SQL =
+            "UPDATE products SET stock_quantity = stock_quantity - ?, updated_at = ? WHERE id = ?";
+
+    private static final String MARK_APPLIED_SQL =
+            "UPDATE order_items SET stock_pending = false WHERE id IN (:ids)";
+
+    private static final String RECONCILE_SQL =
+            "SELECT p.stock_quantity - COALESCE((SELECT SUM(oi.quantity) FROM order_items oi " +
+            "  WHERE oi.stock_pending = true AND oi.product_id = p.id), 0) " +
+            "FROM products p WHERE p.id = ?";
+
+    private static final String LEGACY_WATERMARK_EXISTS_SQL =
+            "SELECT COUNT(*) FROM information_schema.columns " +
+            "WHERE table_schema = DATABASE() AND table_name = 'products' AND column_name = 'hot_stock_watermark'";
+
+    /**
+     * Con il vecchio schema gli order item dei prodotti hot oltre il watermark non erano
+     * ancora stati scalati: diventano pendenti
+     */
+    private static final String MARK_LEGACY_PENDING_SQL =
+            "UPDATE order_items oi JOIN products p ON p.id = oi.product_id " +
+            "SET oi.stock_pending = true " +
+            "WHERE p.is_hot = true AND p.hot_stock_watermark IS NOT NULL AND oi.id > p.hot_stock_watermark";
+
+    /**
+     * Order item con quantità non ancora scalata da stock_quantity
+     */
+    public record PendingItem(long id, long productId, int quantity) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    /**
+     * Scala da stock_quantity fino a limit order item pendenti, con un batch di UPDATE
+     * (uno per prodotto) e un solo UPDATE che li marca come applicati.
+     *
+     * @return il numero di order item applicati
+     */
+    @Transactional
+    public int applyPendingOrderItems(int limit) {
+        return apply(jdbcTemplate.query(CLAIM_PENDING_SQL, (rs, rowNum) -> mapPendingItem(rs), limit));
+    }
+
+    /**
+     * Scala da stock_quantity gli order item pendenti di un prodotto
+     */
+    @Transactional
+    public int applyPendingOrderItems(Long productId) {
+        return apply(claimPending(productId));
+    }
+
+    /**
+     * Imposta lo stock assoluto di un prodotto hot. Gli order item pendenti già committati
+     * si considerano inclusi nella nuova quantità e vengono marcati come applicati
+     */
+    @Transactional
+    public void overwriteStock(Long productId, int quantity) {
+        markApplied(claimPending(productId));
+        jdbcTemplate.update("UPDATE products SET stock_quantity = ?, updated_at = ? WHERE id = ?",
+                quantity, Timestamp.from(Instant.now()), productId);
+    }
+
+    /**
+     * Migra i database creati con products.hot_stock_watermark: marca come pendenti gli order
+     * item non ancora scalati e rimuove la colonna (ddl-auto=update non elimina colonne).
+     * Non fa nulla se la colonna non esiste più.
+     *
+     * @return il numero di order item marcati come pendenti
+     */
+    @Transactional
+    public int migrateLegacyWatermark() {
+        Integer columns = jdbcTemplate.queryForObject(LEGACY_WATERMARK_EXISTS_SQL, Integer.class);
+        if (columns == null || columns == 0) {
+            return 0;
+        }
+        int marked = jdbcTemplate.update(MARK_LEGACY_PENDING_SQL);
+        // Azzerato nella stessa transazione: se l'ALTER TABLE fallisce, al riavvio non si marca due volte
+        jdbcTemplate.update("UPDATE products SET hot_stock_watermark = NULL WHERE hot_stock_watermark IS NOT NULL");
+        // L'ALTER TABLE fa commit implicito degli UPDATE precedenti
+        jdbcTemplate.execute("ALTER TABLE products DROP COLUMN hot_stock_watermark");
+        return marked;
+    }
+
+    /**
+     * Stock effettivamente disponibile: stock_quantity meno gli order item non ancora scalati
+     */
+    public long computeAvailableStock(Long productId) {
+        Long available = jdbcTemplate.queryForObject(RECONCILE_SQL, Long.class, productId);
+        return available != null ? available : 0L;
+    }
+
+    private List<PendingItem> claimPending(Long productId) {
+        return jdbcTemplate.query(CLAIM_PENDING_FOR_PRODUCT_SQL, (rs, rowNum) -> mapPendingItem(rs), productId);
+    }
+
+    private int apply(List<PendingItem> items) {
+        if (items.isEmpty()) {
+            return 0;
+        }
+        Map<Long, Integer> quantityByProduct = new LinkedHashMap<>();
+        for (PendingItem item : items) {
+            quantityByProduct.merge(item.productId(), item.quantity(), Integer::sum);
+        }
+        Timestamp now = Timestamp.from(Instant.now());
+        List<Object[]> args = quantityByProduct.entrySet().stream()
+                .map(entry -> new Object[] { entry.getValue(), now, entry.getKey() })
+                .toList();
+        jdbcTemplate.batchUpdate(DECREMENT_STOCK_SQL, args);
+        markApplied(items);
+        return items.size();
+    }
+
+    private void markApplied(List<PendingItem> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        namedParameterJdbcTemplate.update(MARK_APPLIED_SQL,
+                Map.of("ids", items.stream().map(PendingItem::id).toList()));
+    }
+
+    private static PendingItem mapPendingItem(ResultSet rs) throws SQLException {
+        return new PendingItem(rs.getLong("id"), rs.getLong("product_id"), rs.getInt("quantity"));
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.project_security.repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Accesso JDBC alla tabella product_views: i contatori accumulati in memoria
+ * vengono scritti con un unico batch di upsert per fascia oraria.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ProductViewJdbcRepository {
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO product_views (product_id, bucket_start, view_count) VALUES (?, ?, ?) AS new " +
+            "ON DUPLICATE KEY UPDATE view_count = view_count + new.view_count";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Somma le visualizzazioni accumulate al bucket indicato, in un unico batch
+     */
+    public int[] addViews(Map<Long, Long> viewsByProduct, LocalDateTime bucketStart) {
+        Timestamp bucket = Timestamp.valueOf(bucketStart);
+        List<Object[]> args = viewsByProduct.entrySet().stream()
+                .map(entry -> new Object[] { entry.getKey(), bucket, entry.getValue() })
+                .toList();
+        return jdbcTemplate.batchUpdate(UPSERT_SQL, args);
+    }
+
+    /**
+     * Scorre i bucket a partire dalla data indicata (usato per ricostruire i punteggi all'avvio)
+     */
+    public void forEachBucketSince(LocalDateTime since, BucketCallback callback) {
+        jdbcTemplate.query(
+                "SELECT product_id, bucket_start, view_count FROM product_views WHERE bucket_start >= ?",
+                (RowCallbackHandler) rs -> callback.accept(rs.getLong(1),
+                        rs.getTimestamp(2).toLocalDateTime(), rs.getLong(3)),
+                Timestamp.valueOf(since));
+    }
+
+    /**
+     * Elimina i bucket più vecchi della data indicata
+     */
+    public int deleteBucketsBefore(LocalDateTime before) {
+        return jdbcTemplate.update("DELETE FROM product_views WHERE bucket_start < ?", Timestamp.valueOf(before));
+    }
+
+    @FunctionalInterface
+    public interface BucketCallback {
+        void accept(long productId, LocalDateTime bucketStart, long viewCount);
+    }
+}
@@ -35,6 +35,12 @@ public interface UtenteRepository extends JpaRepository<Utente, Long> {
      */
     Optional<Utente> findByEmail(String email);
 
+    /**
+     * Solo l'id dell'utente con una determinata email
+     */
+    @Query("SELECT u.id FROM Utente u WHERE u.email = :email")
+    Optional<Long> findIdByEmail(@Param("email") String email);
+
     /**
      * Verifica se esiste un utente con una determinata email
      */
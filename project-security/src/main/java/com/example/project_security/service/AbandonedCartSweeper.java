@@ -0,0 +1,187 @@
+package com.example.project_security.service;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.project_security.repository.AbandonedCartJdbcRepository;
+import com.example.project_security.repository.AbandonedCartJdbcRepository.AbandonedCartRow;
+import com.example.project_security.repository.AbandonedCartJdbcRepository.Chunk;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Job periodico che individua i carrelli abbandonati.
+ *
+ * Un carrello è abbandonato se è attivo, ha almeno una riga, non è stato modificato
+ * da abandoned-after-days giorni e l'utente non ha fatto ordini nello stesso periodo.
+ * I carrelli attivi si scorrono a blocchi per id; ogni blocco è una transazione che
+ * segnala i nuovi carrelli abbandonati, disattiva quelli segnalati da oltre
+ * expire-after-days giorni e salva il punto di ripresa. Dopo un arresto il job
+ * riparte dal blocco successivo all'ultimo confermato. Ogni esecuzione elabora al
+ * più max-chunks-per-run blocchi, il passaggio prosegue all'esecuzione successiva.
+ *
+ * Per i carrelli appena segnalati viene pubblicato un AbandonedCartsEvent dopo il commit.
+ */
+@Service
+@Slf4j
+public class AbandonedCartSweeper {
+
+    private static final String JOB_NAME = "abandoned-cart-sweeper";
+
+    /**
+     * Avanzamento del passaggio corrente e totali dall'avvio dell'applicazione
+     */
+    public record Progress(long checkpoint, long passScanned, long passFlagged, long passExpired,
+            long totalFlagged, long totalExpired, long passesCompleted, ZonedDateTime passStartedAt,
+            ZonedDateTime lastChunkAt) {
+    }
+
+    private final AbandonedCartJdbcRepository abandonedCartJdbcRepository;
+    private final CartService cartService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final int abandonedAfterDays;
+    private final int expireAfterDays;
+    private final int chunkSize;
+    private final int maxChunksPerRun;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong passScanned = new AtomicLong();
+    private final AtomicLong passFlagged = new AtomicLong();
+    private final AtomicLong passExpired = new AtomicLong();
+    private final AtomicLong totalFlagged = new AtomicLong();
+    private final AtomicLong totalExpired = new AtomicLong();
+    private final AtomicLong passesCompleted = new AtomicLong();
+    private volatile long checkpoint;
+    private volatile ZonedDateTime passStartedAt;
+    private volatile ZonedDateTime lastChunkAt;
+
+    public AbandonedCartSweeper(AbandonedCartJdbcRepository abandonedCartJdbcRepository, CartService cartService,
+            ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager,
+            @Value("${silkroad.cart.abandoned.abandoned-after-days:7}") int abandonedAfterDays,
+            @Value("${silkroad.cart.abandoned.expire-after-days:30}") int expireAfterDays,
+            @Value("${silkroad.cart.abandoned.chunk-size:500}") int chunkSize,
+            @Value("${silkroad.cart.abandoned.max-chunks-per-run:100}") int maxChunksPerRun) {
+        this.abandonedCartJdbcRepository = abandonedCartJdbcRepository;
+        this.cartService = cartService;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.abandonedAfterDays = abandonedAfterDays;
+        this.expireAfterDays = expireAfterDays;
+        this.chunkSize = chunkSize;
+        this.maxChunksPerRun = maxChunksPerRun;
+    }
+
+    /**
+     * Elabora i blocchi successivi al punto di ripresa, fino al limite per esecuzione
+     */
+    @Scheduled(initialDelayString = "${silkroad.cart.abandoned.sweep-interval-ms:300000}",
+            fixedDelayString = "${silkroad.cart.abandoned.sweep-interval-ms:300000}")
+    public void sweep() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            for (int i = 0; i < maxChunksPerRun; i++) {
+                if (!Boolean.TRUE.equals(transactionTemplate.execute(status -> sweepChunk()))) {
+                    break;
+                }
+            }
+        } catch (RuntimeException ex) {
+            // Il punto di ripresa è quello dell'ultimo blocco confermato
+            log.error("Ricerca dei carrelli abbandonati interrotta, riprenderà dall'ultimo blocco confermato", ex);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    public Progress progress() {
+        return new Progress(checkpoint, passScanned.get(), passFlagged.get(), passExpired.get(),
+                totalFlagged.get(), totalExpired.get(), passesCompleted.get(), passStartedAt, lastChunkAt);
+    }
+
+    /**
+     * Elabora un blocco; restituisce false a fine passaggio
+     */
+    private boolean sweepChunk() {
+        long afterId = abandonedCartJdbcRepository.lockCheckpoint(JOB_NAME);
+        Chunk chunk = abandonedCartJdbcRepository.findChunk(afterId, chunkSize);
+        if (chunk.size() == 0) {
+            // Fine del passaggio: il prossimo riparte dall'inizio
+            abandonedCartJdbcRepository.saveCheckpoint(JOB_NAME, 0);
+            TransactionCallbacks.afterCommit(this::completePass);
+            return false;
+        }
+
+        ZonedDateTime now = ZonedDateTime.now();
+        ZonedDateTime expireBefore = now.minusDays(expireAfterDays);
+        List<AbandonedCartRow> abandoned = abandonedCartJdbcRepository.findAbandoned(afterId, chunk.lastId(),
+                now.minusDays(abandonedAfterDays));
+
+        List<AbandonedCartRow> toFlag = abandoned.stream()
+                .filter(row -> row.abandonedAt() == null)
+                .toList();
+        List<AbandonedCartRow> toExpire = abandoned.stream()
+                .filter(row -> row.abandonedAt() != null && row.abandonedAt().isBefore(expireBefore))
+                .toList();
+        abandonedCartJdbcRepository.markAbandoned(toFlag.stream().map(AbandonedCartRow::cartId).toList(), now);
+        abandonedCartJdbcRepository.expire(toExpire.stream().map(AbandonedCartRow::cartId).toList());
+        abandonedCartJdbcRepository.saveCheckpoint(JOB_NAME, chunk.lastId());
+
+        TransactionCallbacks.afterCommit(() -> {
+            if (afterId == 0) {
+                startPass();
+            }
+            checkpoint = chunk.lastId();
+            lastChunkAt = now;
+            passScanned.addAndGet(chunk.size());
+            passFlagged.addAndGet(toFlag.size());
+            passExpired.addAndGet(toExpire.size());
+            totalFlagged.addAndGet(toFlag.size());
+            totalExpired.addAndGet(toExpire.size());
+            // I carrelli disattivati non devono restare in memoria, ma le modifiche
+            // non ancora scritte dopo la lettura del blocco vanno conservate
+            toExpire.forEach(row -> cartService.cartExpired(row.userId(), row.cartId(), row.version()));
+            if (!toFlag.isEmpty()) {
+                publish(toFlag);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Le notifiche non fermano il job: il blocco è già confermato
+     */
+    private void publish(List<AbandonedCartRow> flagged) {
+        try {
+            eventPublisher.publishEvent(new AbandonedCartsEvent(flagged.stream()
+                    .map(row -> new AbandonedCartsEvent.AbandonedCart(row.cartId(), row.userId()))
+                    .toList()));
+        } catch (RuntimeException ex) {
+            log.error("Notifica di {} carrelli abbandonati fallita", flagged.size(), ex);
+        }
+    }
+
+    private void startPass() {
+        passStartedAt = ZonedDateTime.now();
+        passScanned.set(0);
+        passFlagged.set(0);
+        passExpired.set(0);
+    }
+
+    private void completePass() {
+        passesCompleted.incrementAndGet();
+        checkpoint = 0;
+        log.info("Passaggio sui carrelli abbandonati completato: {} carrelli esaminati, {} segnalati, {} disattivati",
+                passScanned.get(), passFlagged.get(), passExpired.get());
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.project_security.service;
+
+import java.util.List;
+
+/**
+ * Carrelli appena segnalati come abbandonati da un blocco dello sweeper.
+ * Pubblicato dopo il commit del blocco; è il punto di aggancio per le notifiche
+ * (ad esempio email di promemoria) tramite @EventListener.
+ */
+public record AbandonedCartsEvent(List<AbandonedCart> carts) {
+
+    public record AbandonedCart(long cartId, long userId) {
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.project_security.service;
+
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.project_security.dto.response.BestSellerDTO;
+import com.example.project_security.model.Order;
+import com.example.project_security.model.OrderItem;
+import com.example.project_security.model.Product;
+import com.example.project_security.repository.ProductSalesDailyRepository;
+import com.example.project_security.repository.ProductSalesJdbcRepository;
+import com.example.project_security.repository.ProductSalesRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service per la classifica dei prodotti più venduti.
+ * Mantiene i contatori di vendita per prodotto (totali e giornalieri) in modo
+ * incrementale e serve la top-K da una copia in memoria aggiornata periodicamente.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@Transactional
+public class BestSellerService {
+
+    private final ProductSalesRepository productSalesRepository;
+    private final ProductSalesDailyRepository productSalesDailyRepository;
+    private final ProductSalesJdbcRepository productSalesJdbcRepository;
+
+    /**
+     * Numero di prodotti mantenuti nella classifica in memoria
+     */
+    @Value("${silkroad.best-sellers.top-k:100}")
+    private int topK;
+
+    private volatile List<BestSellerDTO> topSellers = List.of();
+
+    /**
+     * Popola i contatori dallo storico se vuoti e carica la classifica
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (productSalesRepository.count() == 0) {
+            int products = productSalesRepository.rebuildFromOrderItems();
+            productSalesDailyRepository.rebuildFromOrderItems();
+            log.info("Contatori vendite ricostruiti dallo storico per {} prodotti", products);
+        }
+        refresh();
+    }
+
+    /**
+     * Registra le vendite di un nuovo ordine: quantità per prodotto alla data dell'ordine
+     */
+    public void recordOrder(ZonedDateTime orderDate, Map<Long, Integer> quantityByProduct) {
+        productSalesJdbcRepository.addSales(orderDate.toLocalDate(), quantityByProduct, 1);
+    }
+
+    /**
+     * Storna le vendite di un ordine annullato o rimborsato
+     */
+    public void reverseOrder(Order order) {
+        Map<Long, Integer> quantityByProduct = new HashMap<>();
+        for (OrderItem item : order.getOrderItems()) {
+            quantityByProduct.merge(item.getProduct().getId(), item.getQuantity(), Integer::sum);
+        }
+        productSalesJdbcRepository.addSales(order.getOrderDate().toLocalDate(), quantityByProduct, -1);
+    }
+
+    /**
+     * Ricarica la classifica in memoria dalla tabella dei contatori
+     */
+    @Scheduled(fixedDelayString = "${silkroad.best-sellers.refresh-interval-ms:60000}")
+    @Transactional(readOnly = true)
+    public void refresh() {
+        topSellers = productSalesRepository.findTopSellers(PageRequest.of(0, topK)).stream()
+                .map(this::convertToDTO)
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    /**
+     * Prodotti più venduti di sempre, dalla classifica in memoria
+     */
+    @Transactional(readOnly = true)
+    public List<BestSellerDTO> getBestSellers(int limit) {
+        if (limit > topK) {
+            return productSalesRepository.findTopSellers(PageRequest.of(0, limit)).stream()
+                    .map(this::convertToDTO)
+                    .collect(Collectors.toList());
+        }
+        List<BestSellerDTO> current = topSellers;
+        return current.subList(0, Math.min(limit, current.size()));
+    }
+
+    /**
+     * Prodotti più venduti in un intervallo di date, dai bucket giornalieri
+     */
+    @Transactional(readOnly = true)
+    public List<BestSellerDTO> getBestSellersBetween(LocalDate startDate, LocalDate endDate, int limit) {
+        return productSalesDailyRepository.findTopSellersBetween(startDate, endDate, PageRequest.of(0, limit))
+                .stream()
+                .map(this::convertToDTO)
+                .collect(Collectors.toList());
+    }
+
+    private BestSellerDTO convertToDTO(Object[] row) {
+        Product product = (Product) row[0];
+        return BestSellerDTO.builder()
+                .productId(product.getId())
+                .productName(product.getName())
+                .productSku(product.getSku())
+                .productImageUrl(product.getImageUrl())
+                .price(product.getPrice())
+                .unitsSold(((Number) row[1]).longValue())
+                .build();
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.project_security.service;
+
+import java.util.Map;
+import java.util.Set;
+
+import com.example.project_security.repository.CartJdbcRepository.CartProductRow;
+
+/**
+ * Esito di una modifica del carrello: il nuovo stato, i prodotti già letti durante la
+ * modifica (anche solo una parte delle righe) e i prodotti toccati. CartService ne
+ * ricava il carrello completo o la sola variazione.
+ */
+public record CartChange(CartSnapshot cart, Map<Long, CartProductRow> products, Set<Long> changedProductIds) {
+}
@@ -0,0 +1,78 @@
+package com.example.project_security.service;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Conteggi del carrello attivo per utente (righe e quantità totale) usati dal badge.
+ *
+ * I conteggi vengono registrati dopo ogni modifica del carrello fatta da CartService,
+ * insieme alla versione del carrello: una registrazione più vecchia di quella presente
+ * viene ignorata, così due commit concorrenti non lasciano in memoria il conteggio
+ * superato. Oltre il limite di voci se ne scarta una qualsiasi; alla voce mancante
+ * il conteggio si ricalcola dal CartStore.
+ */
+@Service
+public class CartCountCache {
+
+    /**
+     * Righe e quantità totale del carrello alla versione indicata
+     */
+    public record CartCount(long version, int lines, int quantity) {
+
+        public static CartCount of(CartSnapshot cart) {
+            return new CartCount(cart.version(), cart.lines().size(), cart.totalItems());
+        }
+    }
+
+    private final Map<Long, CartCount> counts = new ConcurrentHashMap<>();
+    private final int maxEntries;
+
+    public CartCountCache(@Value("${silkroad.cart.count-cache.max-entries:100000}") int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Conteggio in memoria, null se l'utente non ha una voce
+     */
+    public CartCount get(long userId) {
+        return counts.get(userId);
+    }
+
+    /**
+     * Registra il conteggio del carrello se non è più vecchio di quello presente
+     */
+    public CartCount record(CartSnapshot cart) {
+        CartCount count = CartCount.of(cart);
+        CartCount recorded = counts.merge(cart.userId(), count,
+                (current, candidate) -> candidate.version() >= current.version() ? candidate : current);
+        evictIfFull();
+        return recorded;
+    }
+
+    /**
+     * Scarta il conteggio dell'utente, ad esempio quando il carrello viene chiuso dal checkout
+     */
+    public void evict(long userId) {
+        counts.remove(userId);
+    }
+
+    public int size() {
+        return counts.size();
+    }
+
+    private void evictIfFull() {
+        if (counts.size() <= maxEntries) {
+            return;
+        }
+        Iterator<Long> iterator = counts.keySet().iterator();
+        while (counts.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+}
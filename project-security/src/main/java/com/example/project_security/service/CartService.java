@@ -1,25 +1,34 @@
 package com.example.project_security.service;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.example.project_security.dto.CartDTO;
+import com.example.project_security.dto.CartDeltaDTO;
 import com.example.project_security.dto.CartItemDTO;
+import com.example.project_security.dto.request.CartOperationsDTO;
 import com.example.project_security.dto.request.UpdateCartItemDTO;
 import com.example.project_security.dto.response.AddToCartDTO;
 import com.example.project_security.exception.InsufficientStockException;
 import com.example.project_security.exception.ResourceNotFoundException;
-import com.example.project_security.model.Cart;
-import com.example.project_security.model.CartItem;
-import com.example.project_security.model.Product;
-import com.example.project_security.model.Utente;
-import com.example.project_security.repository.CartItemRepository;
-import com.example.project_security.repository.CartRepository;
-import com.example.project_security.repository.ProductRepository;
-import com.example.project_security.repository.UtenteRepository;
+import com.example.project_security.model.Money;
+import com.example.project_security.repository.CartJdbcRepository;
+import com.example.project_security.repository.CartJdbcRepository.CartProductRow;
+import com.example.project_security.repository.CartJdbcRepository.CartViewRow;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -27,6 +36,11 @@ import lombok.extern.slf4j.Slf4j;
 /**
  * Service per la gestione del carrello della spesa.
  * Gestisce l'aggiunta, rimozione e aggiornamento degli articoli nel carrello.
+ * Lo stato del carrello passa dal CartStore configurato (database o write-behind);
+ * i prodotti delle righe si caricano con un'unica query per risposta.
+ * L'aggiunta di un prodotto a un carrello esistente ha un percorso diretto
+ * basato sull'upsert di cart_items.
+ * Il carrello attivo si crea alla prima aggiunta di un prodotto.
  */
 @Service
 @RequiredArgsConstructor
@@ -34,153 +48,235 @@ import lombok.extern.slf4j.Slf4j;
 @Transactional
 public class CartService {
 
-    private final CartRepository cartRepository;
-    private final CartItemRepository cartItemRepository;
-    private final ProductRepository productRepository;
-    private final UtenteRepository userRepository;
+    private final CartJdbcRepository cartJdbcRepository;
+    private final CartStore cartStore;
+    private final CartCountCache cartCountCache;
+    private final HotStockService hotStockService;
 
     /**
-     * Crea un nuovo carrello per un utente
-     */
-    public Cart createCartForUser(Utente user) {
-        //log.info("Creazione nuovo carrello per utente: {}" , user.getEmail());
-
-        // Disattiva eventuali carrelli attivi precedenti
-        cartRepository.findByUserAndIsActiveTrue(user).ifPresent(cart -> {
-            cart.setActive(false);
-            cartRepository.save(cart);
-        });
-
-        Cart newCart = Cart.builder()
-                .user(user)
-                .isActive(true)
-                .build();
-
-        return cartRepository.save(newCart);
-    }
-
-    /**
-     * Recupera il carrello attivo di un utente
+     * Recupera il carrello attivo di un utente (vuoto se non ne ha ancora uno)
      */
     @Transactional(readOnly = true)
     public CartDTO getActiveCartByUserId(Long userId) {
-        Cart cart = cartRepository.findActiveCartByUserId(userId)
-                .orElseGet(() -> {
-                    // Se non esiste un carrello attivo, ne creiamo uno
-                    Utente user = userRepository.findById(userId)
-                            .orElseThrow(() -> new ResourceNotFoundException("Utente non trovato"));
-                    return createCartForUser(user);
-                });
-
-        return convertToDTO(cart);
+        // La lettura del carrello aggiorna anche il conteggio del badge
+        return convertToDTO(remember(cartStore.get(userId)));
     }
 
     /**
      * Aggiunge un prodotto al carrello
      */
-    public CartDTO addToCart(Long userId, AddToCartDTO addToCartDTO) {
+    public CartChange addToCart(Long userId, AddToCartDTO addToCartDTO) {
         log.info("Aggiunta prodotto {} al carrello dell'utente {}", addToCartDTO.getProductId(), userId);
 
-        // Recupera il carrello attivo
-        Cart cart = cartRepository.findActiveCartByUserId(userId)
-                .orElseGet(() -> {
-                    Utente user = userRepository.findById(userId)
-                            .orElseThrow(() -> new ResourceNotFoundException("Utente non trovato"));
-                    return createCartForUser(user);
-                });
+        // Percorso diretto: id del carrello, un upsert condizionato e una query per la risposta.
+        // Per i prodotti hot stock_quantity è in ritardo sul contatore: si passa dal percorso completo
+        if (!hotStockService.isHot(addToCartDTO.getProductId())
+                && cartStore.tryAdd(userId, addToCartDTO.getProductId(), addToCartDTO.getQuantity())) {
+            log.info("Prodotto aggiunto al carrello con successo");
+            Map<Long, CartProductRow> products = new HashMap<>();
+            CartSnapshot cart = remember(toSnapshot(userId, cartJdbcRepository.findActiveCartView(userId), products));
+            return new CartChange(cart, products, Set.of(addToCartDTO.getProductId()));
+        }
 
-        // Recupera il prodotto
-        Product product = productRepository.findById(addToCartDTO.getProductId())
-                .orElseThrow(() -> new ResourceNotFoundException("Prodotto non trovato"));
+        // Percorso completo: crea il carrello se manca e restituisce l'errore puntuale
+        CartProductRow product = findProduct(addToCartDTO.getProductId());
 
         // Verifica disponibilità
         if (!product.isAvailable()) {
-            throw new IllegalStateException("Prodotto non disponibile: " + product.getName());
+            throw new IllegalStateException("Prodotto non disponibile: " + product.name());
         }
 
         // Verifica stock
         if (!product.hasStock(addToCartDTO.getQuantity())) {
-            throw new InsufficientStockException("Stock insufficiente per il prodotto: " + product.getName());
+            throw new InsufficientStockException("Stock insufficiente per il prodotto: " + product.name());
         }
 
-        // Verifica se il prodotto è già nel carrello
-        CartItem cartItem = cartItemRepository.findByCartAndProduct(cart, product)
-                .orElse(null);
-
-        if (cartItem != null) {
-            // Aggiorna la quantità
-            int newQuantity = cartItem.getQuantity() + addToCartDTO.getQuantity();
+        CartSnapshot cart = remember(cartStore.update(userId, lines -> {
+            // Se il prodotto è già nel carrello si somma la quantità, al prezzo corrente
+            CartSnapshot.Line existing = lines.get(product.id());
+            int newQuantity = addToCartDTO.getQuantity() + (existing != null ? existing.quantity() : 0);
             if (!product.hasStock(newQuantity)) {
                 throw new InsufficientStockException("Stock insufficiente per la quantità richiesta");
             }
-            cartItem.setQuantity(newQuantity);
-            cartItem.updatePrice(); // Aggiorna il prezzo al prezzo corrente
-        } else {
-            // Crea un nuovo CartItem
-            cartItem = CartItem.builder()
-                    .cart(cart)
-                    .product(product)
-                    .quantity(addToCartDTO.getQuantity())
-                    .unitPrice(product.getPrice())
-                    .build();
-            cart.addCartItem(cartItem);
-        }
-
-        Cart savedCart = cartRepository.save(cart);
+            lines.put(product.id(), existing != null
+                    ? existing.withQuantityAndPrice(newQuantity, product.price())
+                    : new CartSnapshot.Line(null, product.id(), newQuantity, product.price()));
+        }));
         log.info("Prodotto aggiunto al carrello con successo");
 
-        return convertToDTO(savedCart);
+        return new CartChange(cart, Map.of(product.id(), product), Set.of(product.id()));
     }
 
     /**
      * Aggiorna la quantità di un item nel carrello
      */
-    public CartDTO updateCartItem(Long userId, Long cartItemId, UpdateCartItemDTO updateDTO) {
+    public CartChange updateCartItem(Long userId, Long cartItemId, UpdateCartItemDTO updateDTO) {
         log.info("Aggiornamento quantità item {} nel carrello", cartItemId);
+        return updateCartProduct(userId, findLineByItemId(userId, cartItemId).productId(), updateDTO);
+    }
 
-        CartItem cartItem = cartItemRepository.findById(cartItemId)
-                .orElseThrow(() -> new ResourceNotFoundException("Item non trovato nel carrello"));
-
-        // Verifica che l'item appartenga al carrello dell'utente
-        if (!cartItem.getCart().getUser().getId().equals(userId)) {
-            throw new IllegalArgumentException("Item non appartiene al carrello dell'utente");
-        }
+    /**
+     * Aggiorna la quantità di un prodotto nel carrello.
+     * Con il carrello in scrittura differita le righe appena aggiunte non hanno ancora un id
+     */
+    public CartChange updateCartProduct(Long userId, Long productId, UpdateCartItemDTO updateDTO) {
+        CartProductRow product = findProduct(productId);
 
         // Verifica stock per la nuova quantità
-        if (!cartItem.getProduct().hasStock(updateDTO.getQuantity())) {
+        if (!product.hasStock(updateDTO.getQuantity())) {
             throw new InsufficientStockException("Stock insufficiente per la quantità richiesta");
         }
 
-        cartItem.setQuantity(updateDTO.getQuantity());
-        cartItem.updatePrice(); // Aggiorna il prezzo al prezzo corrente
-
-        cartItemRepository.save(cartItem);
+        CartSnapshot cart = remember(cartStore.update(userId, lines -> {
+            CartSnapshot.Line line = lines.get(productId);
+            if (line == null) {
+                throw new ResourceNotFoundException("Item non trovato nel carrello");
+            }
+            // Aggiorna il prezzo al prezzo corrente
+            lines.put(productId, line.withQuantityAndPrice(updateDTO.getQuantity(), product.price()));
+        }));
         log.info("Quantità aggiornata con successo");
 
-        return convertToDTO(cartItem.getCart());
+        return new CartChange(cart, Map.of(product.id(), product), Set.of(productId));
     }
 
     /**
      * Rimuove un item dal carrello
      */
-    public CartDTO removeFromCart(Long userId, Long cartItemId) {
+    public CartChange removeFromCart(Long userId, Long cartItemId) {
         log.info("Rimozione item {} dal carrello", cartItemId);
+        return removeProductFromCart(userId, findLineByItemId(userId, cartItemId).productId());
+    }
 
-        CartItem cartItem = cartItemRepository.findById(cartItemId)
-                .orElseThrow(() -> new ResourceNotFoundException("Item non trovato nel carrello"));
+    /**
+     * Rimuove un prodotto dal carrello
+     */
+    public CartChange removeProductFromCart(Long userId, Long productId) {
+        CartSnapshot cart = remember(cartStore.update(userId, lines -> {
+            if (lines.remove(productId) == null) {
+                throw new ResourceNotFoundException("Item non trovato nel carrello");
+            }
+        }));
+        log.info("Item rimosso dal carrello con successo");
+
+        return new CartChange(cart, Map.of(), Set.of(productId));
+    }
 
-        // Verifica che l'item appartenga al carrello dell'utente
-        if (!cartItem.getCart().getUser().getId().equals(userId)) {
-            throw new IllegalArgumentException("Item non appartiene al carrello dell'utente");
+    /**
+     * Applica in blocco una lista di modifiche al carrello, nell'ordine ricevuto.
+     * I prodotti coinvolti si verificano con un'unica query, le modifiche si scrivono
+     * con un solo aggiornamento del carrello (statement in batch) e il carrello finale
+     * si costruisce una volta sola. Se un'operazione fallisce non viene applicata nessuna.
+     * Rimuovere un prodotto assente non è un errore, così la sincronizzazione è ripetibile:
+     * l'operazione non ha effetto e il prodotto non compare tra quelli modificati
+     */
+    public CartChange applyCartOperations(Long userId, CartOperationsDTO operationsDTO) {
+        List<CartOperationsDTO.Operation> operations = operationsDTO.getOperations();
+        log.info("Applicazione di {} operazioni al carrello dell'utente {}", operations.size(), userId);
+
+        Set<Long> productIds = new HashSet<>();
+        for (CartOperationsDTO.Operation operation : operations) {
+            if (operation.getType() != CartOperationsDTO.Type.REMOVE) {
+                if (operation.getQuantity() == null) {
+                    throw new IllegalArgumentException("La quantità è obbligatoria per " + operation.getType());
+                }
+                productIds.add(operation.getProductId());
+            }
         }
 
-        Cart cart = cartItem.getCart();
-        cart.removeCartItem(cartItem);
-        cartItemRepository.delete(cartItem);
+        Map<Long, CartProductRow> products = new HashMap<>(findCartProducts(productIds));
+        for (Long productId : productIds) {
+            CartProductRow product = products.get(productId);
+            if (product == null) {
+                throw new ResourceNotFoundException("Prodotto non trovato: " + productId);
+            }
+            if (!product.isAvailable()) {
+                throw new IllegalStateException("Prodotto non disponibile: " + product.name());
+            }
+        }
 
-        log.info("Item rimosso dal carrello con successo");
+        Map<Long, CartSnapshot.Line> before = new HashMap<>();
+        CartSnapshot cart = remember(cartStore.update(userId, lines -> {
+            // Il CartStore può ripetere la modifica: lo stato di partenza è quello dell'ultima esecuzione
+            before.clear();
+            before.putAll(lines);
+            for (CartOperationsDTO.Operation operation : operations) {
+                Long productId = operation.getProductId();
+                if (operation.getType() == CartOperationsDTO.Type.REMOVE) {
+                    lines.remove(productId);
+                    continue;
+                }
+                CartProductRow product = products.get(productId);
+                CartSnapshot.Line existing = lines.get(productId);
+                int newQuantity = operation.getType() == CartOperationsDTO.Type.ADD && existing != null
+                        ? existing.quantity() + operation.getQuantity()
+                        : operation.getQuantity();
+                if (!product.hasStock(newQuantity)) {
+                    throw new InsufficientStockException("Stock insufficiente per il prodotto: " + product.name());
+                }
+                lines.put(productId, existing != null
+                        ? existing.withQuantityAndPrice(newQuantity, product.price())
+                        : new CartSnapshot.Line(null, productId, newQuantity, product.price()));
+            }
+        }));
+        log.info("Operazioni sul carrello applicate con successo");
+
+        // Solo i prodotti la cui riga è davvero cambiata, creata o rimossa
+        Set<Long> changed = new LinkedHashSet<>();
+        for (CartOperationsDTO.Operation operation : operations) {
+            Long productId = operation.getProductId();
+            if (!Objects.equals(before.get(productId), cart.lines().get(productId))) {
+                changed.add(productId);
+            }
+        }
+        return new CartChange(cart, products, changed);
+    }
 
-        return convertToDTO(cart);
+    /**
+     * Carrello completo dopo una modifica: si leggono solo i prodotti non già letti dalla modifica
+     */
+    @Transactional(readOnly = true)
+    public CartDTO toCartDTO(CartChange change) {
+        Set<Long> missing = new HashSet<>(change.cart().lines().keySet());
+        missing.removeAll(change.products().keySet());
+        if (missing.isEmpty()) {
+            return convertToDTO(change.cart(), change.products());
+        }
+        Map<Long, CartProductRow> products = new HashMap<>(change.products());
+        products.putAll(findCartProducts(missing));
+        return convertToDTO(change.cart(), products);
+    }
+
+    /**
+     * Variazione del carrello dopo una modifica: righe toccate, totali e versione, senza accessi al database
+     */
+    public CartDeltaDTO toDeltaDTO(CartChange change) {
+        CartSnapshot cart = change.cart();
+        List<CartDeltaDTO.Line> changedItems = new ArrayList<>();
+        List<Long> removedProductIds = new ArrayList<>();
+        for (Long productId : change.changedProductIds()) {
+            CartSnapshot.Line line = cart.lines().get(productId);
+            if (line == null) {
+                removedProductIds.add(productId);
+                continue;
+            }
+            changedItems.add(CartDeltaDTO.Line.builder()
+                    .id(line.itemId())
+                    .productId(line.productId())
+                    .quantity(line.quantity())
+                    .unitPrice(line.unitPrice().toBigDecimal())
+                    .subtotal(line.subtotal().toBigDecimal())
+                    .build());
+        }
+        return CartDeltaDTO.builder()
+                .id(cart.cartId())
+                .version(cart.version())
+                .changedItems(changedItems)
+                .removedProductIds(removedProductIds)
+                .itemCount(cart.lines().size())
+                .totalItems(cart.totalItems())
+                .totalPrice(cart.totalPrice().toBigDecimal())
+                .build();
     }
 
     /**
@@ -189,101 +285,217 @@ public class CartService {
     public void clearCart(Long userId) {
         log.info("Svuotamento carrello per utente {}", userId);
 
-        Cart cart = cartRepository.findActiveCartByUserId(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("Carrello attivo non trovato"));
-
-        cartItemRepository.deleteByCart(cart);
-        cart.clear();
+        remember(cartStore.update(userId, Map::clear));
 
         log.info("Carrello svuotato con successo");
     }
 
     /**
-     * Verifica e aggiorna la disponibilità degli item nel carrello
+     * Verifica e aggiorna la disponibilità degli item nel carrello.
+     * Il carrello si legge una volta e i prodotti delle righe con un'unica query,
+     * dentro lo stesso aggiornamento: prezzi e quantità si correggono in memoria
+     * e si scrivono solo le righe cambiate
      */
     public CartDTO validateCart(Long userId) {
         log.info("Validazione carrello per utente {}", userId);
 
-        Cart cart = cartRepository.findActiveCartByUserId(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("Carrello attivo non trovato"));
-
-        List<CartItem> itemsToRemove = cart.getCartItems().stream()
-                .filter(item -> {
-                    Product product = item.getProduct();
-                    // Rimuovi se il prodotto non è più disponibile
-                    if (!product.isAvailable()) {
-                        log.warn("Prodotto {} non più disponibile, rimosso dal carrello", product.getName());
-                        return true;
-                    }
-                    // Aggiusta la quantità se lo stock è insufficiente
-                    if (!product.hasStock(item.getQuantity())) {
-                        if (product.getStockQuantity() > 0) {
-                            item.setQuantity(product.getStockQuantity());
-                            log.warn("Quantità ridotta a {} per prodotto {}", product.getStockQuantity(),
-                                    product.getName());
-                        } else {
-                            log.warn("Prodotto {} esaurito, rimosso dal carrello", product.getName());
-                            return true;
-                        }
-                    }
-                    // Aggiorna il prezzo
-                    item.setUnitPrice(product.getPrice());
-                    return false;
-                })
-                .collect(Collectors.toList());
-
-        itemsToRemove.forEach(cart::removeCartItem);
-        Cart savedCart = cartRepository.save(cart);
+        Map<Long, CartProductRow> products = new HashMap<>();
+        CartSnapshot cart = remember(cartStore.update(userId, lines -> {
+            products.putAll(findCartProducts(lines.keySet()));
+            Iterator<Map.Entry<Long, CartSnapshot.Line>> iterator = lines.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, CartSnapshot.Line> entry = iterator.next();
+                CartProductRow product = products.get(entry.getKey());
+                // Rimuovi se il prodotto è stato eliminato dal catalogo, come quelli non più disponibili
+                if (product == null) {
+                    log.warn("Prodotto {} eliminato dal catalogo, rimosso dal carrello", entry.getKey());
+                    iterator.remove();
+                    continue;
+                }
+                // Rimuovi se il prodotto non è più disponibile
+                if (!product.isAvailable()) {
+                    log.warn("Prodotto {} non più disponibile, rimosso dal carrello", product.name());
+                    iterator.remove();
+                    continue;
+                }
+                CartSnapshot.Line line = entry.getValue();
+                int quantity = line.quantity();
+                // Aggiusta la quantità se lo stock è insufficiente
+                if (!product.hasStock(quantity)) {
+                    quantity = product.stockQuantity();
+                    log.warn("Quantità ridotta a {} per prodotto {}", quantity, product.name());
+                }
+                // Aggiorna il prezzo, lasciando invariate le righe già corrette
+                if (quantity != line.quantity() || !product.price().equals(line.unitPrice())) {
+                    entry.setValue(line.withQuantityAndPrice(quantity, product.price()));
+                }
+            }
+        }));
 
         log.info("Carrello validato con successo");
-        return convertToDTO(savedCart);
+        return convertToDTO(cart, products);
+    }
+
+    /**
+     * Riallinea ai nuovi prezzi le righe dei carrelli attivi con UPDATE set-based
+     * e, dopo il commit, i carrelli tenuti in memoria dal CartStore.
+     * I nuovi prezzi devono essere già scritti su products nella transazione corrente
+     */
+    public int repriceActiveCarts(Map<Long, BigDecimal> priceByProduct) {
+        if (priceByProduct.isEmpty()) {
+            return 0;
+        }
+        int repriced = cartJdbcRepository.repriceActiveCartLines(priceByProduct.keySet());
+        Map<Long, Money> prices = new HashMap<>();
+        priceByProduct.forEach((productId, price) -> prices.put(productId, Money.of(price)));
+        TransactionCallbacks.afterCommit(() -> cartStore.pricesChanged(prices));
+        log.info("Righe di carrelli attivi riallineate ai nuovi prezzi: {}", repriced);
+        return repriced;
+    }
+
+    /**
+     * Rende durevoli le modifiche pendenti del carrello e lo toglie dalla memoria:
+     * da qui in poi la fonte di verità è il database (usato dal checkout)
+     */
+    public void flushCart(Long userId) {
+        cartStore.flushAndEvict(userId);
     }
 
     /**
-     * Conta gli item nel carrello
+     * Scarta lo stato in memoria del carrello dopo una modifica fatta direttamente sul database
+     */
+    public void evictCart(Long userId) {
+        cartStore.evict(userId);
+        cartCountCache.evict(userId);
+    }
+
+    /**
+     * Aggiorna lo stato in memoria dopo la disattivazione del carrello da parte del job
+     * dei carrelli abbandonati, senza perdere modifiche non ancora scritte
+     */
+    public void cartExpired(Long userId, long cartId, long version) {
+        cartStore.cartExpired(userId, cartId, version);
+        cartCountCache.evict(userId);
+    }
+
+    /**
+     * Conta righe e quantità nel carrello: dalla memoria se il conteggio è noto,
+     * altrimenti con una lettura del carrello dal CartStore
      */
     @Transactional(readOnly = true)
-    public long countItemsInCart(Long userId) {
-        return cartRepository.findActiveCartByUserId(userId)
-                .map(cart -> cartItemRepository.countByCart(cart))
-                .orElse(0L);
+    public CartCountCache.CartCount countItemsInCart(Long userId) {
+        CartCountCache.CartCount count = cartCountCache.get(userId);
+        if (count != null) {
+            return count;
+        }
+        return cartCountCache.record(cartStore.get(userId));
     }
 
     /**
-     * Converte Cart entity in CartDTO
+     * Registra i conteggi del carrello modificato dopo il commit
      */
-    private CartDTO convertToDTO(Cart cart) {
-        List<CartItemDTO> items = cart.getCartItems().stream()
-                .map(this::convertCartItemToDTO)
+    private CartSnapshot remember(CartSnapshot cart) {
+        TransactionCallbacks.afterCommit(() -> cartCountCache.record(cart));
+        return cart;
+    }
+
+    private CartSnapshot.Line findLineByItemId(Long userId, Long cartItemId) {
+        // La ricerca avviene solo nel carrello dell'utente, quindi verifica anche l'appartenenza
+        return cartStore.get(userId).findByItemId(cartItemId)
+                .orElseThrow(() -> new ResourceNotFoundException("Item non trovato nel carrello"));
+    }
+
+    private CartProductRow findProduct(Long productId) {
+        CartProductRow product = findCartProducts(List.of(productId)).get(productId);
+        if (product == null) {
+            throw new ResourceNotFoundException("Prodotto non trovato");
+        }
+        return product;
+    }
+
+    /**
+     * Prodotti indicati con un'unica query; per i prodotti hot lo stock è quello del contatore
+     * in memoria, perché stock_quantity non conta ancora gli order item pendenti
+     */
+    private Map<Long, CartProductRow> findCartProducts(Collection<Long> productIds) {
+        Map<Long, CartProductRow> products = new HashMap<>(cartJdbcRepository.findCartProducts(productIds));
+        products.replaceAll((productId, product) -> {
+            long hotStock = hotStockService.isHot(productId) ? hotStockService.getHotAvailableStock(productId) : -1;
+            return hotStock < 0 ? product : product.withStockQuantity((int) Math.min(Integer.MAX_VALUE, hotStock));
+        });
+        return products;
+    }
+
+    /**
+     * Prodotti delle righe del carrello, con un'unica query
+     */
+    private Map<Long, CartProductRow> loadProducts(CartSnapshot cart) {
+        return findCartProducts(cart.lines().keySet());
+    }
+
+    /**
+     * Converte lo stato del carrello in CartDTO
+     */
+    private CartDTO convertToDTO(CartSnapshot cart) {
+        return convertToDTO(cart, loadProducts(cart));
+    }
+
+    /**
+     * Stato del carrello letto con righe e prodotti in un'unica query; i prodotti finiscono in products
+     */
+    private CartSnapshot toSnapshot(long userId, List<CartViewRow> rows, Map<Long, CartProductRow> products) {
+        if (rows.isEmpty()) {
+            return CartSnapshot.empty(userId);
+        }
+        Map<Long, CartSnapshot.Line> lines = new LinkedHashMap<>();
+        for (CartViewRow row : rows) {
+            if (row.product() != null) {
+                long productId = row.product().id();
+                lines.put(productId, new CartSnapshot.Line(row.itemId(), productId, row.quantity(), row.unitPrice()));
+                products.put(productId, row.product());
+            }
+        }
+        CartViewRow first = rows.get(0);
+        return new CartSnapshot(first.cartId(), userId, first.cartVersion(), lines);
+    }
+
+    private CartDTO convertToDTO(CartSnapshot cart, Map<Long, CartProductRow> products) {
+        // Le righe di prodotti eliminati dal catalogo non si mostrano e non entrano nei totali
+        List<CartSnapshot.Line> lines = cart.lines().values().stream()
+                .filter(line -> products.containsKey(line.productId()))
+                .toList();
+        List<CartItemDTO> items = lines.stream()
+                .map(line -> convertCartLineToDTO(line, products.get(line.productId())))
                 .collect(Collectors.toList());
 
         return CartDTO.builder()
-                .id(cart.getId())
-                .userId(cart.getUser().getId())
+                .id(cart.cartId())
+                .userId(cart.userId())
+                .version(cart.version())
                 .items(items)
-                .totalItems(cart.getTotalItems())
-                .totalPrice(cart.getTotalPrice())
-                .isActive(cart.isActive())
+                .totalItems(lines.stream().mapToInt(CartSnapshot.Line::quantity).sum())
+                .totalPrice(lines.stream().map(CartSnapshot.Line::subtotal).reduce(Money.ZERO, Money::plus)
+                        .toBigDecimal())
+                .isActive(true)
                 .build();
     }
 
     /**
-     * Converte CartItem entity in CartItemDTO
+     * Converte una riga del carrello in CartItemDTO
      */
-    private CartItemDTO convertCartItemToDTO(CartItem item) {
-        Product product = item.getProduct();
+    private CartItemDTO convertCartLineToDTO(CartSnapshot.Line line, CartProductRow product) {
         return CartItemDTO.builder()
-                .id(item.getId())
-                .productId(product.getId())
-                .productName(product.getName())
-                .productSku(product.getSku())
-                .productImageUrl(product.getImageUrl())
-                .quantity(item.getQuantity())
-                .unitPrice(item.getUnitPrice())
-                .currentProductPrice(product.getPrice())
-                .subtotal(item.getSubtotal())
+                .id(line.itemId())
+                .productId(product.id())
+                .productName(product.name())
+                .productSku(product.sku())
+                .productImageUrl(product.imageUrl())
+                .quantity(line.quantity())
+                .unitPrice(line.unitPrice().toBigDecimal())
+                .currentProductPrice(product.price().toBigDecimal())
+                .subtotal(line.subtotal().toBigDecimal())
                 .isAvailable(product.isAvailable())
-                .stockQuantity(product.getStockQuantity())
+                .stockQuantity(product.stockQuantity())
                 .build();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,94 @@
+package com.example.project_security.service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import com.example.project_security.model.Money;
+
+/**
+ * Stato immutabile del carrello attivo di un utente, come lo vede un CartStore.
+ *
+ * Le righe sono indicizzate per prodotto (il vincolo unico di cart_items) e
+ * mantengono l'ordine di inserimento. La versione cresce a ogni modifica del
+ * contenuto; cartId e itemId restano null finché il carrello o la riga non
+ * sono stati scritti sul database. I prezzi sono in centesimi: il BigDecimal
+ * si crea solo per i DTO e per le scritture.
+ */
+public record CartSnapshot(Long cartId, long userId, long version, Map<Long, Line> lines) {
+
+    /**
+     * Riga del carrello: prodotto, quantità e prezzo unitario applicato
+     */
+    public record Line(Long itemId, long productId, int quantity, Money unitPrice) {
+
+        public Money subtotal() {
+            return unitPrice != null ? unitPrice.times(quantity) : Money.ZERO;
+        }
+
+        public Line withQuantityAndPrice(int newQuantity, Money newUnitPrice) {
+            return new Line(itemId, productId, newQuantity, newUnitPrice);
+        }
+
+        public Line withItemId(Long newItemId) {
+            return new Line(newItemId, productId, quantity, unitPrice);
+        }
+    }
+
+    public CartSnapshot {
+        lines = Collections.unmodifiableMap(new LinkedHashMap<>(lines));
+    }
+
+    /**
+     * Carrello vuoto di un utente che non ne ha ancora uno sul database
+     */
+    public static CartSnapshot empty(long userId) {
+        return new CartSnapshot(null, userId, 0, Map.of());
+    }
+
+    public Optional<Line> findByItemId(Long itemId) {
+        return lines.values().stream()
+                .filter(line -> itemId.equals(line.itemId()))
+                .findFirst();
+    }
+
+    public int totalItems() {
+        return lines.values().stream().mapToInt(Line::quantity).sum();
+    }
+
+    public Money totalPrice() {
+        long cents = 0;
+        for (Line line : lines.values()) {
+            cents = Math.addExact(cents, line.subtotal().cents());
+        }
+        return new Money(cents);
+    }
+
+    /**
+     * Nuova versione del carrello con le righe indicate
+     */
+    CartSnapshot withLines(Map<Long, Line> newLines) {
+        return new CartSnapshot(cartId, userId, version + 1, newLines);
+    }
+
+    /**
+     * Stesso contenuto con gli identificativi assegnati dal database (la versione non cambia)
+     */
+    CartSnapshot withIds(Long newCartId, Map<Long, Long> itemIdByProduct) {
+        Map<Long, Line> withIds = new LinkedHashMap<>();
+        lines.forEach((productId, line) -> withIds.put(productId, line.itemId() != null ? line
+                : line.withItemId(itemIdByProduct.get(productId))));
+        return new CartSnapshot(newCartId, userId, version, withIds);
+    }
+
+    /**
+     * Stesso contenuto senza identificativi, da riscrivere in un carrello nuovo
+     * (quello di prima non è più attivo sul database)
+     */
+    CartSnapshot detached() {
+        Map<Long, Line> detached = new LinkedHashMap<>();
+        lines.forEach((productId, line) -> detached.put(productId, line.withItemId(null)));
+        return new CartSnapshot(null, userId, version, detached);
+    }
+}
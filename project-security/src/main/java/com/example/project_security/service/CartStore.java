@@ -0,0 +1,72 @@
+package com.example.project_security.service;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.example.project_security.model.Money;
+
+/**
+ * Archivio del carrello attivo di ciascun utente.
+ *
+ * L'implementazione si sceglie con silkroad.cart.store: "database" scrive ogni
+ * modifica in modo sincrono su carts/cart_items, "write-behind" tiene i carrelli
+ * in memoria e li scrive in differita a lotti.
+ */
+public interface CartStore {
+
+    /**
+     * Stato corrente del carrello attivo (vuoto se l'utente non ne ha uno)
+     */
+    CartSnapshot get(long userId);
+
+    /**
+     * Applica una modifica alle righe (indicizzate per prodotto) e restituisce il nuovo stato.
+     * Se la modifica lancia un'eccezione il carrello resta invariato
+     */
+    CartSnapshot update(long userId, Consumer<Map<Long, CartSnapshot.Line>> mutation);
+
+    /**
+     * Aggiunta diretta di un prodotto senza leggere il carrello, se l'archivio la supporta.
+     * Restituisce false quando serve il percorso completo (carrello assente, prodotto
+     * non disponibile, stock insufficiente o archivio senza percorso diretto)
+     */
+    default boolean tryAdd(long userId, long productId, int quantity) {
+        return false;
+    }
+
+    /**
+     * Allinea ai nuovi prezzi le righe dei carrelli tenuti in memoria.
+     * Le righe già sul database sono riallineate da CartService con un UPDATE unico
+     */
+    default void pricesChanged(Map<Long, Money> priceByProduct) {
+    }
+
+    /**
+     * Rende durevoli le modifiche dell'utente non ancora scritte sul database
+     */
+    void flush(long userId);
+
+    /**
+     * Scarta lo stato in memoria dell'utente, che verrà riletto dal database.
+     * Le modifiche pendenti vanno rese durevoli prima con flush
+     */
+    void evict(long userId);
+
+    /**
+     * Il carrello indicato è stato disattivato sul database quando era alla versione indicata.
+     * Lo stato in memoria si scarta se è ancora quello; se contiene modifiche successive
+     * non va perso e sarà scritto in un carrello nuovo
+     */
+    default void cartExpired(long userId, long cartId, long version) {
+        evict(userId);
+    }
+
+    /**
+     * Rende durevoli le modifiche dell'utente e scarta lo stato in memoria, senza perdere
+     * una modifica arrivata tra la scrittura e lo scarto
+     */
+    default void flushAndEvict(long userId) {
+        flush(userId);
+        evict(userId);
+    }
+}
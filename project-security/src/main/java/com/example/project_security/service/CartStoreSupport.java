@@ -0,0 +1,98 @@
+package com.example.project_security.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.project_security.repository.CartJdbcRepository;
+import com.example.project_security.repository.CartJdbcRepository.CartLineRow;
+import com.example.project_security.repository.CartJdbcRepository.LineKey;
+import com.example.project_security.repository.CartJdbcRepository.LineWrite;
+
+/**
+ * Lettura e scrittura dei carrelli condivise dalle implementazioni di CartStore
+ */
+final class CartStoreSupport {
+
+    /**
+     * Stato da scrivere e righe già presenti sul database per quel carrello
+     */
+    record PendingWrite(CartSnapshot snapshot, Map<Long, CartSnapshot.Line> persistedLines) {
+    }
+
+    private CartStoreSupport() {
+    }
+
+    /**
+     * Carica il carrello attivo dell'utente con un'unica query
+     */
+    static CartSnapshot load(CartJdbcRepository cartJdbcRepository, long userId) {
+        List<CartLineRow> rows = cartJdbcRepository.findActiveCartLines(userId);
+        if (rows.isEmpty()) {
+            return CartSnapshot.empty(userId);
+        }
+        Map<Long, CartSnapshot.Line> lines = new LinkedHashMap<>();
+        for (CartLineRow row : rows) {
+            if (row.productId() != null) {
+                lines.put(row.productId(),
+                        new CartSnapshot.Line(row.itemId(), row.productId(), row.quantity(), row.unitPrice()));
+            }
+        }
+        return new CartSnapshot(rows.get(0).cartId(), userId, rows.get(0).cartVersion(), lines);
+    }
+
+    /**
+     * Scrive i carrelli indicati con un batch di upsert, uno di cancellazioni e uno di versioni,
+     * creando prima i carrelli che non esistono ancora.
+     * Restituisce per utente lo stato scritto con gli id assegnati dal database
+     */
+    static Map<Long, CartSnapshot> write(CartJdbcRepository cartJdbcRepository, List<PendingWrite> writes) {
+        Map<Long, Long> cartIdByUser = new HashMap<>();
+        List<LineWrite> upserts = new ArrayList<>();
+        List<LineKey> deletes = new ArrayList<>();
+        Map<Long, Long> versionByCart = new HashMap<>();
+
+        for (PendingWrite write : writes) {
+            CartSnapshot snapshot = write.snapshot();
+            long cartId = snapshot.cartId() != null ? snapshot.cartId()
+                    : cartJdbcRepository.insertCart(snapshot.userId());
+            cartIdByUser.put(snapshot.userId(), cartId);
+            // Si scrivono solo le righe cambiate rispetto a quelle già sul database
+            snapshot.lines().values().stream()
+                    .filter(line -> !sameContent(line, write.persistedLines().get(line.productId())))
+                    .forEach(line -> upserts.add(
+                            new LineWrite(cartId, line.productId(), line.quantity(), line.unitPrice())));
+            write.persistedLines().keySet().stream()
+                    .filter(productId -> !snapshot.lines().containsKey(productId))
+                    .forEach(productId -> deletes.add(new LineKey(cartId, productId)));
+            versionByCart.put(cartId, snapshot.version());
+        }
+
+        cartJdbcRepository.deleteLines(deletes);
+        cartJdbcRepository.upsertLines(upserts);
+        cartJdbcRepository.updateVersions(versionByCart);
+
+        // Gli id servono solo per le righe appena inserite
+        List<Long> cartsWithNewLines = writes.stream()
+                .filter(write -> write.snapshot().lines().values().stream().anyMatch(line -> line.itemId() == null))
+                .map(write -> cartIdByUser.get(write.snapshot().userId()))
+                .toList();
+        Map<Long, Map<Long, Long>> itemIds = cartJdbcRepository.findItemIds(cartsWithNewLines);
+        Map<Long, CartSnapshot> written = new HashMap<>();
+        for (PendingWrite write : writes) {
+            long userId = write.snapshot().userId();
+            long cartId = cartIdByUser.get(userId);
+            written.put(userId, write.snapshot().withIds(cartId, itemIds.getOrDefault(cartId, Map.of())));
+        }
+        return written;
+    }
+
+    private static boolean sameContent(CartSnapshot.Line line, CartSnapshot.Line persisted) {
+        return persisted != null
+                && persisted.quantity() == line.quantity()
+                && persisted.unitPrice() != null
+                && persisted.unitPrice().equals(line.unitPrice());
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.project_security.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.project_security.dto.response.ProductExportDTO;
+import com.example.project_security.repository.CategoryRepository;
+import com.example.project_security.repository.ProductRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service per l'esportazione del catalogo verso indicizzatori e feed esterni.
+ *
+ * I prodotti vengono letti con un cursore in streaming e scritti uno per riga
+ * (NDJSON) su un GZIPOutputStream, senza mai materializzare il catalogo in memoria:
+ * le righe sono proiezioni DTO, quindi non restano nel persistence context.
+ * Con updatedSince si esportano solo i prodotti modificati dopo il watermark,
+ * inclusi quelli disattivati, così il consumatore può rimuoverli dal proprio indice.
+ * Anche il flush dello stock hot e le modifiche di nome, padre o stato di una
+ * categoria aggiornano updated_at dei prodotti interessati.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CatalogExportService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String PATH_SEPARATOR = " > ";
+
+    private final ProductRepository productRepository;
+    private final CategoryRepository categoryRepository;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Scrive il catalogo in formato NDJSON compresso gzip sull'output indicato
+     *
+     * @param updatedSince se valorizzato esporta solo i prodotti modificati dopo questa data
+     * @return numero di prodotti esportati
+     */
+    @Transactional(readOnly = true)
+    public long exportCatalog(ZonedDateTime updatedSince, OutputStream out) throws IOException {
+        Map<Long, String> categoryPaths = buildCategoryPaths();
+        ObjectMapper mapper = objectMapper.copy().disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        long count = 0;
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE);
+             JsonGenerator generator = mapper.getFactory().createGenerator(gzip);
+             Stream<ProductExportDTO> products = updatedSince != null
+                     ? productRepository.streamUpdatedSinceForExport(updatedSince)
+                     : productRepository.streamActiveForExport()) {
+            generator.setRootValueSeparator(null);
+
+            for (ProductExportDTO product : (Iterable<ProductExportDTO>) products::iterator) {
+                product.setCategoryPath(categoryPaths.get(product.getCategoryId()));
+                mapper.writeValue(generator, product);
+                generator.writeRaw('\n');
+                count++;
+            }
+        }
+
+        log.info("Esportazione catalogo completata: {} prodotti (updatedSince={})", count, updatedSince);
+        return count;
+    }
+
+    /**
+     * Percorsi "Radice > ... > Categoria" di tutte le categorie, da un'unica query piatta
+     */
+    private Map<Long, String> buildCategoryPaths() {
+        Map<Long, String> names = new HashMap<>();
+        Map<Long, Long> parents = new HashMap<>();
+        for (Object[] row : categoryRepository.findAllIdNameAndParentId()) {
+            Long id = (Long) row[0];
+            names.put(id, (String) row[1]);
+            if (row[2] != null) {
+                parents.put(id, (Long) row[2]);
+            }
+        }
+
+        Map<Long, String> paths = new HashMap<>();
+        for (Long id : names.keySet()) {
+            Deque<String> segments = new ArrayDeque<>();
+            Set<Long> visited = new HashSet<>();
+            Long current = id;
+            while (current != null && visited.add(current) && names.containsKey(current)) {
+                segments.addFirst(names.get(current));
+                current = parents.get(current);
+            }
+            paths.put(id, String.join(PATH_SEPARATOR, segments));
+        }
+        return paths;
+    }
+}
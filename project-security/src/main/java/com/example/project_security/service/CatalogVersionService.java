@@ -0,0 +1,118 @@
+package com.example.project_security.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Service;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Mappa in memoria delle versioni del catalogo, usata per calcolare gli ETag
+ * delle risposte GET senza accedere al database.
+ *
+ * Ogni scrittura su prodotti o categorie incrementa la versione dopo il commit;
+ * le versioni si leggono prima di caricare i dati, così un ETag non può mai
+ * descrivere dati più vecchi della versione che riporta. L'epoch di avvio
+ * invalida gli ETag emessi da un'istanza precedente.
+ */
+@Service
+@RequiredArgsConstructor
+public class CatalogVersionService {
+
+    private final HotStockService hotStockService;
+
+    private final long epoch = System.currentTimeMillis();
+
+    /**
+     * Versione per prodotto: contiene solo i prodotti modificati dall'avvio
+     */
+    private final Map<Long, Long> productVersions = new ConcurrentHashMap<>();
+    private final AtomicLong catalogVersion = new AtomicLong();
+    private final AtomicLong categoryVersion = new AtomicLong();
+
+    /**
+     * ETag di un singolo prodotto; per i prodotti hot include lo stock del contatore,
+     * che cambia a ogni prenotazione senza passare da una scrittura sul prodotto
+     */
+    public String productETag(Long productId) {
+        // La versione delle categorie copre il nome della categoria riportato nel DTO
+        String version = productVersions.getOrDefault(productId, 0L) + "." + categoryVersion.get();
+        long hotStock = hotStockService.getHotAvailableStock(productId);
+        return hotStock < 0
+                ? quote("p" + productId + "-" + epoch + "." + version)
+                : quote("p" + productId + "-" + epoch + "." + version + "-h" + hotStock);
+    }
+
+    /**
+     * ETag delle liste di prodotti (pagine, ricerche, prodotti per categoria)
+     */
+    public String catalogETag() {
+        return quote("c" + epoch + "." + catalogVersion.get() + "-h"
+                + Long.toHexString(hotStockService.hotStockFingerprint()));
+    }
+
+    /**
+     * ETag delle risposte sulle categorie (liste, albero, percorsi)
+     */
+    public String categoryETag() {
+        return quote("g" + epoch + "." + categoryVersion.get());
+    }
+
+    /**
+     * Generazione delle liste di prodotti in cache: come catalogETag, cambia anche con lo stock
+     * dei prodotti hot, che le liste riportano dal contatore
+     */
+    public long productListGeneration() {
+        long h = catalogVersion.get() * 0x9E3779B97F4A7C15L + hotStockService.hotStockFingerprint();
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Generazione delle categorie: cambia a ogni modifica di struttura o conteggio prodotti
+     */
+    public long categoryGeneration() {
+        return categoryVersion.get();
+    }
+
+    /**
+     * Registra la modifica di un prodotto dopo il commit della transazione corrente
+     */
+    public void productChanged(Long productId) {
+        TransactionCallbacks.afterCommit(() -> {
+            productVersions.merge(productId, 1L, Long::sum);
+            catalogVersion.incrementAndGet();
+        });
+    }
+
+    /**
+     * Registra la modifica in blocco di più prodotti, con un'unica callback dopo il commit
+     */
+    public void productsChanged(Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        List<Long> changed = List.copyOf(productIds);
+        TransactionCallbacks.afterCommit(() -> {
+            changed.forEach(productId -> productVersions.merge(productId, 1L, Long::sum));
+            catalogVersion.incrementAndGet();
+        });
+    }
+
+    /**
+     * Registra una modifica che riguarda le categorie (struttura o conteggio prodotti)
+     */
+    public void categoriesChanged() {
+        TransactionCallbacks.afterCommit(() -> {
+            categoryVersion.incrementAndGet();
+            catalogVersion.incrementAndGet();
+        });
+    }
+
+    private static String quote(String tag) {
+        return "\"" + tag + "\"";
+    }
+}
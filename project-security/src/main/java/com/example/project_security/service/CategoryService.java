@@ -1,18 +1,26 @@
 package com.example.project_security.service;
 
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Objects;
 
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.example.project_security.dto.CategoryDTO;
 import com.example.project_security.dto.request.CreateCategoryDTO;
+import com.example.project_security.dto.request.ReorderCategoriesDTO;
 import com.example.project_security.dto.request.UpdateCategoryDTO;
 import com.example.project_security.dto.response.CategoryTreeDTO;
 import com.example.project_security.exception.DuplicateResourceException;
 import com.example.project_security.exception.ResourceNotFoundException;
 import com.example.project_security.model.Category;
+import com.example.project_security.repository.CategoryClosureRepository;
+import com.example.project_security.repository.CategoryJdbcRepository;
 import com.example.project_security.repository.CategoryRepository;
 
 import lombok.RequiredArgsConstructor;
@@ -29,6 +37,27 @@ import lombok.extern.slf4j.Slf4j;
 public class CategoryService {
 
     private final CategoryRepository categoryRepository;
+    private final CategoryClosureRepository categoryClosureRepository;
+    private final CategoryJdbcRepository categoryJdbcRepository;
+    private final ProductService productService;
+    private final CatalogVersionService catalogVersionService;
+
+    private volatile CategoryTreeSnapshot snapshot;
+
+    /**
+     * Allinea la closure table alla gerarchia all'avvio (tabella nuova o categorie
+     * inserite fuori dall'applicazione), ricostruendola da parent_category_id
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void synchronizeClosureTable() {
+        long categories = categoryRepository.count();
+        if (categoryClosureRepository.countNodes() == categories) {
+            return;
+        }
+        categoryClosureRepository.deleteAllRows();
+        int rows = categoryClosureRepository.rebuildFromParents();
+        log.info("Closure table delle categorie ricostruita: {} categorie, {} righe", categories, rows);
+    }
 
     /**
      * Crea una nuova categoria
@@ -57,83 +86,80 @@ public class CategoryService {
         }
 
         Category savedCategory = categoryRepository.save(category);
+        categoryClosureRepository.insertNode(savedCategory.getId(),
+                category.getParentCategory() != null ? category.getParentCategory().getId() : null);
+        catalogVersionService.categoriesChanged();
         log.info("Categoria creata con successo. ID: {}", savedCategory.getId());
 
         return convertToDTO(savedCategory);
     }
 
     /**
-     * Recupera una categoria per ID
+     * Recupera una categoria per ID, dalla copia in memoria dell'albero
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS)
     public CategoryDTO getCategoryById(Long id) {
-        Category category = categoryRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Categoria non trovata con ID: " + id));
-        return convertToDTO(category);
+        CategoryDTO category = currentSnapshot().get(id);
+        if (category == null) {
+            throw new ResourceNotFoundException("Categoria non trovata con ID: " + id);
+        }
+        return category;
     }
 
     /**
-     * Recupera una categoria per nome
+     * Recupera una categoria per nome, dalla copia in memoria dell'albero
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS)
     public CategoryDTO getCategoryByName(String name) {
-        Category category = categoryRepository.findByName(name)
-                .orElseThrow(() -> new ResourceNotFoundException("Categoria non trovata: " + name));
-        return convertToDTO(category);
+        CategoryDTO category = currentSnapshot().getByName(name);
+        if (category == null) {
+            throw new ResourceNotFoundException("Categoria non trovata: " + name);
+        }
+        return category;
     }
 
     /**
-     * Recupera tutte le categorie attive
+     * Recupera tutte le categorie attive, dalla copia in memoria dell'albero
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS)
     public List<CategoryDTO> getAllActiveCategories() {
-        return categoryRepository.findByIsActiveTrueOrderByDisplayOrder().stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        return currentSnapshot().activeCategories();
     }
 
     /**
-     * Recupera tutte le categorie radice (senza padre)
+     * Recupera tutte le categorie radice (senza padre), dalla copia in memoria dell'albero
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS)
     public List<CategoryDTO> getRootCategories() {
-        return categoryRepository.findRootCategories().stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        return currentSnapshot().activeRoots();
     }
 
     /**
-     * Recupera l'albero completo delle categorie
+     * Recupera l'albero completo delle categorie, dalla copia in memoria
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS)
     public List<CategoryTreeDTO> getCategoryTree() {
-        List<Category> rootCategories = categoryRepository.findRootCategories();
-        return rootCategories.stream()
-                .map(this::buildCategoryTree)
-                .collect(Collectors.toList());
+        return currentSnapshot().tree();
     }
 
     /**
-     * Recupera le sottocategorie di una categoria
+     * Recupera le sottocategorie di una categoria, dalla copia in memoria dell'albero
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS)
     public List<CategoryDTO> getSubcategories(Long parentId) {
-        Category parentCategory = categoryRepository.findById(parentId)
-                .orElseThrow(() -> new ResourceNotFoundException("Categoria padre non trovata"));
-
-        return categoryRepository.findByParentCategoryAndIsActiveTrueOrderByDisplayOrder(parentCategory).stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        CategoryTreeSnapshot snapshot = currentSnapshot();
+        if (!snapshot.contains(parentId)) {
+            throw new ResourceNotFoundException("Categoria padre non trovata");
+        }
+        return snapshot.activeChildren(parentId);
     }
 
     /**
-     * Recupera il percorso completo di una categoria (breadcrumb)
+     * Recupera il percorso completo di una categoria (breadcrumb), dalla radice alla categoria
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS)
     public List<CategoryDTO> getCategoryPath(Long categoryId) {
-        return categoryRepository.findCategoryPath(categoryId).stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        return currentSnapshot().path(categoryId);
     }
 
     /**
@@ -146,7 +172,8 @@ public class CategoryService {
                 .orElseThrow(() -> new ResourceNotFoundException("Categoria non trovata con ID: " + id));
 
         // Verifica unicità del nome se viene modificato
-        if (updateDTO.getName() != null && !updateDTO.getName().equals(category.getName())) {
+        boolean renamed = updateDTO.getName() != null && !updateDTO.getName().equals(category.getName());
+        if (renamed) {
             if (categoryRepository.existsByNameAndIdNot(updateDTO.getName(), id)) {
                 throw new DuplicateResourceException("Nome categoria già esistente: " + updateDTO.getName());
             }
@@ -165,6 +192,7 @@ public class CategoryService {
         }
 
         // Aggiorna categoria padre se specificata
+        Long previousParentId = category.getParentCategory() != null ? category.getParentCategory().getId() : null;
         if (updateDTO.getParentCategoryId() != null) {
             if (updateDTO.getParentCategoryId().equals(id)) {
                 throw new IllegalArgumentException("Una categoria non può essere padre di se stessa");
@@ -183,6 +211,16 @@ public class CategoryService {
         }
 
         Category updatedCategory = categoryRepository.save(category);
+        Long parentId = category.getParentCategory() != null ? category.getParentCategory().getId() : null;
+        boolean moved = !Objects.equals(previousParentId, parentId);
+        if (moved) {
+            moveInClosureTable(id, parentId);
+        }
+        // Il percorso esportato cambia per tutti i prodotti del sottoalbero
+        if (renamed || moved) {
+            productService.touchCategorySubtreeProducts(id);
+        }
+        catalogVersionService.categoriesChanged();
         log.info("Categoria aggiornata con successo");
 
         return convertToDTO(updatedCategory);
@@ -192,22 +230,77 @@ public class CategoryService {
      * Attiva/disattiva una categoria
      */
     public CategoryDTO toggleCategoryStatus(Long id) {
+        return toggleCategoryStatus(id, false);
+    }
+
+    /**
+     * Attiva/disattiva una categoria; la disattivazione si estende a tutte le sottocategorie
+     * e, a richiesta, ai loro prodotti
+     */
+    public CategoryDTO toggleCategoryStatus(Long id, boolean includeProducts) {
         log.info("Toggle stato categoria: {}", id);
 
         Category category = categoryRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Categoria non trovata con ID: " + id));
 
-        category.setActive(!category.isActive());
+        boolean active = !category.isActive();
+        if (active) {
+            category.setActive(true);
+            categoryRepository.save(category);
+        } else {
+            // Se disattiviamo una categoria, disattiviamo anche le sottocategorie
+            categoryRepository.setSubtreeActive(id, false);
+            if (includeProducts) {
+                productService.setCategorySubtreeProductsActive(id, false);
+            }
+        }
+        productService.touchCategorySubtreeProducts(id);
+
+        catalogVersionService.categoriesChanged();
+        log.info("Stato categoria aggiornato: {}", active ? "attiva" : "disattivata");
 
-        // Se disattiviamo una categoria, disattiviamo anche le sottocategorie
-        if (!category.isActive()) {
-            deactivateSubcategories(category);
+        return reloadAsDTO(id);
+    }
+
+    /**
+     * Attiva o disattiva una categoria con tutto il suo sottoalbero (e a richiesta i prodotti)
+     * con un unico UPDATE per tabella
+     */
+    public CategoryDTO setSubtreeStatus(Long id, boolean active, boolean includeProducts) {
+        log.info("{} sottoalbero categoria: {}", active ? "Attivazione" : "Disattivazione", id);
+
+        if (!categoryRepository.existsById(id)) {
+            throw new ResourceNotFoundException("Categoria non trovata con ID: " + id);
         }
 
-        Category updatedCategory = categoryRepository.save(category);
-        log.info("Stato categoria aggiornato: {}", category.isActive() ? "attiva" : "disattivata");
+        int categories = categoryRepository.setSubtreeActive(id, active);
+        int products = includeProducts ? productService.setCategorySubtreeProductsActive(id, active) : 0;
+        productService.touchCategorySubtreeProducts(id);
 
-        return convertToDTO(updatedCategory);
+        catalogVersionService.categoriesChanged();
+        log.info("Sottoalbero aggiornato: {} categorie, {} prodotti", categories, products);
+
+        return reloadAsDTO(id);
+    }
+
+    /**
+     * Aggiorna in blocco l'ordine di visualizzazione delle categorie, con un unico batch
+     */
+    public int reorderCategories(ReorderCategoriesDTO reorderDTO) {
+        Map<Long, Integer> displayOrderById = new LinkedHashMap<>();
+        for (ReorderCategoriesDTO.Item item : reorderDTO.getItems()) {
+            displayOrderById.put(item.getId(), item.getDisplayOrder());
+        }
+
+        if (categoryRepository.countByIdIn(displayOrderById.keySet()) != displayOrderById.size()) {
+            throw new ResourceNotFoundException("Una o più categorie da riordinare non esistono");
+        }
+
+        categoryJdbcRepository.updateDisplayOrders(displayOrderById);
+        catalogVersionService.categoriesChanged();
+        log.info("Ordine di visualizzazione aggiornato per {} categorie", displayOrderById.size());
+
+        return displayOrderById.size();
     }
 
     /**
@@ -220,29 +313,29 @@ public class CategoryService {
                 .orElseThrow(() -> new ResourceNotFoundException("Categoria non trovata con ID: " + id));
 
         // Verifica che non ci siano prodotti associati
-        if (category.getActiveProductCount() > 0) {
+        if (categoryRepository.countActiveProducts(id) > 0) {
             throw new IllegalStateException("Impossibile eliminare la categoria: contiene prodotti attivi");
         }
 
         // Verifica che non ci siano sottocategorie
-        if (!category.getSubCategories().isEmpty()) {
+        if (categoryRepository.hasSubcategories(id)) {
             throw new IllegalStateException("Impossibile eliminare la categoria: contiene sottocategorie");
         }
 
         category.setActive(false);
         categoryRepository.save(category);
+        productService.touchCategorySubtreeProducts(id);
+        catalogVersionService.categoriesChanged();
 
         log.info("Categoria disattivata con successo");
     }
 
     /**
-     * Trova categorie con prodotti attivi
+     * Trova categorie con prodotti attivi, dalla copia in memoria dell'albero
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS)
     public List<CategoryDTO> getCategoriesWithProducts() {
-        return categoryRepository.findCategoriesWithActiveProducts().stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        return currentSnapshot().categoriesWithProducts();
     }
 
     /**
@@ -261,44 +354,58 @@ public class CategoryService {
             return true;
         }
 
-        List<Category> descendants = categoryRepository.findAllSubcategoriesRecursive(categoryId);
-        return descendants.stream().anyMatch(cat -> cat.getId().equals(potentialParentId));
+        return categoryClosureRepository.isAncestorOf(categoryId, potentialParentId);
     }
 
     /**
-     * Disattiva ricorsivamente tutte le sottocategorie
+     * Sposta il sottoalbero della categoria sotto il nuovo padre (o alla radice se null)
      */
-    private void deactivateSubcategories(Category category) {
-        for (Category subCategory : category.getSubCategories()) {
-            subCategory.setActive(false);
-            categoryRepository.save(subCategory);
-            deactivateSubcategories(subCategory);
+    private void moveInClosureTable(Long categoryId, Long newParentId) {
+        categoryClosureRepository.detachSubtree(categoryId);
+        if (newParentId != null) {
+            categoryClosureRepository.attachSubtree(categoryId, newParentId);
         }
     }
 
     /**
-     * Costruisce l'albero delle categorie ricorsivamente
+     * Rilegge la categoria dopo un UPDATE in blocco, che svuota il persistence context
      */
-    private CategoryTreeDTO buildCategoryTree(Category category) {
-        List<CategoryTreeDTO> children = category.getSubCategories().stream()
-                .filter(Category::isActive)
-                .map(this::buildCategoryTree)
-                .collect(Collectors.toList());
+    private CategoryDTO reloadAsDTO(Long id) {
+        return convertToDTO(categoryRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Categoria non trovata con ID: " + id)));
+    }
 
-        return CategoryTreeDTO.builder()
-                .id(category.getId())
-                .name(category.getName())
-                .description(category.getDescription())
-                .imageUrl(category.getImageUrl())
-                .productCount(category.getActiveProductCount())
-                .children(children)
-                .build();
+    /**
+     * Copia dell'albero aggiornata all'ultima generazione delle categorie.
+     * Dopo una modifica la prima lettura la ricostruisce e la sostituisce in blocco
+     */
+    private CategoryTreeSnapshot currentSnapshot() {
+        CategoryTreeSnapshot current = snapshot;
+        long generation = catalogVersionService.categoryGeneration();
+        if (current != null && current.generation() == generation) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (current != null && current.generation() == generation) {
+                return current;
+            }
+            // La generazione è letta prima delle query: una modifica concorrente
+            // produce una generazione diversa e quindi una nuova ricostruzione
+            current = CategoryTreeSnapshot.build(generation,
+                    categoryRepository.findAllFlat(),
+                    categoryRepository.countActiveProductsByCategoryId());
+            snapshot = current;
+            return current;
+        }
     }
 
     /**
-     * Converte Category entity in CategoryDTO
+     * Converte Category entity in CategoryDTO.
+     * I conteggi arrivano da query aggregate, senza inizializzare le collezioni lazy
      */
     private CategoryDTO convertToDTO(Category category) {
+        Long id = category.getId();
         return CategoryDTO.builder()
                 .id(category.getId())
                 .name(category.getName())
@@ -309,8 +416,9 @@ public class CategoryService {
                 .parentCategoryId(category.getParentCategory() != null ? category.getParentCategory().getId() : null)
                 .parentCategoryName(
                         category.getParentCategory() != null ? category.getParentCategory().getName() : null)
-                .productCount(category.getActiveProductCount())
-                .hasSubcategories(!category.getSubCategories().isEmpty())
+                .productCount(categoryRepository.countActiveProducts(id))
+                .totalProductCount(categoryRepository.countActiveProductsInSubtree(id))
+                .hasSubcategories(categoryRepository.hasSubcategories(id))
                 .build();
     }
 }
\ No newline at end of file
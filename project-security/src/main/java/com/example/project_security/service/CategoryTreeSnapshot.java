@@ -0,0 +1,229 @@
+package com.example.project_security.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.example.project_security.dto.CategoryDTO;
+import com.example.project_security.dto.response.CategoryTreeDTO;
+
+/**
+ * Copia immutabile dell'albero delle categorie con i conteggi dei prodotti attivi,
+ * sia diretti sia aggregati sulle sottocategorie.
+ *
+ * Viene costruita da due query piatte (categorie e conteggi per categoria) e
+ * sostituita in blocco quando cambia la generazione delle categorie; tutte le
+ * letture sono quindi in memoria e senza caricamenti lazy.
+ */
+final class CategoryTreeSnapshot {
+
+    private static final Comparator<Row> BY_DISPLAY_ORDER = Comparator
+            .comparing((Row row) -> row.displayOrder() != null ? row.displayOrder() : 0)
+            .thenComparing(Row::id);
+
+    private record Row(Long id, String name, String description, String imageUrl, Integer displayOrder,
+            boolean active, Long parentId, long productCount) {
+    }
+
+    private final long generation;
+    private final Map<Long, Row> rows;
+    private final Map<Long, Long> totalCounts = new HashMap<>();
+    private final Map<Long, CategoryDTO> dtos;
+    private final Map<String, CategoryDTO> dtosByName;
+    private final Map<Long, List<CategoryDTO>> activeChildren;
+    private final List<CategoryDTO> activeCategories;
+    private final List<CategoryDTO> categoriesWithProducts;
+    private final List<CategoryDTO> activeRoots;
+    private final List<CategoryTreeDTO> tree;
+
+    private CategoryTreeSnapshot(long generation, Map<Long, Row> rows) {
+        this.generation = generation;
+        this.rows = rows;
+
+        Map<Long, List<Row>> childrenByParent = new HashMap<>();
+        List<Row> roots = new ArrayList<>();
+        for (Row row : rows.values()) {
+            if (row.parentId() == null) {
+                roots.add(row);
+            } else {
+                childrenByParent.computeIfAbsent(row.parentId(), id -> new ArrayList<>()).add(row);
+            }
+        }
+        childrenByParent.values().forEach(children -> children.sort(BY_DISPLAY_ORDER));
+        roots.sort(BY_DISPLAY_ORDER);
+
+        for (Row row : rows.values()) {
+            totalCount(row, childrenByParent, new HashSet<>());
+        }
+
+        Map<Long, CategoryDTO> dtoById = new HashMap<>();
+        Map<String, CategoryDTO> dtoByName = new HashMap<>();
+        for (Row row : rows.values()) {
+            CategoryDTO dto = toDTO(row, childrenByParent.containsKey(row.id()));
+            dtoById.put(row.id(), dto);
+            dtoByName.put(row.name(), dto);
+        }
+        this.dtos = Collections.unmodifiableMap(dtoById);
+        this.dtosByName = Collections.unmodifiableMap(dtoByName);
+        this.activeCategories = rows.values().stream()
+                .filter(Row::active)
+                .sorted(BY_DISPLAY_ORDER)
+                .map(row -> dtoById.get(row.id()))
+                .toList();
+        this.categoriesWithProducts = activeCategories.stream()
+                .filter(dto -> dto.getProductCount() > 0)
+                .toList();
+
+        Map<Long, List<CategoryDTO>> children = new HashMap<>();
+        childrenByParent.forEach((parentId, rowsOfParent) -> children.put(parentId, rowsOfParent.stream()
+                .filter(Row::active)
+                .map(row -> dtoById.get(row.id()))
+                .toList()));
+        this.activeChildren = Collections.unmodifiableMap(children);
+
+        List<Row> activeRootRows = roots.stream().filter(Row::active).toList();
+        this.activeRoots = activeRootRows.stream().map(row -> dtoById.get(row.id())).toList();
+        this.tree = activeRootRows.stream()
+                .map(row -> toTree(row, childrenByParent, new HashSet<>()))
+                .toList();
+    }
+
+    /**
+     * Costruisce la copia dalle righe di CategoryRepository.findAllFlat
+     * e CategoryRepository.countActiveProductsByCategoryId
+     */
+    static CategoryTreeSnapshot build(long generation, List<Object[]> categories, List<Object[]> productCounts) {
+        Map<Long, Long> counts = new HashMap<>();
+        for (Object[] count : productCounts) {
+            counts.put((Long) count[0], ((Number) count[1]).longValue());
+        }
+        Map<Long, Row> rows = new HashMap<>();
+        for (Object[] category : categories) {
+            Long id = (Long) category[0];
+            rows.put(id, new Row(id, (String) category[1], (String) category[2], (String) category[3],
+                    (Integer) category[4], (Boolean) category[5], (Long) category[6], counts.getOrDefault(id, 0L)));
+        }
+        return new CategoryTreeSnapshot(generation, rows);
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    boolean contains(Long id) {
+        return rows.containsKey(id);
+    }
+
+    CategoryDTO get(Long id) {
+        return dtos.get(id);
+    }
+
+    CategoryDTO getByName(String name) {
+        return dtosByName.get(name);
+    }
+
+    /**
+     * Categorie attive, in ordine di visualizzazione
+     */
+    List<CategoryDTO> activeCategories() {
+        return activeCategories;
+    }
+
+    /**
+     * Categorie attive con almeno un prodotto attivo diretto
+     */
+    List<CategoryDTO> categoriesWithProducts() {
+        return categoriesWithProducts;
+    }
+
+    List<CategoryTreeDTO> tree() {
+        return tree;
+    }
+
+    List<CategoryDTO> activeRoots() {
+        return activeRoots;
+    }
+
+    /**
+     * Sottocategorie attive, in ordine di visualizzazione
+     */
+    List<CategoryDTO> activeChildren(Long parentId) {
+        return activeChildren.getOrDefault(parentId, List.of());
+    }
+
+    /**
+     * Percorso dalla radice alla categoria indicata (vuoto se la categoria non esiste)
+     */
+    List<CategoryDTO> path(Long categoryId) {
+        List<CategoryDTO> path = new ArrayList<>();
+        Set<Long> visited = new HashSet<>();
+        Row row = rows.get(categoryId);
+        while (row != null && visited.add(row.id())) {
+            path.add(dtos.get(row.id()));
+            row = row.parentId() != null ? rows.get(row.parentId()) : null;
+        }
+        Collections.reverse(path);
+        return Collections.unmodifiableList(path);
+    }
+
+    /**
+     * Prodotti attivi della categoria e delle sottocategorie attive, calcolati una volta per nodo
+     */
+    private long totalCount(Row row, Map<Long, List<Row>> childrenByParent, Set<Long> visiting) {
+        Long cached = totalCounts.get(row.id());
+        if (cached != null) {
+            return cached;
+        }
+        if (!visiting.add(row.id())) {
+            return 0;
+        }
+        long total = row.productCount();
+        for (Row child : childrenByParent.getOrDefault(row.id(), List.of())) {
+            if (child.active()) {
+                total += totalCount(child, childrenByParent, visiting);
+            }
+        }
+        totalCounts.put(row.id(), total);
+        return total;
+    }
+
+    private CategoryTreeDTO toTree(Row row, Map<Long, List<Row>> childrenByParent, Set<Long> visited) {
+        visited.add(row.id());
+        List<CategoryTreeDTO> children = childrenByParent.getOrDefault(row.id(), List.of()).stream()
+                .filter(Row::active)
+                .filter(child -> !visited.contains(child.id()))
+                .map(child -> toTree(child, childrenByParent, visited))
+                .toList();
+        return CategoryTreeDTO.builder()
+                .id(row.id())
+                .name(row.name())
+                .description(row.description())
+                .imageUrl(row.imageUrl())
+                .productCount(row.productCount())
+                .totalProductCount(totalCounts.getOrDefault(row.id(), row.productCount()))
+                .children(children)
+                .build();
+    }
+
+    private CategoryDTO toDTO(Row row, boolean hasSubcategories) {
+        Row parent = row.parentId() != null ? rows.get(row.parentId()) : null;
+        return CategoryDTO.builder()
+                .id(row.id())
+                .name(row.name())
+                .description(row.description())
+                .imageUrl(row.imageUrl())
+                .displayOrder(row.displayOrder())
+                .isActive(row.active())
+                .parentCategoryId(row.parentId())
+                .parentCategoryName(parent != null ? parent.name() : null)
+                .productCount(row.productCount())
+                .totalProductCount(totalCounts.getOrDefault(row.id(), row.productCount()))
+                .hasSubcategories(hasSubcategories)
+                .build();
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.project_security.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.project_security.repository.CartJdbcRepository;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * CartStore che scrive ogni modifica in modo sincrono su carts/cart_items,
+ * nella transazione del chiamante. È l'archivio predefinito e quello durevole
+ * su cui si appoggia anche il write-behind.
+ */
+@Service
+@ConditionalOnProperty(name = "silkroad.cart.store", havingValue = "database", matchIfMissing = true)
+@RequiredArgsConstructor
+@Transactional
+public class DatabaseCartStore implements CartStore {
+
+    private final CartJdbcRepository cartJdbcRepository;
+
+    @Override
+    @Transactional(readOnly = true)
+    public CartSnapshot get(long userId) {
+        return CartStoreSupport.load(cartJdbcRepository, userId);
+    }
+
+    @Override
+    public CartSnapshot update(long userId, Consumer<Map<Long, CartSnapshot.Line>> mutation) {
+        CartSnapshot current = CartStoreSupport.load(cartJdbcRepository, userId);
+        Map<Long, CartSnapshot.Line> lines = new LinkedHashMap<>(current.lines());
+        mutation.accept(lines);
+        if (lines.equals(current.lines())) {
+            return current;
+        }
+        CartSnapshot updated = current.withLines(lines);
+        return CartStoreSupport.write(cartJdbcRepository,
+                List.of(new CartStoreSupport.PendingWrite(updated, current.lines()))).get(userId);
+    }
+
+    /**
+     * L'id del carrello attivo, un upsert condizionato sullo stock e l'incremento della versione
+     * per chiave primaria, senza leggere le righe del carrello
+     */
+    @Override
+    public boolean tryAdd(long userId, long productId, int quantity) {
+        Long cartId = cartJdbcRepository.findActiveCartId(userId);
+        if (cartId == null || !cartJdbcRepository.addLine(cartId, productId, quantity)) {
+            return false;
+        }
+        cartJdbcRepository.bumpCartVersion(cartId);
+        return true;
+    }
+
+    @Override
+    public void flush(long userId) {
+        // Le modifiche sono già sul database
+    }
+
+    @Override
+    public void evict(long userId) {
+        // Nessuno stato in memoria
+    }
+}
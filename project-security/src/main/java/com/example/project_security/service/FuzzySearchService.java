@@ -0,0 +1,64 @@
+package com.example.project_security.service;
+
+import java.util.List;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.example.project_security.dto.ProductDTO;
+import com.example.project_security.model.Product;
+import com.example.project_security.repository.ProductRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service per la ricerca tollerante agli errori di battitura sui nomi dei prodotti attivi.
+ * L'indice viene costruito all'avvio e aggiornato dopo il commit di ogni modifica a un prodotto.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FuzzySearchService {
+
+    private final ProductRepository productRepository;
+
+    private final FuzzyTermIndex index = new FuzzyTermIndex();
+
+    /**
+     * Costruisce l'indice con i prodotti attivi
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        for (Product product : productRepository.findByIsActiveTrue()) {
+            index.put(product.getId(), product.getName());
+        }
+        log.info("Indice di ricerca fuzzy costruito con {} termini", index.vocabularySize());
+    }
+
+    /**
+     * Aggiorna l'indice dopo la creazione o modifica di un prodotto
+     */
+    public void update(ProductDTO product) {
+        if (product.isActive()) {
+            index.put(product.getId(), product.getName());
+        } else {
+            index.remove(product.getId());
+        }
+    }
+
+    /**
+     * Rimuove un prodotto dall'indice
+     */
+    public void remove(Long productId) {
+        index.remove(productId);
+    }
+
+    /**
+     * Id dei prodotti che corrispondono alla ricerca entro due errori per parola, dai più vicini
+     */
+    public List<Long> search(String query) {
+        return index.search(query);
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.project_security.service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Indice "symmetric delete" (alla SymSpell) delle parole dei nomi dei prodotti,
+ * per la ricerca tollerante agli errori di battitura.
+ *
+ * Per ogni parola del catalogo si precalcolano le varianti ottenute cancellando
+ * fino a MAX_DISTANCE caratteri; in ricerca si generano le cancellazioni della
+ * parola digitata e si confrontano solo i termini che condividono una variante,
+ * verificando la distanza reale. Nessuna scansione del vocabolario.
+ * Le cancellazioni sono generate sui primi PREFIX_LENGTH caratteri per
+ * contenere la memoria sulle parole lunghe.
+ */
+public final class FuzzyTermIndex {
+
+    static final int MAX_DISTANCE = 2;
+    static final int PREFIX_LENGTH = 7;
+
+    /**
+     * Le parole più corte non vengono corrette: a distanza 2 troverebbero quasi tutto
+     */
+    static final int MIN_TERM_LENGTH = 4;
+
+    private final Map<String, Set<Long>> termProducts = new HashMap<>();
+    private final Map<String, Set<String>> deletes = new HashMap<>();
+    private final Map<Long, Set<String>> productTerms = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Inserisce o aggiorna le parole del nome di un prodotto
+     */
+    public void put(long productId, String name) {
+        Set<String> terms = termsOf(name);
+        lock.writeLock().lock();
+        try {
+            removeInternal(productId);
+            if (terms.isEmpty()) {
+                return;
+            }
+            productTerms.put(productId, terms);
+            for (String term : terms) {
+                Set<Long> products = termProducts.get(term);
+                if (products == null) {
+                    products = new HashSet<>(2);
+                    termProducts.put(term, products);
+                    for (String variant : variantsOf(term)) {
+                        deletes.computeIfAbsent(variant, key -> new HashSet<>(2)).add(term);
+                    }
+                }
+                products.add(productId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rimuove un prodotto; i termini non più usati escono dal vocabolario
+     */
+    public void remove(long productId) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int vocabularySize() {
+        lock.readLock().lock();
+        try {
+            return termProducts.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Prodotti che contengono, per ogni parola della ricerca, un termine entro
+     * MAX_DISTANCE modifiche; ordinati per distanza complessiva crescente
+     */
+    public List<Long> search(String query) {
+        String[] words = TypeaheadIndex.normalize(query).split(" ");
+        lock.readLock().lock();
+        try {
+            Map<Long, Integer> distanceByProduct = null;
+            for (String word : words) {
+                if (word.isEmpty()) {
+                    continue;
+                }
+                Map<Long, Integer> matches = productsMatching(word);
+                if (distanceByProduct == null) {
+                    distanceByProduct = matches;
+                } else {
+                    distanceByProduct.keySet().retainAll(matches.keySet());
+                    distanceByProduct.replaceAll((productId, distance) -> distance + matches.get(productId));
+                }
+                if (distanceByProduct.isEmpty()) {
+                    return List.of();
+                }
+            }
+            if (distanceByProduct == null) {
+                return List.of();
+            }
+            return distanceByProduct.entrySet().stream()
+                    .sorted(Map.Entry.<Long, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey()))
+                    .map(Map.Entry::getKey)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<Long, Integer> productsMatching(String word) {
+        Map<Long, Integer> result = new HashMap<>();
+        if (word.length() < MIN_TERM_LENGTH) {
+            Set<Long> exact = termProducts.get(word);
+            if (exact != null) {
+                exact.forEach(productId -> result.put(productId, 0));
+            }
+            return result;
+        }
+        for (Map.Entry<String, Integer> candidate : candidates(word).entrySet()) {
+            for (Long productId : termProducts.get(candidate.getKey())) {
+                result.merge(productId, candidate.getValue(), Math::min);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Termini entro MAX_DISTANCE dalla parola, con la rispettiva distanza
+     */
+    private Map<String, Integer> candidates(String word) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (String variant : variantsOf(word)) {
+            Set<String> terms = deletes.get(variant);
+            if (terms == null) {
+                continue;
+            }
+            for (String term : terms) {
+                if (result.containsKey(term) || Math.abs(term.length() - word.length()) > MAX_DISTANCE) {
+                    continue;
+                }
+                int distance = distance(word, term, MAX_DISTANCE);
+                if (distance <= MAX_DISTANCE) {
+                    result.put(term, distance);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void removeInternal(long productId) {
+        Set<String> terms = productTerms.remove(productId);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms) {
+            Set<Long> products = termProducts.get(term);
+            if (products == null || !products.remove(productId) || !products.isEmpty()) {
+                continue;
+            }
+            termProducts.remove(term);
+            for (String variant : variantsOf(term)) {
+                Set<String> variantTerms = deletes.get(variant);
+                if (variantTerms != null && variantTerms.remove(term) && variantTerms.isEmpty()) {
+                    deletes.remove(variant);
+                }
+            }
+        }
+    }
+
+    private static Set<String> termsOf(String name) {
+        Set<String> terms = new HashSet<>();
+        for (String word : TypeaheadIndex.normalize(name).split(" ")) {
+            if (!word.isEmpty()) {
+                terms.add(word);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * La parola (troncata al prefisso) e tutte le sue cancellazioni fino a MAX_DISTANCE caratteri
+     */
+    static Set<String> variantsOf(String term) {
+        String prefix = term.length() > PREFIX_LENGTH ? term.substring(0, PREFIX_LENGTH) : term;
+        Set<String> variants = new HashSet<>();
+        variants.add(prefix);
+        collectDeletes(prefix, MAX_DISTANCE, variants);
+        return variants;
+    }
+
+    private static void collectDeletes(String word, int remaining, Set<String> variants) {
+        if (remaining == 0 || word.length() <= 1) {
+            return;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            String deleted = word.substring(0, i) + word.substring(i + 1);
+            if (variants.add(deleted)) {
+                collectDeletes(deleted, remaining - 1, variants);
+            }
+        }
+    }
+
+    /**
+     * Distanza di Damerau-Levenshtein (optimal string alignment), interrotta oltre maxDistance
+     */
+    static int distance(String a, String b, int maxDistance) {
+        int[] previousPrevious = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    value = Math.min(value, previousPrevious[j - 2] + 1);
+                }
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (rowMin > maxDistance) {
+                return maxDistance + 1;
+            }
+            int[] recycled = previousPrevious;
+            previousPrevious = previous;
+            previous = current;
+            current = recycled;
+        }
+        return previous[b.length()];
+    }
+}
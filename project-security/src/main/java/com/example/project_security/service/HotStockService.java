@@ -0,0 +1,255 @@
+package com.example.project_security.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.project_security.model.Product;
+import com.example.project_security.repository.ProductRepository;
+import com.example.project_security.repository.ProductStockJdbcRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service per la gestione in memoria dello stock dei prodotti "hot".
+ *
+ * Per un prodotto hot le prenotazioni vengono prese su uno StripedStockCounter
+ * invece che sulla riga di products; stock_quantity viene poi allineato
+ * periodicamente scalando gli order item marcati stock_pending.
+ * Gli order item sono quindi la fonte di verità: dopo un crash lo stock
+ * disponibile si ricostruisce da stock_quantity e dagli order item non ancora scalati.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class HotStockService {
+
+    private final ProductRepository productRepository;
+    private final ProductStockJdbcRepository stockJdbcRepository;
+    private final LowStockWatcher lowStockWatcher;
+
+    /**
+     * Order item scalati al massimo per transazione di flush
+     */
+    private static final int FLUSH_BATCH_SIZE = 1000;
+
+    /**
+     * Per quanto tempo, dopo l'avvio o una disattivazione, il flush continua a cercare
+     * order item pendenti anche senza prodotti hot: copre le transazioni di checkout
+     * ancora aperte al momento della disattivazione
+     */
+    @Value("${silkroad.hot-stock.drain-after-disable-ms:60000}")
+    private long drainAfterDisableMs;
+
+    private final Map<Long, StripedStockCounter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Fino a questo istante (System.currentTimeMillis) il flush gira anche senza contatori
+     */
+    private volatile long drainUntil;
+
+    /**
+     * Carica i contatori dei prodotti hot all'avvio, riconciliandoli con gli order item
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @Transactional
+    public void loadHotProducts() {
+        int migrated = stockJdbcRepository.migrateLegacyWatermark();
+        if (migrated > 0) {
+            log.info("Order item dei prodotti hot marcati come pendenti dal vecchio watermark: {}", migrated);
+        }
+        // Eventuali order item rimasti pendenti prima del riavvio vengono scalati dai primi flush
+        extendDrain();
+
+        List<Product> hotProducts = productRepository.findByIsHotTrue();
+        for (Product product : hotProducts) {
+            long available = stockJdbcRepository.computeAvailableStock(product.getId());
+            counters.put(product.getId(), new StripedStockCounter(available));
+            log.info("Prodotto hot {} caricato con stock disponibile {}", product.getId(), available);
+        }
+    }
+
+    /**
+     * Verifica se un prodotto è in modalità hot
+     */
+    public boolean isHot(Long productId) {
+        return productId != null && counters.containsKey(productId);
+    }
+
+    /**
+     * Stock disponibile di un prodotto: dal contatore se hot, altrimenti dall'entità
+     */
+    public int getAvailableStock(Product product) {
+        StripedStockCounter counter = counters.get(product.getId());
+        if (counter == null) {
+            return product.getStockQuantity() != null ? product.getStockQuantity() : 0;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, counter.available());
+    }
+
+    /**
+     * Stock disponibile di un prodotto hot, oppure -1 se il prodotto non è hot
+     */
+    public long getHotAvailableStock(Long productId) {
+        StripedStockCounter counter = productId != null ? counters.get(productId) : null;
+        return counter != null ? counter.available() : -1;
+    }
+
+    /**
+     * Impronta dello stock corrente di tutti i prodotti hot, per gli ETag delle liste
+     */
+    public long hotStockFingerprint() {
+        long fingerprint = counters.size();
+        for (Map.Entry<Long, StripedStockCounter> entry : counters.entrySet()) {
+            long h = (entry.getKey() * 0x9E3779B97F4A7C15L) ^ entry.getValue().available();
+            h *= 0xBF58476D1CE4E5B9L;
+            fingerprint += h ^ (h >>> 31);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Attiva la modalità hot per un prodotto gestito dalla transazione corrente.
+     * Il contatore diventa visibile solo dopo il commit.
+     */
+    public void enableHotMode(Product product) {
+        if (isHot(product.getId())) {
+            return;
+        }
+
+        product.setHot(true);
+
+        // Possono esserci order item ancora pendenti di una precedente modalità hot
+        long available = stockJdbcRepository.computeAvailableStock(product.getId());
+        StripedStockCounter counter = new StripedStockCounter(available);
+        TransactionCallbacks.afterCommit(() -> counters.put(product.getId(), counter));
+        log.info("Modalità hot attivata per il prodotto {}", product.getId());
+    }
+
+    /**
+     * Disattiva la modalità hot, scalando da stock_quantity gli order item pendenti.
+     * Quelli di transazioni non ancora concluse restano pendenti e li scala il flush
+     */
+    public void disableHotMode(Product product) {
+        if (!isHot(product.getId())) {
+            return;
+        }
+
+        stockJdbcRepository.applyPendingOrderItems(product.getId());
+        product.setHot(false);
+
+        TransactionCallbacks.afterCommit(() -> {
+            extendDrain();
+            counters.remove(product.getId());
+        });
+        log.info("Modalità hot disattivata per il prodotto {}", product.getId());
+    }
+
+    /**
+     * Prenota in memoria la quantità richiesta per un prodotto hot.
+     * Se la transazione corrente va in rollback la prenotazione viene rilasciata.
+     *
+     * @return false se lo stock disponibile non è sufficiente
+     */
+    public boolean reserve(Long productId, int quantity) {
+        StripedStockCounter counter = counters.get(productId);
+        if (counter == null) {
+            throw new IllegalStateException("Il prodotto " + productId + " non è in modalità hot");
+        }
+        if (!counter.tryReserve(quantity)) {
+            return false;
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return true;
+        }
+
+        counter.inFlight().add(quantity);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                counter.inFlight().add(-quantity);
+                if (status != STATUS_COMMITTED) {
+                    counter.release(quantity);
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Riassortisce un prodotto hot (incremento manuale o annullamento ordine).
+     * Il contatore viene incrementato dopo il commit.
+     *
+     * @return lo stock disponibile atteso dopo il commit, oppure -1 se il prodotto non è hot
+     */
+    public int restock(Long productId, int quantity) {
+        productRepository.adjustStock(productId, quantity);
+        StripedStockCounter counter = counters.get(productId);
+        if (counter == null) {
+            return -1;
+        }
+        int expected = (int) Math.min(Integer.MAX_VALUE, counter.available() + quantity);
+        TransactionCallbacks.afterCommit(() -> counter.release(quantity));
+        return expected;
+    }
+
+    /**
+     * Imposta lo stock assoluto di un prodotto hot. Il contatore viene reimpostato dopo il commit.
+     *
+     * @return lo stock disponibile atteso dopo il commit
+     */
+    public int overwriteStock(Long productId, int quantity) {
+        stockJdbcRepository.overwriteStock(productId, quantity);
+        StripedStockCounter counter = counters.get(productId);
+        if (counter == null) {
+            return quantity;
+        }
+        int expected = (int) Math.max(0, quantity - counter.inFlight().sum());
+        TransactionCallbacks.afterCommit(() -> counter.reset(quantity - counter.inFlight().sum()));
+        return expected;
+    }
+
+    /**
+     * Allinea periodicamente stock_quantity scalando gli order item pendenti
+     * e aggiorna l'indice dello stock basso con i valori dei contatori.
+     * Senza prodotti hot il claim su order_items (che prende lock) viene saltato,
+     * tranne per un intervallo dopo l'avvio e dopo ogni disattivazione: un prodotto
+     * appena disattivato può avere order item di transazioni che fanno commit dopo
+     */
+    @Scheduled(fixedDelayString = "${silkroad.hot-stock.flush-interval-ms:250}")
+    public void flush() {
+        counters.forEach((productId, counter) ->
+                lowStockWatcher.updateStock(productId, (int) Math.min(Integer.MAX_VALUE, counter.available())));
+
+        if (counters.isEmpty() && System.currentTimeMillis() > drainUntil) {
+            return;
+        }
+
+        try {
+            int applied;
+            do {
+                applied = stockJdbcRepository.applyPendingOrderItems(FLUSH_BATCH_SIZE);
+            } while (applied == FLUSH_BATCH_SIZE);
+        } catch (RuntimeException ex) {
+            log.error("Flush dello stock hot fallito, verrà ripetuto al prossimo ciclo", ex);
+        }
+    }
+
+    private void extendDrain() {
+        drainUntil = System.currentTimeMillis() + drainAfterDisableMs;
+    }
+}
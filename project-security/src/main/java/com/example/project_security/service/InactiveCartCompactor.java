@@ -0,0 +1,57 @@
+package com.example.project_security.service;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.project_security.repository.CartJdbcRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Job periodico che elimina i carrelli inattivi rimasti senza righe (chiusi dal
+ * checkout o svuotati prima di scadere), per tenere piccoli la tabella carts e
+ * il suo indice su user_id. Elimina a lotti per id, ognuno nella sua transazione,
+ * fino a max-batches-per-run lotti per esecuzione.
+ */
+@Service
+@Slf4j
+public class InactiveCartCompactor {
+
+    private final CartJdbcRepository cartJdbcRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+
+    public InactiveCartCompactor(CartJdbcRepository cartJdbcRepository, PlatformTransactionManager transactionManager,
+            @Value("${silkroad.cart.compaction.batch-size:1000}") int batchSize,
+            @Value("${silkroad.cart.compaction.max-batches-per-run:100}") int maxBatchesPerRun) {
+        this.cartJdbcRepository = cartJdbcRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+    }
+
+    /**
+     * Elimina i carrelli inattivi vuoti; restituisce quanti ne ha eliminati
+     */
+    @Scheduled(cron = "${silkroad.cart.compaction.cron:0 15 4 * * *}")
+    public int compact() {
+        long afterId = 0;
+        int deleted = 0;
+        for (int i = 0; i < maxBatchesPerRun; i++) {
+            List<Long> cartIds = cartJdbcRepository.findEmptyInactiveCartIds(afterId, batchSize);
+            if (cartIds.isEmpty()) {
+                break;
+            }
+            deleted += transactionTemplate.execute(status -> cartJdbcRepository.deleteEmptyInactiveCarts(cartIds));
+            afterId = cartIds.get(cartIds.size() - 1);
+        }
+        log.info("Eliminati {} carrelli inattivi vuoti", deleted);
+        return deleted;
+    }
+}
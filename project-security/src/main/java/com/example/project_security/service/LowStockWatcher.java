@@ -0,0 +1,206 @@
+package com.example.project_security.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.UnaryOperator;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import com.example.project_security.dto.ProductDTO;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Indice in memoria dello stock dei prodotti attivi, ordinato per quantità.
+ *
+ * Viene aggiornato a ogni mutazione dello stock (decremento al checkout,
+ * incremento, aggiornamento manuale, annullamento ordine) e risponde alle
+ * interrogazioni di stock basso/esaurito in O(k) senza interrogare products.
+ * Quando un prodotto attraversa la propria soglia viene pubblicato uno
+ * StockThresholdCrossedEvent.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LowStockWatcher {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * Soglia di stock basso per i prodotti senza una soglia specifica
+     */
+    @Value("${silkroad.low-stock.default-threshold:10}")
+    private int defaultThreshold;
+
+    private final Map<Long, TrackedProduct> products = new ConcurrentHashMap<>();
+    private final NavigableSet<StockKey> byStock = new ConcurrentSkipListSet<>();
+    private final NavigableSet<StockKey> belowThreshold = new ConcurrentSkipListSet<>();
+
+    /**
+     * Evento pubblicato quando lo stock di un prodotto scende sotto la soglia o torna sopra
+     */
+    public record StockThresholdCrossedEvent(Long productId, String productName, int previousStock,
+            int currentStock, int threshold, boolean belowThreshold) {
+    }
+
+    private record StockKey(int stock, long productId) implements Comparable<StockKey> {
+        @Override
+        public int compareTo(StockKey other) {
+            int byQuantity = Integer.compare(stock, other.stock);
+            return byQuantity != 0 ? byQuantity : Long.compare(productId, other.productId);
+        }
+    }
+
+    private record TrackedProduct(ProductDTO snapshot, int stock, int threshold) {
+        boolean isLow() {
+            return stock <= threshold;
+        }
+    }
+
+    /**
+     * Carica lo stato iniziale senza pubblicare eventi
+     */
+    public void initialize(Collection<ProductDTO> activeProducts) {
+        products.clear();
+        byStock.clear();
+        belowThreshold.clear();
+        for (ProductDTO product : activeProducts) {
+            TrackedProduct tracked = toTracked(product, product.getStockQuantity());
+            products.put(product.getId(), tracked);
+            index(product.getId(), tracked);
+        }
+        log.info("LowStockWatcher inizializzato con {} prodotti attivi", products.size());
+    }
+
+    /**
+     * Registra lo stato aggiornato di un prodotto (creazione, modifica, stock, attivazione)
+     */
+    public void track(ProductDTO product) {
+        if (!product.isActive()) {
+            untrack(product.getId());
+            return;
+        }
+        update(product.getId(), previous -> toTracked(product, product.getStockQuantity()));
+    }
+
+    /**
+     * Registra solo la nuova quantità di un prodotto già tracciato
+     */
+    public void updateStock(Long productId, int stock) {
+        update(productId, previous -> previous == null ? null
+                : new TrackedProduct(previous.snapshot(), stock, previous.threshold()));
+    }
+
+    /**
+     * Applica una variazione di stock a un prodotto già tracciato (checkout, annullamento ordine).
+     * Le variazioni sono commutative: l'ordine in cui arrivano le callback di commit non conta
+     */
+    public void adjustStock(Long productId, int delta) {
+        update(productId, previous -> previous == null ? null
+                : new TrackedProduct(previous.snapshot(), Math.max(0, previous.stock() + delta), previous.threshold()));
+    }
+
+    /**
+     * Rimuove un prodotto disattivato dall'indice
+     */
+    public void untrack(Long productId) {
+        products.computeIfPresent(productId, (id, previous) -> {
+            unindex(id, previous);
+            return null;
+        });
+    }
+
+    /**
+     * Prodotti con stock non superiore alla soglia indicata, in ordine di stock crescente
+     */
+    public List<ProductDTO> findAtOrBelow(int threshold) {
+        List<ProductDTO> result = new ArrayList<>();
+        for (StockKey key : byStock.headSet(new StockKey(threshold, Long.MAX_VALUE), true)) {
+            TrackedProduct tracked = products.get(key.productId());
+            if (tracked != null && tracked.stock() <= threshold) {
+                result.add(withStock(tracked));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Prodotti sotto la propria soglia (specifica del prodotto o globale)
+     */
+    public List<ProductDTO> findBelowOwnThreshold() {
+        List<ProductDTO> result = new ArrayList<>();
+        for (StockKey key : belowThreshold) {
+            TrackedProduct tracked = products.get(key.productId());
+            if (tracked != null && tracked.isLow()) {
+                result.add(withStock(tracked));
+            }
+        }
+        return result;
+    }
+
+    private void update(Long productId, UnaryOperator<TrackedProduct> change) {
+        TrackedProduct[] transition = new TrackedProduct[2];
+        products.compute(productId, (id, previous) -> {
+            TrackedProduct next = change.apply(previous);
+            if (next == null) {
+                return previous;
+            }
+            if (previous != null) {
+                unindex(id, previous);
+            }
+            index(id, next);
+            transition[0] = previous;
+            transition[1] = next;
+            return next;
+        });
+
+        TrackedProduct previous = transition[0];
+        TrackedProduct next = transition[1];
+        if (previous != null && next != null && previous.isLow() != next.isLow()) {
+            StockThresholdCrossedEvent event = new StockThresholdCrossedEvent(productId,
+                    next.snapshot().getName(), previous.stock(), next.stock(), next.threshold(), next.isLow());
+            if (event.belowThreshold()) {
+                log.warn("Stock basso per il prodotto {}: {} (soglia {})", productId, next.stock(), next.threshold());
+            }
+            eventPublisher.publishEvent(event);
+        }
+    }
+
+    private void index(Long productId, TrackedProduct tracked) {
+        StockKey key = new StockKey(tracked.stock(), productId);
+        byStock.add(key);
+        if (tracked.isLow()) {
+            belowThreshold.add(key);
+        }
+    }
+
+    private void unindex(Long productId, TrackedProduct tracked) {
+        StockKey key = new StockKey(tracked.stock(), productId);
+        byStock.remove(key);
+        belowThreshold.remove(key);
+    }
+
+    private TrackedProduct toTracked(ProductDTO product, Integer stock) {
+        int threshold = product.getLowStockThreshold() != null ? product.getLowStockThreshold() : defaultThreshold;
+        return new TrackedProduct(product, stock != null ? stock : 0, threshold);
+    }
+
+    private ProductDTO withStock(TrackedProduct tracked) {
+        ProductDTO snapshot = tracked.snapshot();
+        if (snapshot.getStockQuantity() != null && snapshot.getStockQuantity() == tracked.stock()) {
+            return snapshot;
+        }
+        return snapshot.toBuilder()
+                .stockQuantity(tracked.stock())
+                .isAvailable(snapshot.isActive() && tracked.stock() > 0)
+                .build();
+    }
+}
@@ -2,7 +2,10 @@ package com.example.project_security.service;
 
 import java.math.BigDecimal;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -18,14 +21,17 @@ import com.example.project_security.dto.OrderItemDTO;
 import com.example.project_security.dto.request.CreateOrderDTO;
 import com.example.project_security.exception.InsufficientStockException;
 import com.example.project_security.exception.ResourceNotFoundException;
-import com.example.project_security.model.Cart;
-import com.example.project_security.model.CartItem;
 import com.example.project_security.model.Order;
+import com.example.project_security.model.Money;
 import com.example.project_security.model.OrderItem;
 import com.example.project_security.model.OrderStatus;
 import com.example.project_security.model.Product;
 import com.example.project_security.model.Utente;
-import com.example.project_security.repository.CartRepository;
+import com.example.project_security.repository.CartJdbcRepository.CartProductRow;
+import com.example.project_security.repository.CheckoutJdbcRepository;
+import com.example.project_security.repository.CheckoutJdbcRepository.CheckoutRow;
+import com.example.project_security.repository.CheckoutJdbcRepository.OrderInsert;
+import com.example.project_security.repository.CheckoutJdbcRepository.OrderLineInsert;
 import com.example.project_security.repository.OrderRepository;
 import com.example.project_security.repository.ProductRepository;
 import com.example.project_security.repository.UtenteRepository;
@@ -45,81 +51,114 @@ public class OrderService {
 
     private final OrderRepository orderRepository;
     // private final OrderItemRepository orderItemRepository;
-    private final CartRepository cartRepository;
     private final UtenteRepository userRepository;
     private final ProductRepository productRepository;
     private final CartService cartService;
+    private final HotStockService hotStockService;
+    private final LowStockWatcher lowStockWatcher;
+    private final BestSellerService bestSellerService;
+    private final CatalogVersionService catalogVersionService;
+    private final CheckoutJdbcRepository checkoutJdbcRepository;
 
     /**
-     * Crea un nuovo ordine dal carrello attivo dell'utente
+     * Crea un nuovo ordine dal carrello attivo dell'utente.
+     * Il numero di statement è fisso qualunque sia il numero di righe: una lettura di
+     * utente, carrello e prodotti, la disattivazione del carrello, un batch di UPDATE
+     * condizionali sullo stock e la rilettura dello stock aggiornato, l'ordine, un batch
+     * di righe d'ordine, la DELETE delle righe del carrello e i due batch dei contatori di vendita
      */
     public OrderDTO createOrderFromCart(Long userId, CreateOrderDTO createOrderDTO) {
         log.info("Creazione ordine per utente: {}", userId);
 
-        // Recupera l'utente
-        Utente user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("Utente non trovato"));
+        // Le modifiche del carrello ancora in memoria vanno scritte prima di leggerlo
+        cartService.flushCart(userId);
 
-        // Recupera il carrello attivo
-        Cart cart = cartRepository.findActiveCartByUserId(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("Carrello attivo non trovato"));
+        // Recupera utente, carrello attivo, righe e prodotti in un'unica query
+        List<CheckoutRow> rows = checkoutJdbcRepository.findCheckout(userId);
+        if (rows.isEmpty()) {
+            throw new ResourceNotFoundException("Utente non trovato");
+        }
+        CheckoutRow checkout = rows.get(0);
+        if (checkout.cartId() == null) {
+            throw new ResourceNotFoundException("Carrello attivo non trovato");
+        }
 
         // Verifica che il carrello non sia vuoto
-        if (cart.getCartItems().isEmpty()) {
+        if (checkout.quantity() == null) {
             throw new IllegalStateException("Impossibile creare un ordine da un carrello vuoto");
         }
 
-        // Valida il carrello (verifica disponibilità prodotti)
-        cartService.validateCart(userId);
-
-        // Crea l'ordine
-        Order order = Order.builder()
-                .user(user)
-                .orderDate(ZonedDateTime.now())
-                .orderStatus(OrderStatus.PENDING)
-                .shippingAddress(createOrderDTO.getShippingAddress() != null ? createOrderDTO.getShippingAddress()
-                        : user.getAddress())
-                .billingAddress(createOrderDTO.getBillingAddress() != null ? createOrderDTO.getBillingAddress()
-                        : createOrderDTO.getShippingAddress())
-                .notes(createOrderDTO.getNotes())
-                .paymentMethod(createOrderDTO.getPaymentMethod())
-                .build();
-
-        // Crea gli OrderItem dal carrello
-        for (CartItem cartItem : cart.getCartItems()) {
-            Product product = cartItem.getProduct();
-
-            // Verifica ancora una volta la disponibilità
-            if (!product.hasStock(cartItem.getQuantity())) {
-                throw new InsufficientStockException("Stock insufficiente per: " + product.getName());
+        // Valida il carrello (disponibilità, quantità e prezzo corrente dei prodotti)
+        List<OrderLineInsert> lines = new ArrayList<>();
+        for (CheckoutRow row : rows) {
+            CartProductRow product = row.product();
+            if (product == null) {
+                log.warn("Prodotto eliminato dal catalogo, rimosso dal carrello");
+                continue;
             }
-
-            // Crea OrderItem
-            OrderItem orderItem = OrderItem.fromCartItem(cartItem);
-            order.addOrderItem(orderItem);
-
-            // Decrementa lo stock
-            product.decrementStock(cartItem.getQuantity());
-            productRepository.save(product);
+            if (!product.isAvailable()) {
+                log.warn("Prodotto {} non più disponibile, rimosso dal carrello", product.name());
+                continue;
+            }
+            int quantity = row.quantity();
+            if (!product.hasStock(quantity)) {
+                quantity = product.stockQuantity();
+                log.warn("Quantità ridotta a {} per prodotto {}", quantity, product.name());
+            }
+            lines.add(new OrderLineInsert(product.id(), quantity, product.price(), product.name(), product.sku(),
+                    hotStockService.isHot(product.id())));
+        }
+        if (lines.isEmpty()) {
+            throw new IllegalStateException("Nessun prodotto del carrello è ancora disponibile");
         }
 
-        // Calcola il totale
-        order.calculateTotalPrice();
+        // Disattiva il carrello: un checkout concorrente dello stesso carrello attende il commit e poi fallisce.
+        // Il prossimo carrello verrà creato alla prima aggiunta
+        if (!checkoutJdbcRepository.deactivateCart(checkout.cartId())) {
+            throw new IllegalStateException("Il carrello è già stato usato per un altro ordine");
+        }
 
-        // Salva l'ordine
-        Order savedOrder = orderRepository.save(order);
+        // Prodotti hot: prenotazione in memoria, stock_quantity viene allineato in differita.
+        // Gli altri si scalano con un batch di UPDATE condizionali
+        Map<Long, Integer> quantityByProduct = new LinkedHashMap<>();
+        Map<Long, Integer> stockDecrements = new LinkedHashMap<>();
+        for (OrderLineInsert line : lines) {
+            quantityByProduct.put(line.productId(), line.quantity());
+            if (!line.stockPending()) {
+                stockDecrements.put(line.productId(), line.quantity());
+            } else if (!hotStockService.reserve(line.productId(), line.quantity())) {
+                throw new InsufficientStockException("Stock insufficiente per: " + line.productName());
+            }
+        }
+        List<Long> insufficient = checkoutJdbcRepository.decrementStock(stockDecrements);
+        if (!insufficient.isEmpty()) {
+            String names = lines.stream()
+                    .filter(line -> insufficient.contains(line.productId()))
+                    .map(OrderLineInsert::productName)
+                    .collect(Collectors.joining(", "));
+            throw new InsufficientStockException("Stock insufficiente per: " + names);
+        }
+        notifyStockDecremented(stockDecrements);
+
+        // Salva l'ordine e le sue righe
+        OrderInsert order = new OrderInsert(userId, ZonedDateTime.now(), OrderStatus.PENDING, totalPrice(lines),
+                createOrderDTO.getShippingAddress() != null ? createOrderDTO.getShippingAddress()
+                        : checkout.address(),
+                createOrderDTO.getBillingAddress() != null ? createOrderDTO.getBillingAddress()
+                        : createOrderDTO.getShippingAddress(),
+                createOrderDTO.getNotes(),
+                createOrderDTO.getPaymentMethod());
+        long orderId = checkoutJdbcRepository.insertOrder(order);
+        List<Long> itemIds = checkoutJdbcRepository.insertOrderItems(orderId, lines);
+        bestSellerService.recordOrder(order.orderDate(), quantityByProduct);
 
         // Svuota il carrello
-        cartService.clearCart(userId);
-
-        // Disattiva il carrello e creane uno nuovo
-        cart.setActive(false);
-        cartRepository.save(cart);
-        cartService.createCartForUser(user);
+        checkoutJdbcRepository.deleteCartLines(checkout.cartId());
+        TransactionCallbacks.afterCommit(() -> cartService.evictCart(userId));
 
-        log.info("Ordine creato con successo. ID: {}", savedOrder.getId());
+        log.info("Ordine creato con successo. ID: {}", orderId);
 
-        return convertToDTO(savedOrder);
+        return convertToDTO(orderId, checkout.email(), order, lines, itemIds);
     }
 
     /**
@@ -215,8 +254,9 @@ public class OrderService {
                 break;
             case CANCELLED:
             case REFUNDED:
-                // Ripristina lo stock dei prodotti
+                // Ripristina lo stock dei prodotti e storna le vendite
                 restoreProductStock(order);
+                bestSellerService.reverseOrder(order);
                 break;
         }
 
@@ -305,11 +345,31 @@ public class OrderService {
     private void restoreProductStock(Order order) {
         for (OrderItem item : order.getOrderItems()) {
             Product product = item.getProduct();
+            if (hotStockService.isHot(product.getId())) {
+                hotStockService.restock(product.getId(), item.getQuantity());
+                continue;
+            }
             product.incrementStock(item.getQuantity());
             productRepository.save(product);
+            Long productId = product.getId();
+            int quantity = item.getQuantity();
+            catalogVersionService.productChanged(productId);
+            TransactionCallbacks.afterCommit(() -> lowStockWatcher.adjustStock(productId, quantity));
         }
     }
 
+    /**
+     * Aggiorna l'indice dello stock basso e la versione dei prodotti di un ordine dopo il commit.
+     * L'indice riceve la variazione e non il valore assoluto: le callback di checkout concorrenti
+     * possono girare in ordine diverso dai commit, ma le variazioni si sommano comunque
+     */
+    private void notifyStockDecremented(Map<Long, Integer> quantityByProduct) {
+        catalogVersionService.productsChanged(quantityByProduct.keySet());
+        Map<Long, Integer> decrements = Map.copyOf(quantityByProduct);
+        TransactionCallbacks.afterCommit(() ->
+                decrements.forEach((productId, quantity) -> lowStockWatcher.adjustStock(productId, -quantity)));
+    }
+
     /**
      * Genera un numero di tracking
      */
@@ -347,6 +407,53 @@ public class OrderService {
                 .build();
     }
 
+    /**
+     * OrderDTO dell'ordine appena inserito, senza rileggerlo dal database
+     */
+    private OrderDTO convertToDTO(long orderId, String userEmail, OrderInsert order, List<OrderLineInsert> lines,
+            List<Long> itemIds) {
+        List<OrderItemDTO> items = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            OrderLineInsert line = lines.get(i);
+            items.add(OrderItemDTO.builder()
+                    .id(i < itemIds.size() ? itemIds.get(i) : null)
+                    .productId(line.productId())
+                    .productName(line.productName())
+                    .productSku(line.productSku())
+                    .quantity(line.quantity())
+                    .unitPrice(line.unitPrice().toBigDecimal())
+                    .discountAmount(BigDecimal.ZERO)
+                    .subtotal(line.unitPrice().times(line.quantity()).toBigDecimal())
+                    .build());
+        }
+
+        return OrderDTO.builder()
+                .id(orderId)
+                .userId(order.userId())
+                .userEmail(userEmail)
+                .orderDate(order.orderDate())
+                .orderStatus(order.status())
+                .orderStatusDescription(order.status().getDescription())
+                .totalPrice(order.totalPrice().toBigDecimal())
+                .totalItems(lines.stream().mapToInt(OrderLineInsert::quantity).sum())
+                .shippingAddress(order.shippingAddress())
+                .billingAddress(order.billingAddress())
+                .notes(order.notes())
+                .paymentMethod(order.paymentMethod())
+                .items(items)
+                // Un ordine appena creato è in attesa e quindi annullabile
+                .isCancellable(true)
+                .build();
+    }
+
+    private static Money totalPrice(List<OrderLineInsert> lines) {
+        long cents = 0;
+        for (OrderLineInsert line : lines) {
+            cents = Math.addExact(cents, line.unitPrice().times(line.quantity()).cents());
+        }
+        return new Money(cents);
+    }
+
     /**
      * Converte OrderItem entity in OrderItemDTO
      */
@@ -1,19 +1,35 @@
 package com.example.project_security.service;
 
 import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.example.project_security.dto.ProductDTO;
 import com.example.project_security.dto.request.CreateProductDTO;
+import com.example.project_security.dto.request.UpdatePricesDTO;
 import com.example.project_security.dto.request.UpdateProductDTO;
+import com.example.project_security.dto.response.ProductBatchDTO;
 import com.example.project_security.dto.response.ProductFilterDTO;
 import com.example.project_security.exception.DuplicateResourceException;
 import com.example.project_security.exception.ResourceNotFoundException;
@@ -35,8 +51,42 @@ import lombok.extern.slf4j.Slf4j;
 @Transactional
 public class ProductService {
 
+    /**
+     * Valore di sortBy per ordinare per unità vendute
+     */
+    public static final String SORT_BY_POPULARITY = "popularity";
+
+    private static final String SEARCH_BY_NAME = "name";
+    private static final String SEARCH_BY_KEYWORD = "keyword";
+
     private final ProductRepository productRepository;
     private final CategoryRepository categoryRepository;
+    private final HotStockService hotStockService;
+    private final LowStockWatcher lowStockWatcher;
+    private final CatalogVersionService catalogVersionService;
+    private final TypeaheadService typeaheadService;
+    private final FuzzySearchService fuzzySearchService;
+    private final SearchResultCache searchResultCache;
+    private final PlatformTransactionManager transactionManager;
+    private final CartService cartService;
+
+    /**
+     * Numero massimo di prodotti per richiesta di recupero multiplo
+     */
+    @Value("${silkroad.products.batch.max-size:200}")
+    private int maxBatchSize;
+
+    /**
+     * Inizializza l'indice in memoria dello stock con i prodotti attivi
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void initializeLowStockWatcher() {
+        List<ProductDTO> activeProducts = productRepository.findActiveWithCategory().stream()
+                .map(this::convertToDTO)
+                .collect(Collectors.toList());
+        lowStockWatcher.initialize(activeProducts);
+    }
 
     /**
      * Crea un nuovo prodotto
@@ -64,13 +114,15 @@ public class ProductService {
                 .sku(createDTO.getSku())
                 .imageUrl(createDTO.getImageUrl())
                 .category(category)
+                .lowStockThreshold(createDTO.getLowStockThreshold())
                 .isActive(true)
                 .build();
 
         Product savedProduct = productRepository.save(product);
+        catalogVersionService.categoriesChanged();
         log.info("Prodotto creato con successo. ID: {}", savedProduct.getId());
 
-        return convertToDTO(savedProduct);
+        return convertAndTrack(savedProduct);
     }
 
     /**
@@ -94,10 +146,40 @@ public class ProductService {
     }
 
     /**
-     * Recupera tutti i prodotti attivi con paginazione
+     * Recupera più prodotti per ID con un'unica query, mantenendo l'ordine richiesto
+     */
+    @Transactional(readOnly = true)
+    public ProductBatchDTO<Long> getProductsByIds(List<Long> ids) {
+        List<Long> keys = distinctBatchKeys(ids);
+        Map<Long, ProductDTO> found = productRepository.findWithCategoryByIdIn(keys).stream()
+                .map(this::convertToDTO)
+                .collect(Collectors.toMap(ProductDTO::getId, Function.identity()));
+        return toBatch(keys, found);
+    }
+
+    /**
+     * Recupera più prodotti per SKU con un'unica query, mantenendo l'ordine richiesto
+     */
+    @Transactional(readOnly = true)
+    public ProductBatchDTO<String> getProductsBySkus(List<String> skus) {
+        List<String> keys = distinctBatchKeys(skus);
+        Map<String, ProductDTO> found = productRepository.findWithCategoryBySkuIn(keys).stream()
+                .map(this::convertToDTO)
+                .collect(Collectors.toMap(ProductDTO::getSku, Function.identity()));
+        return toBatch(keys, found);
+    }
+
+    /**
+     * Recupera tutti i prodotti attivi con paginazione.
+     * Con sortBy = "popularity" l'ordinamento usa i contatori di vendita
      */
     @Transactional(readOnly = true)
     public Page<ProductDTO> getAllActiveProducts(int page, int size, String sortBy, String sortDirection) {
+        if (SORT_BY_POPULARITY.equalsIgnoreCase(sortBy)) {
+            return productRepository.findActiveOrderByPopularity(PageRequest.of(page, size))
+                    .map(this::convertToDTO);
+        }
+
         Sort sort = Sort.by(Sort.Direction.fromString(sortDirection), sortBy);
         Pageable pageable = PageRequest.of(page, size, sort);
 
@@ -106,23 +188,56 @@ public class ProductService {
     }
 
     /**
-     * Ricerca prodotti per nome
+     * Ricerca prodotti per nome, dalla cache dei risultati quando possibile
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS)
     public Page<ProductDTO> searchProductsByName(String name, int page, int size) {
-        Pageable pageable = PageRequest.of(page, size);
-        return productRepository.searchByName(name, pageable)
-                .map(this::convertToDTO);
+        SearchResultCache.Key key = SearchResultCache.Key.of(SEARCH_BY_NAME, name, page, size);
+        return searchResultCache.get(key, () -> inReadOnlyTransaction(() ->
+                productRepository.searchByName(key.keyword(), PageRequest.of(page, size))
+                        .map(this::convertToDTO)));
     }
 
     /**
-     * Ricerca prodotti per keyword (nome o descrizione)
+     * Ricerca prodotti per keyword (nome o descrizione), dalla cache dei risultati quando possibile.
+     * Se non ci sono risultati ripiega sulla ricerca fuzzy sui nomi
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS)
     public Page<ProductDTO> searchProducts(String keyword, int page, int size) {
+        SearchResultCache.Key key = SearchResultCache.Key.of(SEARCH_BY_KEYWORD, keyword, page, size);
+        return searchResultCache.get(key, () -> inReadOnlyTransaction(() -> {
+            Page<ProductDTO> results = productRepository.searchByKeyword(key.keyword(), PageRequest.of(page, size))
+                    .map(this::convertToDTO);
+            if (results.getTotalElements() > 0) {
+                return results;
+            }
+            // Nessun risultato esatto: probabile errore di battitura
+            return fuzzySearchProducts(key.keyword(), page, size);
+        }));
+    }
+
+    /**
+     * Ricerca tollerante agli errori di battitura sui nomi dei prodotti attivi
+     */
+    @Transactional(readOnly = true)
+    public Page<ProductDTO> fuzzySearchProducts(String keyword, int page, int size) {
         Pageable pageable = PageRequest.of(page, size);
-        return productRepository.searchByKeyword(keyword, pageable)
-                .map(this::convertToDTO);
+        List<Long> matches = fuzzySearchService.search(keyword);
+        int from = (int) Math.min(pageable.getOffset(), matches.size());
+        List<Long> pageIds = matches.subList(from, Math.min(from + size, matches.size()));
+        if (pageIds.isEmpty()) {
+            return new PageImpl<>(List.of(), pageable, matches.size());
+        }
+
+        Map<Long, ProductDTO> found = productRepository.findWithCategoryByIdIn(pageIds).stream()
+                .filter(Product::isActive)
+                .map(this::convertToDTO)
+                .collect(Collectors.toMap(ProductDTO::getId, Function.identity()));
+        List<ProductDTO> content = pageIds.stream()
+                .map(found::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        return new PageImpl<>(content, pageable, matches.size());
     }
 
     /**
@@ -130,12 +245,22 @@ public class ProductService {
      */
     @Transactional(readOnly = true)
     public Page<ProductDTO> getProductsByCategory(Long categoryId, int page, int size) {
+        return getProductsByCategory(categoryId, false, page, size);
+    }
+
+    /**
+     * Recupera i prodotti di una categoria, includendo a richiesta tutte le sottocategorie
+     */
+    @Transactional(readOnly = true)
+    public Page<ProductDTO> getProductsByCategory(Long categoryId, boolean includeSubcategories, int page, int size) {
         Category category = categoryRepository.findById(categoryId)
                 .orElseThrow(() -> new ResourceNotFoundException("Categoria non trovata"));
 
         Pageable pageable = PageRequest.of(page, size);
-        return productRepository.findByCategoryAndIsActiveTrue(category, pageable)
-                .map(this::convertToDTO);
+        Page<Product> products = includeSubcategories
+                ? productRepository.findActiveInCategorySubtree(categoryId, pageable)
+                : productRepository.findByCategoryAndIsActiveTrue(category, pageable);
+        return products.map(this::convertToDTO);
     }
 
     /**
@@ -190,12 +315,17 @@ public class ProductService {
         if (updateDTO.getDescription() != null) {
             product.setDescription(updateDTO.getDescription());
         }
+        boolean priceChanged = updateDTO.getPrice() != null
+                && (product.getPrice() == null || product.getPrice().compareTo(updateDTO.getPrice()) != 0);
         if (updateDTO.getPrice() != null) {
             product.setPrice(updateDTO.getPrice());
         }
         if (updateDTO.getImageUrl() != null) {
             product.setImageUrl(updateDTO.getImageUrl());
         }
+        if (updateDTO.getLowStockThreshold() != null) {
+            product.setLowStockThreshold(updateDTO.getLowStockThreshold());
+        }
         if (updateDTO.getCategoryId() != null) {
             Category category = categoryRepository.findById(updateDTO.getCategoryId())
                     .orElseThrow(() -> new ResourceNotFoundException("Categoria non trovata"));
@@ -203,9 +333,50 @@ public class ProductService {
         }
 
         Product updatedProduct = productRepository.save(product);
+        if (priceChanged) {
+            // Il nuovo prezzo deve essere sul database prima dell'UPDATE sui carrelli
+            productRepository.flush();
+            cartService.repriceActiveCarts(Map.of(id, updatedProduct.getPrice()));
+        }
+        catalogVersionService.categoriesChanged();
         log.info("Prodotto aggiornato con successo");
 
-        return convertToDTO(updatedProduct);
+        return convertAndTrack(updatedProduct);
+    }
+
+    /**
+     * Aggiorna in blocco il prezzo di più prodotti e riallinea una sola volta i carrelli attivi
+     */
+    public List<ProductDTO> updatePrices(UpdatePricesDTO pricesDTO) {
+        Map<Long, BigDecimal> requested = new LinkedHashMap<>();
+        pricesDTO.getItems().forEach(item -> requested.put(item.getId(), item.getPrice()));
+        log.info("Aggiornamento prezzi di {} prodotti", requested.size());
+
+        Map<Long, Product> products = productRepository.findAllById(requested.keySet()).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        List<Long> missing = requested.keySet().stream()
+                .filter(productId -> !products.containsKey(productId))
+                .toList();
+        if (!missing.isEmpty()) {
+            throw new ResourceNotFoundException("Prodotti non trovati: " + missing);
+        }
+
+        Map<Long, BigDecimal> changed = new LinkedHashMap<>();
+        requested.forEach((productId, price) -> {
+            Product product = products.get(productId);
+            if (product.getPrice() == null || product.getPrice().compareTo(price) != 0) {
+                product.setPrice(price);
+                changed.put(productId, price);
+            }
+        });
+        productRepository.flush();
+        cartService.repriceActiveCarts(changed);
+        log.info("Prezzi modificati: {}", changed.size());
+
+        return requested.keySet().stream()
+                .map(products::get)
+                .map(product -> changed.containsKey(product.getId()) ? convertAndTrack(product) : convertToDTO(product))
+                .toList();
     }
 
     /**
@@ -217,11 +388,18 @@ public class ProductService {
         Product product = productRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Prodotto non trovato con ID: " + id));
 
+        if (hotStockService.isHot(id)) {
+            // Il contatore cambia solo dopo il commit: la risposta e l'indice usano il valore atteso
+            int available = hotStockService.overwriteStock(id, quantity);
+            log.info("Stock del prodotto hot {} aggiornato con successo", id);
+            return convertAndTrack(product, available);
+        }
+
         product.setStockQuantity(quantity);
         Product updatedProduct = productRepository.save(product);
 
         log.info("Stock aggiornato con successo");
-        return convertToDTO(updatedProduct);
+        return convertAndTrack(updatedProduct);
     }
 
     /**
@@ -233,11 +411,35 @@ public class ProductService {
         Product product = productRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Prodotto non trovato con ID: " + id));
 
+        if (hotStockService.isHot(id)) {
+            int available = hotStockService.restock(id, quantity);
+            log.info("Stock del prodotto hot {} incrementato con successo", id);
+            return available >= 0 ? convertAndTrack(product, available) : convertAndTrack(product);
+        }
+
         product.incrementStock(quantity);
         Product updatedProduct = productRepository.save(product);
 
         log.info("Stock incrementato con successo");
-        return convertToDTO(updatedProduct);
+        return convertAndTrack(updatedProduct);
+    }
+
+    /**
+     * Attiva/disattiva la modalità hot (stock gestito in memoria) di un prodotto
+     */
+    public ProductDTO setHotMode(Long id, boolean enabled) {
+        log.info("Modalità hot prodotto {}: {}", id, enabled);
+
+        Product product = productRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Prodotto non trovato con ID: " + id));
+
+        if (enabled) {
+            hotStockService.enableHotMode(product);
+        } else {
+            hotStockService.disableHotMode(product);
+        }
+
+        return convertAndTrack(productRepository.save(product));
     }
 
     /**
@@ -250,10 +452,61 @@ public class ProductService {
                 .orElseThrow(() -> new ResourceNotFoundException("Prodotto non trovato con ID: " + id));
 
         product.setActive(!product.isActive());
+        // Una scelta esplicita dell'admin prevale sulla disattivazione in blocco della categoria
+        product.setDeactivatedByCategory(false);
         Product updatedProduct = productRepository.save(product);
+        catalogVersionService.categoriesChanged();
 
         log.info("Stato prodotto aggiornato: {}", product.isActive() ? "attivo" : "disattivato");
-        return convertToDTO(updatedProduct);
+        return convertAndTrack(updatedProduct);
+    }
+
+    /**
+     * Segna come modificati i prodotti del sottoalbero di una categoria rinominata,
+     * spostata o attivata/disattivata, per le esportazioni incrementali
+     */
+    public int touchCategorySubtreeProducts(Long categoryId) {
+        return productRepository.touchCategorySubtree(categoryId, ZonedDateTime.now());
+    }
+
+    /**
+     * Attiva o disattiva con un unico UPDATE i prodotti del sottoalbero di una categoria.
+     * La riattivazione riguarda solo i prodotti spenti da una disattivazione in blocco:
+     * quelli eliminati o disattivati singolarmente restano inattivi.
+     * Indici e versioni vengono aggiornati una sola volta dopo il commit
+     */
+    public int setCategorySubtreeProductsActive(Long categoryId, boolean active) {
+        List<Long> productIds = active
+                ? productRepository.findDeactivatedByCategoryIdsInCategorySubtree(categoryId)
+                : productRepository.findActiveIdsInCategorySubtree(categoryId);
+        if (productIds.isEmpty()) {
+            return 0;
+        }
+        int updated = active
+                ? productRepository.reactivateInCategorySubtree(categoryId, ZonedDateTime.now())
+                : productRepository.deactivateInCategorySubtree(categoryId, ZonedDateTime.now());
+        catalogVersionService.productsChanged(productIds);
+
+        if (active) {
+            List<ProductDTO> activated = productRepository.findWithCategoryByIdIn(productIds).stream()
+                    .map(this::convertToDTO)
+                    .toList();
+            TransactionCallbacks.afterCommit(() -> activated.forEach(productDTO -> {
+                lowStockWatcher.track(productDTO);
+                typeaheadService.update(productDTO);
+                fuzzySearchService.update(productDTO);
+            }));
+        } else {
+            TransactionCallbacks.afterCommit(() -> productIds.forEach(productId -> {
+                lowStockWatcher.untrack(productId);
+                typeaheadService.remove(productId);
+                fuzzySearchService.remove(productId);
+            }));
+        }
+
+        log.info("Prodotti del sottoalbero della categoria {} {}: {}", categoryId,
+                active ? "attivati" : "disattivati", updated);
+        return updated;
     }
 
     /**
@@ -266,47 +519,114 @@ public class ProductService {
                 .orElseThrow(() -> new ResourceNotFoundException("Prodotto non trovato con ID: " + id));
 
         product.setActive(false);
+        product.setDeactivatedByCategory(false);
         productRepository.save(product);
+        catalogVersionService.productChanged(id);
+        catalogVersionService.categoriesChanged();
+        TransactionCallbacks.afterCommit(() -> {
+            lowStockWatcher.untrack(id);
+            typeaheadService.remove(id);
+            fuzzySearchService.remove(id);
+        });
 
         log.info("Prodotto disattivato con successo");
     }
 
     /**
-     * Trova prodotti con stock basso
+     * Trova prodotti con stock basso dall'indice in memoria.
+     * Senza soglia esplicita si usa la soglia di ciascun prodotto (o quella globale)
      */
-    @Transactional(readOnly = true)
-    public List<ProductDTO> getLowStockProducts(int threshold) {
-        return productRepository.findLowStockProducts(threshold).stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public List<ProductDTO> getLowStockProducts(Integer threshold) {
+        return threshold != null
+                ? lowStockWatcher.findAtOrBelow(threshold)
+                : lowStockWatcher.findBelowOwnThreshold();
     }
 
     /**
-     * Trova prodotti esauriti
+     * Trova prodotti esauriti dall'indice in memoria
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS)
     public List<ProductDTO> getOutOfStockProducts() {
-        return productRepository.findByStockQuantityAndIsActiveTrue(0).stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        return lowStockWatcher.findAtOrBelow(0);
+    }
+
+    private <T> T inReadOnlyTransaction(Supplier<T> action) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template.execute(status -> action.get());
+    }
+
+    private <K> List<K> distinctBatchKeys(List<K> keys) {
+        List<K> distinct = keys.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        if (distinct.isEmpty()) {
+            throw new IllegalArgumentException("Specificare almeno un prodotto");
+        }
+        if (distinct.size() > maxBatchSize) {
+            throw new IllegalArgumentException("Richiesti " + distinct.size()
+                    + " prodotti, il massimo per richiesta è " + maxBatchSize);
+        }
+        return distinct;
+    }
+
+    private <K> ProductBatchDTO<K> toBatch(List<K> keys, Map<K, ProductDTO> found) {
+        List<ProductDTO> products = new ArrayList<>(found.size());
+        List<K> missing = new ArrayList<>();
+        for (K key : keys) {
+            ProductDTO product = found.get(key);
+            if (product != null) {
+                products.add(product);
+            } else {
+                missing.add(key);
+            }
+        }
+        return ProductBatchDTO.<K>builder()
+                .products(products)
+                .missing(missing)
+                .build();
+    }
+
+    /**
+     * Converte il prodotto e, dopo il commit, aggiorna l'indice dello stock,
+     * l'autocompletamento, la ricerca fuzzy e la versione del prodotto
+     */
+    private ProductDTO convertAndTrack(Product product) {
+        return convertAndTrack(product, hotStockService.getAvailableStock(product));
+    }
+
+    private ProductDTO convertAndTrack(Product product, int stockQuantity) {
+        ProductDTO productDTO = convertToDTO(product, stockQuantity);
+        catalogVersionService.productChanged(product.getId());
+        TransactionCallbacks.afterCommit(() -> {
+            lowStockWatcher.track(productDTO);
+            typeaheadService.update(productDTO);
+            fuzzySearchService.update(productDTO);
+        });
+        return productDTO;
     }
 
     /**
      * Converte Product entity in ProductDTO
      */
     private ProductDTO convertToDTO(Product product) {
+        return convertToDTO(product, hotStockService.getAvailableStock(product));
+    }
+
+    private ProductDTO convertToDTO(Product product, int stockQuantity) {
         return ProductDTO.builder()
                 .id(product.getId())
                 .name(product.getName())
                 .description(product.getDescription())
                 .price(product.getPrice())
-                .stockQuantity(product.getStockQuantity())
+                .stockQuantity(stockQuantity)
                 .sku(product.getSku())
                 .imageUrl(product.getImageUrl())
                 .categoryId(product.getCategory() != null ? product.getCategory().getId() : null)
                 .categoryName(product.getCategory() != null ? product.getCategory().getName() : null)
                 .isActive(product.isActive())
-                .isAvailable(product.isAvailable())
+                .isAvailable(product.isActive() && stockQuantity > 0)
+                .isHot(product.isHot())
+                .lowStockThreshold(product.getLowStockThreshold())
                 .build();
     }
 }
\ No newline at end of file
@@ -0,0 +1,126 @@
+package com.example.project_security.service;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Cache limitata dei risultati di ricerca sul catalogo.
+ *
+ * Le voci sono indicizzate per tipo di ricerca, keyword normalizzata, pagina
+ * e dimensione, scadono dopo un TTL breve e vengono invalidate in blocco
+ * quando cambia la generazione del catalogo (qualsiasi scrittura su un prodotto
+ * o prenotazione su un prodotto hot, il cui stock compare nelle pagine in cache).
+ * Le richieste concorrenti per la stessa chiave mancante condividono un unico
+ * caricamento (single-flight), così la scadenza di una chiave molto richiesta
+ * non si traduce in una raffica di query identiche.
+ */
+@Service
+public class SearchResultCache {
+
+    /**
+     * Chiave della cache: tipo di ricerca, keyword normalizzata e pagina
+     */
+    public record Key(String kind, String keyword, int page, int size) {
+
+        public static Key of(String kind, String keyword, int page, int size) {
+            String normalized = keyword == null ? ""
+                    : keyword.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+            return new Key(kind, normalized, page, size);
+        }
+    }
+
+    private record Slot(CompletableFuture<Object> value, long generation, long expiresAtNanos) {
+
+        boolean isUsable(long currentGeneration, long now) {
+            if (generation != currentGeneration) {
+                return false;
+            }
+            // Un caricamento in corso della stessa generazione va sempre condiviso
+            return !value.isDone() || (!value.isCompletedExceptionally() && now < expiresAtNanos);
+        }
+    }
+
+    private final Map<Key, Slot> slots = new ConcurrentHashMap<>();
+    private final LongSupplier generation;
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    @Autowired
+    public SearchResultCache(CatalogVersionService catalogVersionService,
+            @Value("${silkroad.search-cache.max-entries:10000}") int maxEntries,
+            @Value("${silkroad.search-cache.ttl-seconds:30}") long ttlSeconds) {
+        this(catalogVersionService::productListGeneration, maxEntries, Duration.ofSeconds(ttlSeconds));
+    }
+
+    public SearchResultCache(LongSupplier generation, int maxEntries, Duration ttl) {
+        this.generation = generation;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * Restituisce il risultato in cache o lo carica una sola volta per tutte le richieste concorrenti
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Key key, Supplier<T> loader) {
+        // La generazione si legge prima del caricamento: una scrittura concorrente
+        // rende subito obsoleto il risultato invece di farlo sopravvivere in cache
+        long currentGeneration = generation.getAsLong();
+        long now = System.nanoTime();
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        Slot mySlot = new Slot(mine, currentGeneration, now + ttlNanos);
+
+        Slot slot = slots.compute(key, (k, existing) ->
+                existing != null && existing.isUsable(currentGeneration, now) ? existing : mySlot);
+        if (slot != mySlot) {
+            try {
+                return (T) slot.value().join();
+            } catch (CompletionException ex) {
+                throw ex.getCause() instanceof RuntimeException cause ? cause : ex;
+            }
+        }
+
+        try {
+            T value = loader.get();
+            mine.complete(value);
+            evictIfFull();
+            return value;
+        } catch (RuntimeException ex) {
+            slots.remove(key, mySlot);
+            mine.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    private void evictIfFull() {
+        if (slots.size() <= maxEntries) {
+            return;
+        }
+        long currentGeneration = generation.getAsLong();
+        long now = System.nanoTime();
+        slots.values().removeIf(slot -> slot.value().isDone() && !slot.isUsable(currentGeneration, now));
+
+        // Se sono tutte valide se ne scarta una parte arbitraria fino a tornare nel limite
+        Iterator<Slot> iterator = slots.values().iterator();
+        while (slots.size() > maxEntries && iterator.hasNext()) {
+            if (iterator.next().value().isDone()) {
+                iterator.remove();
+            }
+        }
+    }
+}
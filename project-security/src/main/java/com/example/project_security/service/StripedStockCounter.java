@@ -0,0 +1,126 @@
+package com.example.project_security.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contatore di stock suddiviso in stripe per i prodotti "hot".
+ * Ogni thread prenota sulla propria stripe con una CAS, senza lock;
+ * solo quando nessuna stripe ha abbastanza unità si ribilancia il totale
+ * sotto un lock (caso raro, tipicamente a ridosso dell'esaurimento).
+ */
+public final class StripedStockCounter {
+
+    /**
+     * Distanza tra due stripe nell'array (128 byte) per evitare false sharing
+     */
+    private static final int PADDING = 16;
+
+    private final AtomicLongArray cells;
+    private final int stripes;
+    private final int mask;
+
+    /**
+     * Unità prenotate da transazioni non ancora concluse
+     */
+    private final LongAdder inFlight = new LongAdder();
+
+    public StripedStockCounter(long initialStock) {
+        this(initialStock, Runtime.getRuntime().availableProcessors());
+    }
+
+    public StripedStockCounter(long initialStock, int parallelism) {
+        int size = Integer.highestOneBit(Math.max(1, parallelism - 1) << 1);
+        this.stripes = size;
+        this.mask = size - 1;
+        this.cells = new AtomicLongArray(size * PADDING);
+        spread(Math.max(0, initialStock));
+    }
+
+    /**
+     * Prova a prenotare la quantità richiesta.
+     *
+     * @return true se la prenotazione è andata a buon fine
+     */
+    public boolean tryReserve(int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("La quantità deve essere positiva");
+        }
+
+        int start = probe();
+        for (int i = 0; i < stripes; i++) {
+            int index = ((start + i) & mask) * PADDING;
+            long current = cells.get(index);
+            while (current >= quantity) {
+                if (cells.compareAndSet(index, current, current - quantity)) {
+                    return true;
+                }
+                current = cells.get(index);
+            }
+        }
+
+        // Nessuna stripe ha abbastanza unità: si raccoglie il totale e lo si ridistribuisce
+        synchronized (this) {
+            long total = drain();
+            boolean reserved = total >= quantity;
+            spread(reserved ? total - quantity : total);
+            return reserved;
+        }
+    }
+
+    /**
+     * Restituisce unità al contatore (rollback o riassortimento)
+     */
+    public void release(int quantity) {
+        if (quantity > 0) {
+            cells.getAndAdd((probe() & mask) * PADDING, quantity);
+        }
+    }
+
+    /**
+     * Sostituisce lo stock disponibile con un nuovo valore
+     */
+    public synchronized void reset(long available) {
+        drain();
+        spread(Math.max(0, available));
+    }
+
+    /**
+     * Stock disponibile (somma delle stripe, non atomica rispetto alle prenotazioni in corso)
+     */
+    public long available() {
+        long total = 0;
+        for (int i = 0; i < stripes; i++) {
+            total += cells.get(i * PADDING);
+        }
+        return total;
+    }
+
+    public LongAdder inFlight() {
+        return inFlight;
+    }
+
+    private long drain() {
+        long total = 0;
+        for (int i = 0; i < stripes; i++) {
+            total += cells.getAndSet(i * PADDING, 0);
+        }
+        return total;
+    }
+
+    private void spread(long total) {
+        long share = total / stripes;
+        long remainder = total % stripes;
+        for (int i = 0; i < stripes; i++) {
+            long amount = share + (i < remainder ? 1 : 0);
+            if (amount > 0) {
+                cells.getAndAdd(i * PADDING, amount);
+            }
+        }
+    }
+
+    private static int probe() {
+        long id = Thread.currentThread().threadId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 40);
+    }
+}
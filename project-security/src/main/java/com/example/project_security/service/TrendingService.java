@@ -0,0 +1,227 @@
+package com.example.project_security.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.project_security.dto.response.TrendingProductDTO;
+import com.example.project_security.model.Product;
+import com.example.project_security.repository.ProductRepository;
+import com.example.project_security.repository.ProductViewJdbcRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service per i prodotti di tendenza, basato sulle visualizzazioni.
+ *
+ * Ogni visualizzazione incrementa solo un LongAdder in memoria; periodicamente
+ * i contatori vengono scritti con un unico batch di upsert nel bucket orario
+ * di product_views e sommati a un punteggio con decadimento esponenziale.
+ * La classifica servita dall'endpoint è una top-K precalcolata a ogni flush.
+ * I prodotti con punteggio più basso vengono rimossi oltre il limite di memoria.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TrendingService {
+
+    /**
+     * Punteggio sotto il quale un prodotto smette di essere tracciato
+     */
+    private static final double MIN_SCORE = 0.01;
+
+    private final ProductViewJdbcRepository productViewJdbcRepository;
+    private final ProductRepository productRepository;
+
+    /**
+     * Tempo di dimezzamento del punteggio di tendenza
+     */
+    @Value("${silkroad.trending.half-life-minutes:120}")
+    private long halfLifeMinutes;
+
+    /**
+     * Numero di prodotti mantenuti nella classifica precalcolata
+     */
+    @Value("${silkroad.trending.top-k:50}")
+    private int topK;
+
+    /**
+     * Numero massimo di prodotti con contatori e punteggi in memoria
+     */
+    @Value("${silkroad.trending.max-tracked-products:10000}")
+    private int maxTrackedProducts;
+
+    /**
+     * Giorni di storico mantenuti in product_views
+     */
+    @Value("${silkroad.trending.retention-days:30}")
+    private int retentionDays;
+
+    private final Map<Long, LongAdder> pendingViews = new ConcurrentHashMap<>();
+    private final Map<Long, Double> scores = new ConcurrentHashMap<>();
+
+    private volatile List<TrendingProductDTO> trending = List.of();
+    private long lastDecayMillis = System.currentTimeMillis();
+
+    /**
+     * Ricostruisce i punteggi dai bucket recenti e calcola la classifica iniziale
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void initialize() {
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, Double> restored = new HashMap<>();
+        productViewJdbcRepository.forEachBucketSince(now.minusMinutes(halfLifeMinutes * 10),
+                (productId, bucketStart, viewCount) -> restored.merge(productId,
+                        viewCount * decayFactor(Duration.between(bucketStart, now).toMillis()), Double::sum));
+
+        scores.clear();
+        scores.putAll(restored);
+        lastDecayMillis = System.currentTimeMillis();
+        evictColdProducts();
+        trending = computeTopK();
+        log.info("Punteggi di tendenza ricostruiti per {} prodotti", scores.size());
+    }
+
+    /**
+     * Registra una visualizzazione, solo in memoria
+     */
+    public void recordView(Long productId) {
+        LongAdder adder = pendingViews.get(productId);
+        if (adder == null) {
+            if (pendingViews.size() >= maxTrackedProducts) {
+                return;
+            }
+            adder = pendingViews.computeIfAbsent(productId, id -> new LongAdder());
+        }
+        adder.increment();
+    }
+
+    /**
+     * Scrive le visualizzazioni accumulate, aggiorna i punteggi e ricalcola la top-K
+     */
+    @Scheduled(fixedDelayString = "${silkroad.trending.flush-interval-ms:10000}")
+    public synchronized void flush() {
+        Map<Long, Long> drained = drainPendingViews();
+        if (!drained.isEmpty()) {
+            try {
+                productViewJdbcRepository.addViews(drained, LocalDateTime.now().truncatedTo(ChronoUnit.HOURS));
+            } catch (RuntimeException ex) {
+                // Le visualizzazioni tornano nei contatori e verranno riscritte al prossimo flush
+                drained.forEach((productId, views) ->
+                        pendingViews.computeIfAbsent(productId, id -> new LongAdder()).add(views));
+                log.error("Flush delle visualizzazioni fallito, verrà ripetuto al prossimo ciclo", ex);
+                return;
+            }
+        }
+
+        long nowMillis = System.currentTimeMillis();
+        double factor = decayFactor(nowMillis - lastDecayMillis);
+        lastDecayMillis = nowMillis;
+        scores.replaceAll((productId, score) -> score * factor);
+        drained.forEach((productId, views) -> scores.merge(productId, (double) views, Double::sum));
+        evictColdProducts();
+        trending = computeTopK();
+    }
+
+    /**
+     * Elimina i bucket di visualizzazione oltre il periodo di conservazione
+     */
+    @Scheduled(cron = "${silkroad.trending.purge-cron:0 30 3 * * *}")
+    public void purgeOldBuckets() {
+        int deleted = productViewJdbcRepository.deleteBucketsBefore(LocalDateTime.now().minusDays(retentionDays));
+        log.info("Eliminati {} bucket di visualizzazione più vecchi di {} giorni", deleted, retentionDays);
+    }
+
+    /**
+     * Prodotti di tendenza dalla classifica precalcolata
+     */
+    public List<TrendingProductDTO> getTrendingProducts(int limit) {
+        List<TrendingProductDTO> current = trending;
+        return current.subList(0, Math.min(Math.max(limit, 0), current.size()));
+    }
+
+    private Map<Long, Long> drainPendingViews() {
+        Map<Long, Long> drained = new HashMap<>();
+        pendingViews.forEach((productId, adder) -> {
+            long views = adder.sum();
+            if (views == 0) {
+                // Prodotto non visualizzato dall'ultimo flush: libera il contatore
+                pendingViews.remove(productId, adder);
+                return;
+            }
+            // Sottrae quanto letto invece di azzerare, per non perdere incrementi concorrenti
+            adder.add(-views);
+            drained.put(productId, views);
+        });
+        return drained;
+    }
+
+    private void evictColdProducts() {
+        scores.values().removeIf(score -> score < MIN_SCORE);
+        int excess = scores.size() - maxTrackedProducts;
+        if (excess <= 0) {
+            return;
+        }
+        scores.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue())
+                .limit(excess)
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(scores::remove);
+    }
+
+    private List<TrendingProductDTO> computeTopK() {
+        List<Map.Entry<Long, Double>> top = scores.entrySet().stream()
+                .sorted(Map.Entry.<Long, Double>comparingByValue().reversed())
+                .limit(topK)
+                .toList();
+        if (top.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, Product> products = productRepository.findAllById(top.stream().map(Map.Entry::getKey).toList())
+                .stream()
+                .filter(Product::isActive)
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+
+        List<TrendingProductDTO> result = new ArrayList<>(top.size());
+        for (Map.Entry<Long, Double> entry : top) {
+            Product product = products.get(entry.getKey());
+            if (product != null) {
+                result.add(convertToDTO(product, entry.getValue()));
+            }
+        }
+        return List.copyOf(result);
+    }
+
+    private double decayFactor(long elapsedMillis) {
+        double halfLifeMillis = Duration.ofMinutes(halfLifeMinutes).toMillis();
+        return Math.pow(0.5, Math.max(elapsedMillis, 0) / halfLifeMillis);
+    }
+
+    private TrendingProductDTO convertToDTO(Product product, double score) {
+        return TrendingProductDTO.builder()
+                .productId(product.getId())
+                .productName(product.getName())
+                .productSku(product.getSku())
+                .productImageUrl(product.getImageUrl())
+                .price(product.getPrice())
+                .score(score)
+                .build();
+    }
+}
@@ -0,0 +1,319 @@
+package com.example.project_security.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Trie in memoria per l'autocompletamento dei prodotti.
+ *
+ * Ogni prodotto viene indicizzato con il nome normalizzato a partire da ogni
+ * parola (così "iph" trova "Apple iPhone") e con lo SKU. Ogni nodo mantiene
+ * la top-N per popolarità del proprio sottoalbero, quindi una ricerca costa
+ * O(lunghezza del prefisso) indipendentemente dalla dimensione del catalogo.
+ * I nodi si fermano a MAX_DEPTH caratteri: i prefissi più lunghi vengono
+ * risolti filtrando i prodotti del nodo più profondo.
+ */
+public final class TypeaheadIndex {
+
+    static final int MAX_DEPTH = 16;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final Comparator<Suggestion> BY_POPULARITY = Comparator
+            .comparingLong(Suggestion::popularity).reversed()
+            .thenComparing(Suggestion::name, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER))
+            .thenComparingLong(Suggestion::productId);
+
+    /**
+     * Prodotto suggerito, con la popolarità usata per l'ordinamento
+     */
+    public record Suggestion(long productId, String name, String sku, long popularity) {
+    }
+
+    private record Indexed(Suggestion suggestion, Set<String> keys) {
+    }
+
+    private static final class Node {
+        private char[] labels = new char[0];
+        private Node[] children = new Node[0];
+        private final Map<Long, Suggestion> terminals = new HashMap<>(2);
+        private Suggestion[] top = new Suggestion[0];
+
+        Node child(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node childOrCreate(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insertAt = -index - 1;
+            char[] newLabels = new char[labels.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            newLabels[insertAt] = label;
+            newChildren[insertAt] = new Node();
+            System.arraycopy(labels, insertAt, newLabels, insertAt + 1, labels.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            labels = newLabels;
+            children = newChildren;
+            return newChildren[insertAt];
+        }
+
+        void removeChild(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            if (index < 0) {
+                return;
+            }
+            char[] newLabels = new char[labels.length - 1];
+            Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(labels, 0, newLabels, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(labels, index + 1, newLabels, index, labels.length - index - 1);
+            System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+            labels = newLabels;
+            children = newChildren;
+        }
+
+        boolean isEmpty() {
+            return labels.length == 0 && terminals.isEmpty();
+        }
+
+        boolean topContains(long productId) {
+            for (Suggestion suggestion : top) {
+                if (suggestion.productId() == productId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final int topN;
+    private final Node root = new Node();
+    private final Map<Long, Indexed> products = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public TypeaheadIndex(int topN) {
+        if (topN <= 0) {
+            throw new IllegalArgumentException("topN deve essere positivo");
+        }
+        this.topN = topN;
+    }
+
+    /**
+     * Normalizza un testo per l'indicizzazione: minuscolo, senza accenti
+     * e con un solo spazio tra le parole
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        String stripped = DIACRITICS.matcher(decomposed).replaceAll("");
+        return NON_ALPHANUMERIC.matcher(stripped.toLowerCase()).replaceAll(" ").trim();
+    }
+
+    /**
+     * Inserisce o aggiorna un prodotto
+     */
+    public void put(Suggestion suggestion) {
+        Set<String> keys = keysOf(suggestion);
+        lock.writeLock().lock();
+        try {
+            removeInternal(suggestion.productId());
+            if (keys.isEmpty()) {
+                return;
+            }
+            products.put(suggestion.productId(), new Indexed(suggestion, keys));
+            for (String key : keys) {
+                insertKey(key, suggestion);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rimuove un prodotto dall'indice
+     */
+    public void remove(long productId) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Prodotto indicizzato con l'id indicato, o null
+     */
+    public Suggestion get(long productId) {
+        lock.readLock().lock();
+        try {
+            Indexed indexed = products.get(productId);
+            return indexed != null ? indexed.suggestion() : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return products.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Prodotti più popolari il cui nome (da una qualsiasi parola) o SKU inizia con il prefisso
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        String normalized = normalize(prefix);
+        if (normalized.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            int depth = Math.min(normalized.length(), MAX_DEPTH);
+            for (int i = 0; i < depth && node != null; i++) {
+                node = node.child(normalized.charAt(i));
+            }
+            if (node == null) {
+                return List.of();
+            }
+            if (normalized.length() <= MAX_DEPTH) {
+                return List.of(Arrays.copyOf(node.top, Math.min(limit, node.top.length)));
+            }
+            return suggestBeyondMaxDepth(node, normalized, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Suggestion> suggestBeyondMaxDepth(Node node, String normalized, int limit) {
+        List<Suggestion> matches = new ArrayList<>();
+        for (Suggestion suggestion : node.terminals.values()) {
+            Indexed indexed = products.get(suggestion.productId());
+            if (indexed != null && indexed.keys().stream().anyMatch(key -> key.startsWith(normalized))) {
+                matches.add(suggestion);
+            }
+        }
+        matches.sort(BY_POPULARITY);
+        return List.copyOf(matches.subList(0, Math.min(limit, matches.size())));
+    }
+
+    private void insertKey(String key, Suggestion suggestion) {
+        Node node = root;
+        int depth = Math.min(key.length(), MAX_DEPTH);
+        for (int i = 0; i < depth; i++) {
+            node = node.childOrCreate(key.charAt(i));
+            offer(node, suggestion);
+        }
+        node.terminals.put(suggestion.productId(), suggestion);
+    }
+
+    private void removeInternal(long productId) {
+        Indexed indexed = products.remove(productId);
+        if (indexed == null) {
+            return;
+        }
+        for (String key : indexed.keys()) {
+            removeKey(key, productId);
+        }
+    }
+
+    private void removeKey(String key, long productId) {
+        int depth = Math.min(key.length(), MAX_DEPTH);
+        Node[] path = new Node[depth + 1];
+        path[0] = root;
+        for (int i = 0; i < depth; i++) {
+            path[i + 1] = path[i].child(key.charAt(i));
+            if (path[i + 1] == null) {
+                return;
+            }
+        }
+        path[depth].terminals.remove(productId);
+
+        // Dal nodo più profondo verso la radice: si ricalcola la top-N dove compariva
+        // il prodotto e si eliminano i nodi rimasti vuoti
+        for (int i = depth; i > 0; i--) {
+            Node node = path[i];
+            if (node.isEmpty()) {
+                path[i - 1].removeChild(key.charAt(i - 1));
+            } else if (node.topContains(productId)) {
+                recomputeTop(node);
+            }
+        }
+    }
+
+    private void offer(Node node, Suggestion suggestion) {
+        if (node.topContains(suggestion.productId())) {
+            return;
+        }
+        Suggestion[] top = node.top;
+        if (top.length == topN && BY_POPULARITY.compare(suggestion, top[top.length - 1]) >= 0) {
+            return;
+        }
+        int insertAt = -Arrays.binarySearch(top, suggestion, BY_POPULARITY) - 1;
+        Suggestion[] newTop = new Suggestion[Math.min(top.length + 1, topN)];
+        System.arraycopy(top, 0, newTop, 0, insertAt);
+        newTop[insertAt] = suggestion;
+        System.arraycopy(top, insertAt, newTop, insertAt + 1, newTop.length - insertAt - 1);
+        node.top = newTop;
+    }
+
+    /**
+     * La top-N di un nodo è contenuta nell'unione dei prodotti che terminano
+     * nel nodo e delle top-N dei figli
+     */
+    private void recomputeTop(Node node) {
+        Map<Long, Suggestion> candidates = new HashMap<>(node.terminals);
+        for (Node child : node.children) {
+            for (Suggestion suggestion : child.top) {
+                // I figli possono contenere ancora il prodotto in rimozione tramite un'altra chiave
+                if (products.containsKey(suggestion.productId())) {
+                    candidates.putIfAbsent(suggestion.productId(), suggestion);
+                }
+            }
+        }
+        node.top = candidates.values().stream()
+                .sorted(BY_POPULARITY)
+                .limit(topN)
+                .toArray(Suggestion[]::new);
+    }
+
+    private static Set<String> keysOf(Suggestion suggestion) {
+        Set<String> keys = new LinkedHashSet<>();
+        String name = normalize(suggestion.name());
+        if (!name.isEmpty()) {
+            keys.add(name);
+            for (int i = name.indexOf(' '); i >= 0; i = name.indexOf(' ', i + 1)) {
+                keys.add(name.substring(i + 1));
+            }
+        }
+        String sku = normalize(suggestion.sku());
+        if (!sku.isEmpty()) {
+            keys.add(sku);
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.project_security.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.project_security.dto.ProductDTO;
+import com.example.project_security.dto.response.ProductSuggestionDTO;
+import com.example.project_security.model.Product;
+import com.example.project_security.model.ProductSales;
+import com.example.project_security.repository.ProductRepository;
+import com.example.project_security.repository.ProductSalesRepository;
+import com.example.project_security.service.TypeaheadIndex.Suggestion;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service per l'autocompletamento dei prodotti su un TypeaheadIndex in memoria.
+ *
+ * L'indice viene costruito all'avvio con i prodotti attivi e le unità vendute
+ * come popolarità, aggiornato incrementalmente dopo il commit di ogni modifica
+ * a un prodotto e ricostruito periodicamente per riallineare la popolarità.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TypeaheadService {
+
+    private final ProductRepository productRepository;
+    private final ProductSalesRepository productSalesRepository;
+
+    /**
+     * Numero di suggerimenti precalcolati per ogni nodo del trie
+     */
+    @Value("${silkroad.typeahead.top-n:10}")
+    private int topN;
+
+    private volatile TypeaheadIndex index = new TypeaheadIndex(1);
+
+    /**
+     * Modifiche arrivate durante una ricostruzione, da riapplicare al nuovo indice
+     */
+    private Map<Long, ProductDTO> changedDuringRebuild;
+
+    /**
+     * Costruisce l'indice all'avvio e lo ricostruisce periodicamente
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${silkroad.typeahead.rebuild-interval-ms:600000}",
+            fixedDelayString = "${silkroad.typeahead.rebuild-interval-ms:600000}")
+    public void rebuild() {
+        synchronized (this) {
+            changedDuringRebuild = new HashMap<>();
+        }
+
+        Map<Long, Long> popularity = productSalesRepository.findAll().stream()
+                .collect(Collectors.toMap(ProductSales::getProductId, ProductSales::getUnitsSold));
+        TypeaheadIndex rebuilt = new TypeaheadIndex(topN);
+        for (Product product : productRepository.findByIsActiveTrue()) {
+            rebuilt.put(new Suggestion(product.getId(), product.getName(), product.getSku(),
+                    popularity.getOrDefault(product.getId(), 0L)));
+        }
+
+        synchronized (this) {
+            changedDuringRebuild.forEach((productId, product) -> apply(rebuilt, productId, product));
+            changedDuringRebuild = null;
+            index = rebuilt;
+        }
+        log.info("Indice di autocompletamento costruito con {} prodotti", rebuilt.size());
+    }
+
+    /**
+     * Aggiorna l'indice dopo la creazione o modifica di un prodotto
+     */
+    public synchronized void update(ProductDTO product) {
+        recordDuringRebuild(product.getId(), product);
+        apply(index, product.getId(), product);
+    }
+
+    /**
+     * Rimuove un prodotto dall'indice
+     */
+    public synchronized void remove(Long productId) {
+        recordDuringRebuild(productId, null);
+        index.remove(productId);
+    }
+
+    /**
+     * Suggerimenti per il prefisso digitato, dai più popolari
+     */
+    public List<ProductSuggestionDTO> suggest(String query, int limit) {
+        return index.suggest(query, Math.min(limit, topN)).stream()
+                .map(this::convertToDTO)
+                .collect(Collectors.toList());
+    }
+
+    private void recordDuringRebuild(Long productId, ProductDTO product) {
+        if (changedDuringRebuild != null) {
+            changedDuringRebuild.put(productId, product);
+        }
+    }
+
+    private void apply(TypeaheadIndex target, Long productId, ProductDTO product) {
+        if (product == null || !product.isActive()) {
+            target.remove(productId);
+            return;
+        }
+        Suggestion current = target.get(productId);
+        if (current != null && Objects.equals(current.name(), product.getName())
+                && Objects.equals(current.sku(), product.getSku())) {
+            return;
+        }
+        long popularity = current != null ? current.popularity() : 0L;
+        target.put(new Suggestion(productId, product.getName(), product.getSku(), popularity));
+    }
+
+    private ProductSuggestionDTO convertToDTO(Suggestion suggestion) {
+        return ProductSuggestionDTO.builder()
+                .productId(suggestion.productId())
+                .name(suggestion.name())
+                .sku(suggestion.sku())
+                .build();
+    }
+}
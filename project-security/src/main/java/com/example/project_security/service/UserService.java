@@ -1,8 +1,10 @@
 package com.example.project_security.service;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.springframework.security.authentication.AuthenticationManager;
@@ -38,9 +40,12 @@ public class UserService {
     private final UtenteRepository utenteRepository;
     private final RoleRepository roleRepository;
     private final PasswordEncoder passwordEncoder;
-    private final CartService cartService;
     private final AuthenticationManager authenticationManager;
     private final JwtService jwtService;
+    private final CartService cartService;
+
+    // Email -> id degli utenti autenticati, per le API che hanno bisogno solo dell'id
+    private final Map<String, Long> userIdByEmail = new ConcurrentHashMap<>();
 
     public AuthResponse loginUser(LoginRequestDTO loginRequest) {
         log.info("Tentativo di login per l'utente: {}", loginRequest.getEmail());
@@ -87,10 +92,25 @@ public class UserService {
                 .build();
 
         Utente savedUser = utenteRepository.save(utente);
-        cartService.createCartForUser(savedUser);
         return convertToDTO(savedUser);
     }
 
+    /**
+     * Id dell'utente con l'email indicata, senza costruire il DTO.
+     * L'associazione resta in memoria finché l'utente non cambia email o viene eliminato
+     */
+    @Transactional(readOnly = true)
+    public Long getUserIdByEmail(String email) {
+        Long id = userIdByEmail.get(email);
+        if (id != null) {
+            return id;
+        }
+        id = utenteRepository.findIdByEmail(email)
+                .orElseThrow(() -> new ResourceNotFoundException("Utente non trovato con email: " + email));
+        userIdByEmail.put(email, id);
+        return id;
+    }
+
     @Transactional(readOnly = true)
     public UserDTO getUserById(Long id) {
         Utente utente = utenteRepository.findById(id)
@@ -129,8 +149,11 @@ public class UserService {
             utente.setLastName(updateDTO.getLastName());
         if (updateDTO.getAddress() != null)
             utente.setAddress(updateDTO.getAddress());
-        if (updateDTO.getEmail() != null)
+        if (updateDTO.getEmail() != null) {
+            String previousEmail = utente.getEmail();
             utente.setEmail(updateDTO.getEmail());
+            TransactionCallbacks.afterCommit(() -> userIdByEmail.remove(previousEmail));
+        }
         if (updateDTO.getTelephone() != null)
             utente.setTelephone(updateDTO.getTelephone());
         if (updateDTO.getNewPassword() != null)
@@ -143,6 +166,11 @@ public class UserService {
         Utente utente = utenteRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Utente non trovato con ID: " + id));
         utenteRepository.delete(utente);
+        TransactionCallbacks.afterCommit(() -> {
+            userIdByEmail.remove(utente.getEmail());
+            // Il carrello in memoria (write-behind) non deve sopravvivere all'utente
+            cartService.evictCart(id);
+        });
     }
 
     public UserDTO addAuthority(Long userId, String authority) {
@@ -0,0 +1,333 @@
+package com.example.project_security.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.project_security.exception.ResourceNotFoundException;
+import com.example.project_security.model.Money;
+import com.example.project_security.repository.CartJdbcRepository;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * CartStore con i carrelli attivi in memoria e scrittura differita.
+ *
+ * Ogni utente ha una voce con lo stato corrente (versionato) e la versione già
+ * scritta sul database. Le modifiche toccano solo la memoria; ogni pochi secondi
+ * le voci modificate vengono scritte insieme con pochi batch JDBC in un'unica
+ * transazione; se il lotto fallisce si riscrive un carrello alla volta, così un
+ * carrello non scrivibile non blocca gli altri. Il checkout forza la scrittura
+ * del carrello dell'utente e lo spegnimento quella di tutti. Oltre il limite di
+ * voci vengono scartati i carrelli già scritti.
+ *
+ * Lo stato in memoria è locale al processo: va usato con una sola istanza
+ * o con sessioni legate all'istanza.
+ */
+@Service
+@ConditionalOnProperty(name = "silkroad.cart.store", havingValue = "write-behind")
+@Slf4j
+public class WriteBehindCartStore implements CartStore {
+
+    private static final class Entry {
+        private CartSnapshot state;
+        private long persistedVersion;
+        private Map<Long, CartSnapshot.Line> persistedLines;
+        private boolean evicted;
+
+        Entry(CartSnapshot loaded) {
+            this.state = loaded;
+            this.persistedVersion = loaded.version();
+            this.persistedLines = loaded.lines();
+        }
+
+        boolean isDirty() {
+            return state.version() != persistedVersion;
+        }
+    }
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final CartJdbcRepository cartJdbcRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxEntries;
+
+    public WriteBehindCartStore(CartJdbcRepository cartJdbcRepository, PlatformTransactionManager transactionManager,
+            @Value("${silkroad.cart.write-behind.max-entries:100000}") int maxEntries) {
+        this.cartJdbcRepository = cartJdbcRepository;
+        // Transazione propria: una scrittura forzata dal checkout non deve annullarsi con l'ordine
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.maxEntries = maxEntries;
+    }
+
+    @Override
+    public CartSnapshot get(long userId) {
+        while (true) {
+            Entry entry = entry(userId);
+            synchronized (entry) {
+                if (!entry.evicted) {
+                    return entry.state;
+                }
+            }
+        }
+    }
+
+    @Override
+    public CartSnapshot update(long userId, Consumer<Map<Long, CartSnapshot.Line>> mutation) {
+        while (true) {
+            Entry entry = entry(userId);
+            CartSnapshot updated;
+            synchronized (entry) {
+                // Una voce scartata nel frattempo va ricaricata, altrimenti la modifica andrebbe persa
+                if (entry.evicted) {
+                    continue;
+                }
+                Map<Long, CartSnapshot.Line> lines = new LinkedHashMap<>(entry.state.lines());
+                mutation.accept(lines);
+                if (lines.equals(entry.state.lines())) {
+                    return entry.state;
+                }
+                updated = entry.state.withLines(lines);
+                entry.state = updated;
+            }
+            evictIfFull();
+            return updated;
+        }
+    }
+
+    /**
+     * Un solo passaggio su tutte le voci; le righe toccate rendono la voce modificata,
+     * così il prossimo flush non riscrive il prezzo vecchio
+     */
+    @Override
+    public void pricesChanged(Map<Long, Money> priceByProduct) {
+        entries.values().forEach(entry -> {
+            synchronized (entry) {
+                if (entry.evicted) {
+                    return;
+                }
+                Map<Long, CartSnapshot.Line> lines = null;
+                for (Map.Entry<Long, Money> price : priceByProduct.entrySet()) {
+                    CartSnapshot.Line line = (lines != null ? lines : entry.state.lines()).get(price.getKey());
+                    if (line == null || price.getValue().equals(line.unitPrice())) {
+                        continue;
+                    }
+                    if (lines == null) {
+                        lines = new LinkedHashMap<>(entry.state.lines());
+                    }
+                    lines.put(price.getKey(), line.withQuantityAndPrice(line.quantity(), price.getValue()));
+                }
+                if (lines != null) {
+                    entry.state = entry.state.withLines(lines);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void flush(long userId) {
+        Entry entry = entries.get(userId);
+        if (entry != null) {
+            write(List.of(Map.entry(userId, entry)));
+        }
+    }
+
+    @Override
+    public void evict(long userId) {
+        Entry entry = entries.get(userId);
+        if (entry != null) {
+            synchronized (entry) {
+                entry.evicted = true;
+                entries.remove(userId, entry);
+            }
+        }
+    }
+
+    /**
+     * La voce si scarta solo se non è cambiata dalla scrittura; altrimenti si riscrive.
+     * Il lock della voce non può coprire anche la scrittura, che prende prima quello dello store
+     */
+    @Override
+    public void flushAndEvict(long userId) {
+        while (true) {
+            Entry entry = entries.get(userId);
+            if (entry == null) {
+                return;
+            }
+            write(List.of(Map.entry(userId, entry)));
+            synchronized (entry) {
+                if (!entry.isDirty()) {
+                    entry.evicted = true;
+                    entries.remove(userId, entry);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sincronizzato con le scritture: una scrittura in corso sul carrello disattivato
+     * deve finire prima di decidere se la voce contiene modifiche successive
+     */
+    @Override
+    public synchronized void cartExpired(long userId, long cartId, long version) {
+        Entry entry = entries.get(userId);
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            if (entry.state.cartId() == null || entry.state.cartId() != cartId) {
+                return;
+            }
+            if (!entry.isDirty() && entry.persistedVersion == version) {
+                entry.evicted = true;
+                entries.remove(userId, entry);
+                return;
+            }
+            // Modifiche arrivate dopo la lettura del job: si riscrivono tutte in un carrello nuovo
+            entry.state = entry.state.detached();
+            entry.persistedLines = Map.of();
+            entry.persistedVersion = -1;
+        }
+    }
+
+    /**
+     * Scrive sul database tutti i carrelli modificati dall'ultimo ciclo
+     */
+    @Scheduled(fixedDelayString = "${silkroad.cart.write-behind.flush-interval-ms:5000}")
+    public void flushAll() {
+        List<Map.Entry<Long, Entry>> dirty = new ArrayList<>();
+        entries.forEach((userId, entry) -> {
+            synchronized (entry) {
+                if (entry.isDirty()) {
+                    dirty.add(Map.entry(userId, entry));
+                }
+            }
+        });
+        if (dirty.isEmpty()) {
+            return;
+        }
+        try {
+            write(dirty);
+            log.debug("Scritti {} carrelli modificati", dirty.size());
+        } catch (RuntimeException ex) {
+            log.warn("Scrittura differita di {} carrelli fallita, si riprova un carrello alla volta",
+                    dirty.size(), ex);
+            dirty.forEach(this::writeAlone);
+        }
+        evictIfFull();
+    }
+
+    /**
+     * Scrive un solo carrello. Se l'utente non esiste più la voce viene scartata;
+     * per gli altri errori resta modificata e verrà riscritta al prossimo ciclo
+     */
+    private void writeAlone(Map.Entry<Long, Entry> item) {
+        try {
+            write(List.of(item));
+        } catch (ResourceNotFoundException ex) {
+            log.warn("Carrello in memoria dell'utente {} scartato: {}", item.getKey(), ex.getMessage());
+            evict(item.getKey());
+        } catch (RuntimeException ex) {
+            log.error("Scrittura differita del carrello dell'utente {} fallita, verrà ripetuta al prossimo ciclo",
+                    item.getKey(), ex);
+        }
+    }
+
+    /**
+     * Allo spegnimento si scrivono tutti i carrelli ancora in memoria
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        flushAll();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private Entry entry(long userId) {
+        Entry entry = entries.get(userId);
+        if (entry != null) {
+            return entry;
+        }
+        // Il caricamento avviene fuori dalla mappa; in caso di corsa vince la prima voce inserita
+        Entry loaded = new Entry(CartStoreSupport.load(cartJdbcRepository, userId));
+        Entry existing = entries.putIfAbsent(userId, loaded);
+        if (existing == null) {
+            evictIfFull();
+            return loaded;
+        }
+        return existing;
+    }
+
+    /**
+     * Le scritture sono serializzate: due flush concorrenti dello stesso carrello
+     * nuovo creerebbero due righe in carts
+     */
+    private synchronized void write(List<Map.Entry<Long, Entry>> toWrite) {
+        List<CartStoreSupport.PendingWrite> writes = new ArrayList<>();
+        for (Map.Entry<Long, Entry> item : toWrite) {
+            Entry entry = item.getValue();
+            synchronized (entry) {
+                if (entry.isDirty()) {
+                    writes.add(new CartStoreSupport.PendingWrite(entry.state, entry.persistedLines));
+                }
+            }
+        }
+        if (writes.isEmpty()) {
+            return;
+        }
+
+        Map<Long, CartSnapshot> written = transactionTemplate.execute(
+                status -> CartStoreSupport.write(cartJdbcRepository, writes));
+
+        for (Map.Entry<Long, Entry> item : toWrite) {
+            CartSnapshot persisted = written.get(item.getKey());
+            if (persisted == null) {
+                continue;
+            }
+            Entry entry = item.getValue();
+            synchronized (entry) {
+                entry.persistedVersion = persisted.version();
+                entry.persistedLines = persisted.lines();
+                // Lo stato può essere andato avanti durante la scrittura: si riportano solo gli id
+                Map<Long, Long> itemIds = new LinkedHashMap<>();
+                persisted.lines().forEach((productId, line) -> itemIds.put(productId, line.itemId()));
+                entry.state = entry.state.withIds(persisted.cartId(), itemIds);
+            }
+        }
+    }
+
+    /**
+     * Oltre il limite si scartano voci già scritte, in ordine arbitrario
+     */
+    private void evictIfFull() {
+        if (entries.size() <= maxEntries) {
+            return;
+        }
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            synchronized (entry) {
+                if (!entry.isDirty()) {
+                    entry.evicted = true;
+                    iterator.remove();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.project_security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.example.project_security.repository.AbandonedCartJdbcRepository;
+import com.example.project_security.repository.AbandonedCartJdbcRepository.AbandonedCartRow;
+import com.example.project_security.repository.AbandonedCartJdbcRepository.Chunk;
+import com.example.project_security.service.AbandonedCartSweeper;
+import com.example.project_security.service.AbandonedCartsEvent;
+import com.example.project_security.service.CartService;
+
+class AbandonedCartSweeperTest {
+
+    private AbandonedCartJdbcRepository repository;
+    private CartService cartService;
+    private ApplicationEventPublisher eventPublisher;
+    private AbandonedCartSweeper sweeper;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(AbandonedCartJdbcRepository.class);
+        cartService = mock(CartService.class);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        sweeper = new AbandonedCartSweeper(repository, cartService, eventPublisher,
+                mock(PlatformTransactionManager.class), 7, 30, 100, 10);
+    }
+
+    @Test
+    @DisplayName("Should walk carts in chunks, flag new ones, expire old flags and checkpoint each chunk")
+    void testSweepPass() {
+        // Due blocchi, poi fine del passaggio
+        when(repository.lockCheckpoint(any())).thenReturn(0L, 100L, 180L);
+        when(repository.findChunk(0L, 100)).thenReturn(new Chunk(100, 100L));
+        when(repository.findChunk(100L, 100)).thenReturn(new Chunk(80, 180L));
+        when(repository.findChunk(180L, 100)).thenReturn(new Chunk(0, 0L));
+        when(repository.findAbandoned(eq(0L), eq(100L), any())).thenReturn(List.of(
+                new AbandonedCartRow(5L, 50L, 3L, null),
+                new AbandonedCartRow(9L, 90L, 4L, ZonedDateTime.now().minusDays(40)),
+                new AbandonedCartRow(12L, 120L, 1L, ZonedDateTime.now().minusDays(2))));
+        when(repository.findAbandoned(eq(100L), eq(180L), any())).thenReturn(List.of());
+
+        sweeper.sweep();
+
+        verify(repository).markAbandoned(eq(List.of(5L)), any());
+        verify(repository).expire(List.of(9L));
+        verify(cartService).cartExpired(90L, 9L, 4L);
+
+        InOrder checkpoints = inOrder(repository);
+        checkpoints.verify(repository).saveCheckpoint(any(), eq(100L));
+        checkpoints.verify(repository).saveCheckpoint(any(), eq(180L));
+        checkpoints.verify(repository).saveCheckpoint(any(), eq(0L));
+
+        ArgumentCaptor<AbandonedCartsEvent> event = ArgumentCaptor.forClass(AbandonedCartsEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertEquals(List.of(new AbandonedCartsEvent.AbandonedCart(5L, 50L)), event.getValue().carts());
+
+        AbandonedCartSweeper.Progress progress = sweeper.progress();
+        assertEquals(180, progress.passScanned());
+        assertEquals(1, progress.passFlagged());
+        assertEquals(1, progress.passExpired());
+        assertEquals(1, progress.passesCompleted());
+    }
+
+    @Test
+    @DisplayName("Should stop at the per-run chunk limit")
+    void testBoundedRun() {
+        when(repository.lockCheckpoint(any())).thenReturn(0L);
+        when(repository.findChunk(anyLong(), anyInt())).thenReturn(new Chunk(100, 100L));
+        when(repository.findAbandoned(anyLong(), anyLong(), any())).thenReturn(List.of());
+
+        sweeper.sweep();
+
+        // Limite di 10 blocchi per esecuzione
+        verify(repository, times(10)).saveCheckpoint(any(), eq(100L));
+        assertEquals(100L, sweeper.progress().checkpoint());
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.project_security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.example.project_security.model.Money;
+import com.example.project_security.service.CartCountCache;
+import com.example.project_security.service.CartSnapshot;
+
+class CartCountCacheTest {
+
+    private static final Money PRICE = Money.of(new BigDecimal("5.00"));
+
+    private static CartSnapshot cart(long version, int... quantities) {
+        Map<Long, CartSnapshot.Line> lines = new LinkedHashMap<>();
+        for (int i = 0; i < quantities.length; i++) {
+            long productId = i + 1;
+            lines.put(productId, new CartSnapshot.Line(null, productId, quantities[i], PRICE));
+        }
+        return new CartSnapshot(10L, 7L, version, lines);
+    }
+
+    @Test
+    @DisplayName("Should keep the count of the newest cart version")
+    void testVersionOrdering() {
+        CartCountCache cache = new CartCountCache(100);
+
+        cache.record(cart(2, 1, 3));
+        // Un commit più vecchio arrivato dopo non sovrascrive il conteggio
+        cache.record(cart(1, 1));
+
+        assertEquals(new CartCountCache.CartCount(2, 2, 4), cache.get(7L));
+
+        cache.record(cart(3));
+        assertEquals(0, cache.get(7L).lines());
+
+        cache.evict(7L);
+        assertNull(cache.get(7L));
+    }
+
+    @Test
+    @DisplayName("Should stay within the configured number of entries")
+    void testBounded() {
+        CartCountCache cache = new CartCountCache(10);
+        for (long userId = 1; userId <= 50; userId++) {
+            cache.record(new CartSnapshot(userId, userId, 1, Map.of()));
+        }
+        assertEquals(10, cache.size());
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.project_security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.example.project_security.dto.CartDeltaDTO;
+import com.example.project_security.dto.request.CartOperationsDTO;
+import com.example.project_security.dto.response.AddToCartDTO;
+import com.example.project_security.exception.InsufficientStockException;
+import com.example.project_security.model.Money;
+import com.example.project_security.repository.CartJdbcRepository;
+import com.example.project_security.repository.CartJdbcRepository.CartLineRow;
+import com.example.project_security.repository.CartJdbcRepository.CartProductRow;
+import com.example.project_security.service.CartChange;
+import com.example.project_security.service.CartCountCache;
+import com.example.project_security.service.CartService;
+import com.example.project_security.service.DatabaseCartStore;
+import com.example.project_security.service.HotStockService;
+
+class CartDeltaResponseTest {
+
+    private static final Money PRICE = Money.of(new BigDecimal("4.00"));
+
+    private CartJdbcRepository cartJdbcRepository;
+    private HotStockService hotStockService;
+    private CartService cartService;
+
+    @BeforeEach
+    void setUp() {
+        cartJdbcRepository = mock(CartJdbcRepository.class);
+        when(cartJdbcRepository.findActiveCartLines(anyLong())).thenReturn(List.of(
+                new CartLineRow(100L, 5L, 11L, 1L, 2, PRICE),
+                new CartLineRow(100L, 5L, 12L, 2L, 3, PRICE)));
+        hotStockService = mock(HotStockService.class);
+        cartService = new CartService(cartJdbcRepository, new DatabaseCartStore(cartJdbcRepository),
+                new CartCountCache(100), hotStockService);
+    }
+
+    @Test
+    @DisplayName("Should describe a removal with the new totals and version, without loading products")
+    void testRemovalDelta() {
+        CartChange change = cartService.removeProductFromCart(7L, 1L);
+        CartDeltaDTO delta = cartService.toDeltaDTO(change);
+
+        assertEquals(6L, delta.getVersion());
+        assertEquals(List.of(1L), delta.getRemovedProductIds());
+        assertTrue(delta.getChangedItems().isEmpty());
+        assertEquals(1, delta.getItemCount());
+        assertEquals(3, delta.getTotalItems());
+        assertEquals(new BigDecimal("12.00"), delta.getTotalPrice());
+        verify(cartJdbcRepository, never()).findCartProducts(anyCollection());
+    }
+
+    @Test
+    @DisplayName("Should not report a removed product that was never in the cart")
+    void testRemoveMissingProduct() {
+        CartOperationsDTO operations = new CartOperationsDTO(List.of(
+                new CartOperationsDTO.Operation(CartOperationsDTO.Type.REMOVE, 9L, null),
+                new CartOperationsDTO.Operation(CartOperationsDTO.Type.REMOVE, 1L, null)));
+
+        CartDeltaDTO delta = cartService.toDeltaDTO(cartService.applyCartOperations(7L, operations));
+
+        assertEquals(List.of(1L), delta.getRemovedProductIds());
+        assertTrue(delta.getChangedItems().isEmpty());
+        assertEquals(1, delta.getItemCount());
+    }
+
+    @Test
+    @DisplayName("Should leave the cart and the delta untouched when only missing products are removed")
+    void testRemoveOnlyMissingProducts() {
+        CartOperationsDTO operations = new CartOperationsDTO(List.of(
+                new CartOperationsDTO.Operation(CartOperationsDTO.Type.REMOVE, 9L, null)));
+
+        CartDeltaDTO delta = cartService.toDeltaDTO(cartService.applyCartOperations(7L, operations));
+
+        assertTrue(delta.getRemovedProductIds().isEmpty());
+        assertEquals(5L, delta.getVersion());
+        verify(cartJdbcRepository, never()).deleteLines(anyList());
+    }
+
+    @Test
+    @DisplayName("Should check a hot product against the in-memory counter instead of the upsert on stock_quantity")
+    void testHotProductAdd() {
+        // stock_quantity (50) non conta ancora gli order item pendenti: il contatore ne ha solo 4
+        when(hotStockService.isHot(3L)).thenReturn(true);
+        when(hotStockService.getHotAvailableStock(3L)).thenReturn(4L);
+        when(cartJdbcRepository.findCartProducts(anyCollection())).thenReturn(Map.of(3L,
+                new CartProductRow(3L, "Chiavetta", "SKU3", null, PRICE, 50, true)));
+
+        assertThrows(InsufficientStockException.class,
+                () -> cartService.addToCart(7L, new AddToCartDTO(3L, 5)));
+
+        verify(cartJdbcRepository, never()).addLine(anyLong(), anyLong(), anyInt());
+    }
+}
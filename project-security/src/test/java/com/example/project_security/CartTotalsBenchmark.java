@@ -0,0 +1,108 @@
+package com.example.project_security;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+import com.example.project_security.model.Cart;
+import com.example.project_security.model.CartItem;
+import com.example.project_security.model.Money;
+import com.example.project_security.model.Order;
+import com.example.project_security.model.OrderItem;
+import com.example.project_security.service.CartSnapshot;
+
+/**
+ * Micro-benchmark dei totali di un carrello e di un ordine da 100 righe: somma in
+ * BigDecimal (il calcolo precedente) contro i metodi delle entità e di CartSnapshot
+ * che ora sommano in centesimi con Money.
+ *
+ * Non è un test: si avvia a mano dopo mvn test-compile con
+ * java -cp target/classes:target/test-classes com.example.project_security.CartTotalsBenchmark
+ * e stampa tempo e byte allocati per operazione, misurati sul thread corrente.
+ */
+public class CartTotalsBenchmark {
+
+    private static final int LINES = 100;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+    private static final int OPERATIONS_PER_ROUND = 200_000;
+
+    private static volatile long sink;
+
+    public static void main(String[] args) {
+        List<BigDecimal> prices = new ArrayList<>();
+        List<Integer> quantities = new ArrayList<>();
+        Map<Long, CartSnapshot.Line> lines = new LinkedHashMap<>();
+        Cart cart = new Cart();
+        Order order = new Order();
+        for (int i = 1; i <= LINES; i++) {
+            BigDecimal price = new BigDecimal(i * 37 % 1000 + ".99");
+            int quantity = i % 7 + 1;
+            prices.add(price);
+            quantities.add(quantity);
+            lines.put((long) i, new CartSnapshot.Line((long) i, i, quantity, Money.of(price)));
+            cart.getCartItems().add(CartItem.builder().quantity(quantity).unitPrice(price).build());
+            order.getOrderItems().add(OrderItem.builder().quantity(quantity).unitPrice(price).build());
+        }
+        CartSnapshot snapshot = new CartSnapshot(1L, 1L, 1, lines);
+
+        run("bigdecimal", ignored -> {
+            BigDecimal total = BigDecimal.ZERO;
+            for (int i = 0; i < LINES; i++) {
+                total = total.add(prices.get(i).multiply(BigDecimal.valueOf(quantities.get(i))));
+            }
+            return total.unscaledValue().longValue();
+        });
+        run("Cart.getTotalPrice", ignored -> cart.getTotalPrice().scale());
+        run("CartItem.getSubtotal", ignored -> {
+            long scale = 0;
+            for (CartItem item : cart.getCartItems()) {
+                scale += item.getSubtotal().scale();
+            }
+            return scale;
+        });
+        run("OrderItem.getSubtotal", ignored -> {
+            long scale = 0;
+            for (OrderItem item : order.getOrderItems()) {
+                scale += item.getSubtotal().scale();
+            }
+            return scale;
+        });
+        run("Order.calculateTotalPrice", ignored -> {
+            order.calculateTotalPrice();
+            return order.getTotalPrice().scale();
+        });
+        run("CartSnapshot", ignored -> snapshot.totalPrice().cents());
+    }
+
+    private static void run(String name, ToLongFunction<Void> operation) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            repeat(operation);
+        }
+        long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            repeat(operation);
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+        long operations = (long) ROUNDS * OPERATIONS_PER_ROUND;
+        System.out.printf("%-26s %10.1f ns/op %10.1f B/op%n", name,
+                (double) elapsed / operations, (double) bytes / operations);
+    }
+
+    private static void repeat(ToLongFunction<Void> operation) {
+        long result = 0;
+        for (int i = 0; i < OPERATIONS_PER_ROUND; i++) {
+            result += operation.applyAsLong(null);
+        }
+        sink = result;
+    }
+}
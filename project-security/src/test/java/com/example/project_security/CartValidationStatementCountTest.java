@@ -0,0 +1,105 @@
+package com.example.project_security;
+
+import static com.example.project_security.JdbcRecorder.row;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.example.project_security.JdbcRecorder.Execution;
+import com.example.project_security.dto.CartDTO;
+import com.example.project_security.repository.CartJdbcRepository;
+import com.example.project_security.service.CartCountCache;
+import com.example.project_security.service.CartService;
+import com.example.project_security.service.DatabaseCartStore;
+import com.example.project_security.service.HotStockService;
+
+/**
+ * Statement JDBC eseguiti dalla validazione di un carrello da 50 righe, contati sul
+ * DataSource: un batch conta come un solo statement, qualunque sia il numero di righe
+ */
+class CartValidationStatementCountTest {
+
+    private static final int LINES = 50;
+    private static final BigDecimal PRICE = new BigDecimal("9.90");
+    private static final String FIND_LINES = "SELECT c.id AS cart_id, c.version, ci.id AS item_id, ci.product_id";
+    private static final String FIND_PRODUCTS = "FROM products p WHERE p.id IN";
+
+    private JdbcRecorder recorder;
+    private CartService cartService;
+
+    @BeforeEach
+    void setUp() {
+        recorder = new JdbcRecorder();
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (long productId = 1; productId <= LINES; productId++) {
+            rows.add(row("cart_id", 100L, "version", 3L, "item_id", 1000L + productId, "product_id", productId,
+                    "quantity", 2, "unit_price", PRICE));
+        }
+        recorder.returning(FIND_LINES, rows);
+        CartJdbcRepository cartJdbcRepository = new CartJdbcRepository(recorder.jdbcTemplate(),
+                recorder.namedParameterJdbcTemplate());
+        cartService = new CartService(cartJdbcRepository,
+                new DatabaseCartStore(cartJdbcRepository), new CartCountCache(100), mock(HotStockService.class));
+    }
+
+    @Test
+    @DisplayName("Should validate and render an unchanged 50-line cart with two JDBC statements")
+    void testUnchangedCart() {
+        recorder.returning(FIND_PRODUCTS, products(PRICE, 10, LINES));
+
+        CartDTO cart = cartService.validateCart(7L);
+
+        assertEquals(LINES, cart.getItems().size());
+        assertEquals(2, recorder.statements());
+    }
+
+    @Test
+    @DisplayName("Should reprice a 50-line cart with two reads and one JDBC batch per write")
+    void testRepricedCart() {
+        recorder.returning(FIND_PRODUCTS, products(new BigDecimal("7.50"), 1, LINES));
+
+        CartDTO cart = cartService.validateCart(7L);
+
+        assertEquals(new BigDecimal("375.00"), cart.getTotalPrice());
+        // Lettura del carrello, lettura dei prodotti, batch delle righe e batch della versione
+        assertEquals(4, recorder.statements());
+        Execution upsert = recorder.executions("INSERT INTO cart_items").get(0);
+        assertEquals(LINES, upsert.parameters().size());
+        assertEquals(1, recorder.executions("UPDATE carts SET version").size());
+    }
+
+    @Test
+    @DisplayName("Should remove a line whose product was deleted and leave it out of the totals")
+    void testDeletedProduct() {
+        // Il prodotto 50 non esiste più
+        recorder.returning(FIND_PRODUCTS, products(PRICE, 10, LINES - 1));
+
+        CartDTO cart = cartService.validateCart(7L);
+
+        assertEquals(LINES - 1, cart.getItems().size());
+        assertEquals(2 * (LINES - 1), cart.getTotalItems());
+        assertEquals(PRICE.multiply(BigDecimal.valueOf(2 * (LINES - 1))), cart.getTotalPrice());
+        List<Execution> deletes = recorder.executions("DELETE FROM cart_items");
+        assertEquals(1, deletes.size());
+        assertEquals(List.of(List.of(100L, 50L)), deletes.get(0).parameters());
+        assertTrue(recorder.executions("INSERT INTO cart_items").isEmpty());
+    }
+
+    private static List<Map<String, Object>> products(BigDecimal price, int stock, int count) {
+        List<Map<String, Object>> products = new ArrayList<>();
+        for (long productId = 1; productId <= count; productId++) {
+            products.add(row("product_id", productId, "name", "P" + productId, "sku", "SKU" + productId,
+                    "image_url", null, "price", price, "stock_quantity", stock, "is_active", true));
+        }
+        return products;
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.project_security;
+
+import static com.example.project_security.JdbcRecorder.row;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.example.project_security.JdbcRecorder.Execution;
+import com.example.project_security.dto.OrderDTO;
+import com.example.project_security.dto.request.CreateOrderDTO;
+import com.example.project_security.exception.InsufficientStockException;
+import com.example.project_security.repository.CheckoutJdbcRepository;
+import com.example.project_security.repository.OrderRepository;
+import com.example.project_security.repository.ProductRepository;
+import com.example.project_security.repository.ProductSalesDailyRepository;
+import com.example.project_security.repository.ProductSalesJdbcRepository;
+import com.example.project_security.repository.ProductSalesRepository;
+import com.example.project_security.repository.UtenteRepository;
+import com.example.project_security.service.BestSellerService;
+import com.example.project_security.service.CartService;
+import com.example.project_security.service.CatalogVersionService;
+import com.example.project_security.service.HotStockService;
+import com.example.project_security.service.LowStockWatcher;
+import com.example.project_security.service.OrderService;
+
+/**
+ * Statement JDBC eseguiti dal checkout, contati sul DataSource con i repository reali:
+ * un batch conta come un solo statement, con un insieme di parametri per riga
+ */
+class CheckoutStatementCountTest {
+
+    private static final BigDecimal PRICE = new BigDecimal("2.50");
+    private static final String FIND_CHECKOUT = "FROM utenti u";
+    private static final String DECREMENT_STOCK = "UPDATE products SET stock_quantity = stock_quantity - ?";
+
+    private JdbcRecorder recorder;
+    private LowStockWatcher lowStockWatcher;
+    private OrderService orderService;
+
+    @BeforeEach
+    void setUp() {
+        recorder = new JdbcRecorder();
+        lowStockWatcher = mock(LowStockWatcher.class);
+        BestSellerService bestSellerService = new BestSellerService(mock(ProductSalesRepository.class),
+                mock(ProductSalesDailyRepository.class), new ProductSalesJdbcRepository(recorder.jdbcTemplate()));
+        orderService = new OrderService(mock(OrderRepository.class), mock(UtenteRepository.class),
+                mock(ProductRepository.class), mock(CartService.class), mock(HotStockService.class),
+                lowStockWatcher, bestSellerService, mock(CatalogVersionService.class),
+                new CheckoutJdbcRepository(recorder.jdbcTemplate()));
+    }
+
+    private void cart(int lines) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (long productId = 1; productId <= lines; productId++) {
+            rows.add(line(2, productId, 10, true));
+        }
+        recorder.returning(FIND_CHECKOUT, rows);
+    }
+
+    private static Map<String, Object> line(int quantity, Long productId, int stock, boolean active) {
+        Map<String, Object> line = row("email", "a@b.it", "address", "Via Roma 1", "cart_id", 100L,
+                "quantity", quantity, "product_id", productId, "name", "P" + productId, "sku", "SKU" + productId,
+                "image_url", null, "price", PRICE, "stock_quantity", stock, "is_active", active);
+        if (productId == null) {
+            // Prodotto eliminato: la LEFT JOIN su products restituisce colonne null
+            line.replaceAll((column, value) -> List.of("email", "address", "cart_id", "quantity").contains(column)
+                    ? value : null);
+        }
+        return line;
+    }
+
+    private static CreateOrderDTO request() {
+        CreateOrderDTO request = new CreateOrderDTO();
+        request.setPaymentMethod("CARD");
+        return request;
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 3, 80 })
+    @DisplayName("Should check out any cart size with the same eight JDBC statements")
+    void testFixedStatementCount(int lines) {
+        cart(lines);
+
+        OrderDTO order = orderService.createOrderFromCart(7L, request());
+
+        // Lettura, disattivazione, batch stock, ordine, batch righe,
+        // due batch dei contatori di vendita, DELETE delle righe del carrello
+        List<Execution> executions = recorder.executions();
+        assertEquals(8, executions.size());
+        assertEquals(lines, recorder.executions(DECREMENT_STOCK).get(0).parameters().size());
+        assertEquals(lines, recorder.executions("INSERT INTO order_items").get(0).parameters().size());
+        assertEquals(lines, recorder.executions("INSERT INTO product_sales ").get(0).parameters().size());
+        assertEquals(lines, recorder.executions("INSERT INTO product_sales_daily").get(0).parameters().size());
+        assertEquals(lines, order.getItems().size());
+        assertEquals(PRICE.multiply(BigDecimal.valueOf(2L * lines)), order.getTotalPrice());
+        assertEquals("Via Roma 1", order.getShippingAddress());
+    }
+
+    @Test
+    @DisplayName("Should report the ordered quantity to the low-stock index as a delta, not an absolute stock")
+    void testStockDelta() {
+        // Lo stock letto (10) può essere già superato da checkout concorrenti: conta solo la variazione
+        recorder.returning(FIND_CHECKOUT, List.of(line(2, 1L, 10, true)));
+
+        orderService.createOrderFromCart(7L, request());
+
+        verify(lowStockWatcher).adjustStock(1L, -2);
+        verify(lowStockWatcher, never()).updateStock(anyLong(), anyInt());
+    }
+
+    @Test
+    @DisplayName("Should fail the whole checkout when a conditional stock update matches nothing")
+    void testInsufficientStock() {
+        cart(3);
+        recorder.updating(DECREMENT_STOCK, parameters -> parameters.get(2).equals(2L) ? 0 : 1);
+
+        assertThrows(InsufficientStockException.class, () -> orderService.createOrderFromCart(7L, request()));
+        assertTrue(recorder.executions("INSERT INTO orders").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should drop unavailable and deleted products and cap quantities to the stock read at checkout")
+    void testValidation() {
+        recorder.returning(FIND_CHECKOUT, List.of(
+                line(5, 1L, 3, true),
+                line(1, 2L, 10, false),
+                line(1, null, 0, false)));
+
+        orderService.createOrderFromCart(7L, request());
+
+        Execution decrement = recorder.executions(DECREMENT_STOCK).get(0);
+        assertEquals(1, decrement.parameters().size());
+        List<Object> parameters = decrement.parameters().get(0);
+        assertEquals(List.of(3, 1L, 3), List.of(parameters.get(0), parameters.get(2), parameters.get(3)));
+        Execution order = recorder.executions("INSERT INTO orders").get(0);
+        assertEquals(new BigDecimal("7.50"), order.parameters().get(0).get(3));
+        assertEquals(List.of(List.of(100L)), recorder.executions("DELETE FROM cart_items").get(0).parameters());
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.project_security;
+
+import static com.example.project_security.JdbcRecorder.row;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.example.project_security.JdbcRecorder.Execution;
+import com.example.project_security.repository.CartJdbcRepository;
+import com.example.project_security.service.DatabaseCartStore;
+
+class DatabaseCartStoreTest {
+
+    private static final String FIND_CART_ID = "SELECT MAX(id) FROM carts";
+
+    private JdbcRecorder recorder;
+    private DatabaseCartStore store;
+
+    @BeforeEach
+    void setUp() {
+        recorder = new JdbcRecorder();
+        store = new DatabaseCartStore(new CartJdbcRepository(recorder.jdbcTemplate(),
+                recorder.namedParameterJdbcTemplate()));
+    }
+
+    @Test
+    @DisplayName("Should add a line and bump the version of that cart by primary key")
+    void testTryAdd() {
+        recorder.returning(FIND_CART_ID, List.of(row("MAX(id)", 100L)));
+
+        assertTrue(store.tryAdd(7L, 3L, 2));
+
+        List<Execution> executions = recorder.executions();
+        assertEquals(3, executions.size());
+        Execution add = executions.get(1);
+        assertTrue(add.sql().contains("AS new ON DUPLICATE KEY UPDATE"));
+        assertFalse(add.sql().contains("VALUES("));
+        assertEquals(List.of(2, 3L, 100L, 2), add.parameters().get(0));
+        Execution bump = executions.get(2);
+        assertTrue(bump.sql().endsWith("WHERE id = ?"));
+        assertEquals(100L, bump.parameters().get(0).get(1));
+    }
+
+    @Test
+    @DisplayName("Should fall back to the full path without writing when the user has no active cart")
+    void testTryAddWithoutCart() {
+        recorder.returning(FIND_CART_ID, List.of(row("MAX(id)", null)));
+
+        assertFalse(store.tryAdd(7L, 3L, 2));
+        assertEquals(1, recorder.statements());
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.project_security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.example.project_security.service.FuzzyTermIndex;
+
+class FuzzyTermIndexTest {
+
+    @Test
+    @DisplayName("Should find misspelled names within two edits")
+    void testSearchWithTypos() {
+        FuzzyTermIndex index = new FuzzyTermIndex();
+        index.put(1, "YubiKey 5 NFC");
+        index.put(2, "Ledger Nano X");
+        index.put(3, "Trezor Model T");
+
+        assertEquals(List.of(1L), index.search("yubikye"));
+        assertEquals(List.of(2L), index.search("ledgr"));
+        assertEquals(List.of(2L), index.search("ledgr nano"));
+        assertTrue(index.search("ledgr trezor").isEmpty());
+        assertTrue(index.search("completamente diverso").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should rank closer matches first and forget removed products")
+    void testRankingAndRemoval() {
+        FuzzyTermIndex index = new FuzzyTermIndex();
+        index.put(1, "Monitor curvo");
+        index.put(2, "Monitors pack");
+
+        assertEquals(List.of(1L, 2L), index.search("monitor"));
+
+        index.remove(1);
+        assertEquals(List.of(2L), index.search("monitor"));
+        assertEquals(2, index.vocabularySize());
+    }
+}
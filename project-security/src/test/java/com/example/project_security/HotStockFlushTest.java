@@ -0,0 +1,155 @@
+package com.example.project_security;
+
+import static com.example.project_security.JdbcRecorder.row;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.project_security.JdbcRecorder.Execution;
+import com.example.project_security.model.Product;
+import com.example.project_security.repository.ProductRepository;
+import com.example.project_security.repository.ProductStockJdbcRepository;
+import com.example.project_security.service.HotStockService;
+import com.example.project_security.service.LowStockWatcher;
+
+class HotStockFlushTest {
+
+    private static final String CLAIM = "FROM order_items WHERE stock_pending = true";
+    private static final String DECREMENT = "UPDATE products SET stock_quantity = stock_quantity - ?";
+    private static final String MARK_APPLIED = "UPDATE order_items SET stock_pending = false";
+    private static final String LEGACY_COLUMN = "information_schema.columns";
+
+    private JdbcRecorder recorder;
+    private ProductRepository productRepository;
+    private HotStockService hotStockService;
+
+    @BeforeEach
+    void setUp() {
+        recorder = new JdbcRecorder();
+        recorder.returning(LEGACY_COLUMN, List.of(row("COUNT(*)", 0)));
+        ProductStockJdbcRepository repository = new ProductStockJdbcRepository(recorder.jdbcTemplate(),
+                recorder.namedParameterJdbcTemplate());
+        productRepository = mock(ProductRepository.class);
+        hotStockService = new HotStockService(productRepository, repository, mock(LowStockWatcher.class));
+        ReflectionTestUtils.setField(hotStockService, "drainAfterDisableMs", 60_000L);
+    }
+
+    private void start() {
+        hotStockService.loadHotProducts();
+        recorder.clear();
+    }
+
+    /**
+     * Quantità e prodotto di ogni UPDATE del batch, senza il timestamp
+     */
+    private static List<List<Object>> quantityAndProduct(Execution execution) {
+        return execution.parameters().stream()
+                .map(parameters -> List.of(parameters.get(0), parameters.get(2)))
+                .toList();
+    }
+
+    @Test
+    @DisplayName("Should apply an order item that commits after a higher id was already flushed")
+    void testLateCommit() {
+        // L'item 41 è in una transazione ancora aperta al primo flush (SKIP LOCKED lo salta),
+        // l'item 42 ha già fatto commit: il 41 arriva al flush successivo
+        start();
+        recorder.returning(CLAIM,
+                List.of(row("id", 42L, "product_id", 7L, "quantity", 2)),
+                List.of(row("id", 41L, "product_id", 7L, "quantity", 3)),
+                List.of());
+
+        hotStockService.flush();
+        hotStockService.flush();
+        hotStockService.flush();
+
+        List<Execution> decrements = recorder.executions(DECREMENT);
+        assertEquals(2, decrements.size());
+        assertEquals(List.of(List.of(2, 7L)), quantityAndProduct(decrements.get(0)));
+        assertEquals(List.of(List.of(3, 7L)), quantityAndProduct(decrements.get(1)));
+        List<Execution> marks = recorder.executions(MARK_APPLIED);
+        assertEquals(List.of(List.of(42L)), marks.get(0).parameters());
+        assertEquals(List.of(List.of(41L)), marks.get(1).parameters());
+        assertEquals(3, recorder.executions(CLAIM).size());
+    }
+
+    @Test
+    @DisplayName("Should apply pending items of several products with one stock batch and one mark")
+    void testBatchedFlush() {
+        start();
+        recorder.returning(CLAIM,
+                List.of(row("id", 10L, "product_id", 7L, "quantity", 2),
+                        row("id", 11L, "product_id", 8L, "quantity", 1),
+                        row("id", 12L, "product_id", 7L, "quantity", 4)),
+                List.of());
+
+        hotStockService.flush();
+
+        List<Execution> decrements = recorder.executions(DECREMENT);
+        assertEquals(1, decrements.size());
+        assertEquals(List.of(List.of(6, 7L), List.of(1, 8L)), quantityAndProduct(decrements.get(0)));
+        // Anche il flush aggiorna updated_at, per le esportazioni incrementali
+        assertTrue(decrements.get(0).sql().contains("updated_at = ?"));
+        assertEquals(List.of(List.of(10L, 11L, 12L)), recorder.executions(MARK_APPLIED).get(0).parameters());
+    }
+
+    @Test
+    @DisplayName("Should mark committed pending items as applied when the stock is overwritten")
+    void testOverwrite() {
+        recorder.returning(CLAIM, List.of(row("id", 42L, "product_id", 7L, "quantity", 2)));
+
+        assertEquals(100, hotStockService.overwriteStock(7L, 100));
+
+        assertEquals(List.of(List.of(42L)), recorder.executions(MARK_APPLIED).get(0).parameters());
+        assertEquals(0, recorder.executions(DECREMENT).size());
+        assertEquals(100, recorder.executions("SET stock_quantity = ?, updated_at").get(0).parameters().get(0).get(0));
+    }
+
+    @Test
+    @DisplayName("Should not claim order items when no product is hot and the drain window is over")
+    void testIdleFlush() {
+        ReflectionTestUtils.setField(hotStockService, "drainAfterDisableMs", -1L);
+        start();
+
+        hotStockService.flush();
+
+        assertEquals(0, recorder.statements());
+    }
+
+    @Test
+    @DisplayName("Should keep claiming order items while a product is hot")
+    void testFlushWithHotProduct() {
+        ReflectionTestUtils.setField(hotStockService, "drainAfterDisableMs", -1L);
+        Product product = Product.builder().id(7L).build();
+        when(productRepository.findByIsHotTrue()).thenReturn(List.of(product));
+        recorder.returning("SELECT p.stock_quantity", List.of(row("available", 50L)));
+        start();
+        recorder.returning(CLAIM, List.of());
+
+        hotStockService.flush();
+
+        assertEquals(1, recorder.executions(CLAIM).size());
+        assertEquals(60, hotStockService.restock(7L, 10));
+    }
+
+    @Test
+    @DisplayName("Should turn the legacy watermark into pending order items once and drop the column")
+    void testLegacyWatermarkMigration() {
+        recorder.returning(LEGACY_COLUMN, List.of(row("COUNT(*)", 1)));
+
+        hotStockService.loadHotProducts();
+
+        List<Execution> executions = recorder.executions();
+        assertTrue(executions.get(1).sql().contains("oi.id > p.hot_stock_watermark"));
+        assertTrue(executions.get(2).sql().contains("SET hot_stock_watermark = NULL"));
+        assertEquals("ALTER TABLE products DROP COLUMN hot_stock_watermark", executions.get(3).sql());
+    }
+}
@@ -0,0 +1,326 @@
+package com.example.project_security;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ToIntFunction;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+/**
+ * DataSource di test che registra gli statement eseguiti a livello JDBC.
+ *
+ * Ogni executeQuery, executeUpdate o executeBatch è un'esecuzione, cioè un
+ * invio al database: un batch conta una volta sola, con tutti i suoi insiemi di
+ * parametri. Le query restituiscono le righe preparate con returning (per
+ * frammento di SQL, in ordine), gli update il conteggio di updating (1 se non
+ * indicato) e le insert chiavi generate crescenti.
+ * Il codice sotto test usa JdbcTemplate e repository reali: cambia solo il driver.
+ */
+final class JdbcRecorder {
+
+    /**
+     * Statement eseguito: SQL e insiemi di parametri (più di uno per un batch)
+     */
+    record Execution(String sql, List<List<Object>> parameters) {
+    }
+
+    private final List<Execution> executions = new ArrayList<>();
+    private final Map<String, Deque<List<Map<String, Object>>>> queryResults = new LinkedHashMap<>();
+    private final Map<String, ToIntFunction<List<Object>>> updateCounts = new LinkedHashMap<>();
+    private long nextKey = 1000;
+
+    /**
+     * Riga di un risultato: coppie nome colonna, valore
+     */
+    static Map<String, Object> row(Object... columnsAndValues) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (int i = 0; i < columnsAndValues.length; i += 2) {
+            row.put((String) columnsAndValues[i], columnsAndValues[i + 1]);
+        }
+        return row;
+    }
+
+    /**
+     * Risultati delle query che contengono il frammento, uno per esecuzione;
+     * l'ultimo si ripete per le esecuzioni successive
+     */
+    @SafeVarargs
+    final JdbcRecorder returning(String sqlFragment, List<Map<String, Object>>... results) {
+        queryResults.put(sqlFragment, new ArrayDeque<>(List.of(results)));
+        return this;
+    }
+
+    /**
+     * Righe aggiornate dagli statement che contengono il frammento, in funzione dei parametri
+     */
+    JdbcRecorder updating(String sqlFragment, ToIntFunction<List<Object>> count) {
+        updateCounts.put(sqlFragment, count);
+        return this;
+    }
+
+    DataSource dataSource() {
+        return proxy(DataSource.class, (method, args) -> switch (method.getName()) {
+            case "getConnection" -> connection();
+            default -> defaultValue(method);
+        });
+    }
+
+    JdbcTemplate jdbcTemplate() {
+        return new JdbcTemplate(dataSource());
+    }
+
+    NamedParameterJdbcTemplate namedParameterJdbcTemplate() {
+        return new NamedParameterJdbcTemplate(jdbcTemplate());
+    }
+
+    List<Execution> executions() {
+        return List.copyOf(executions);
+    }
+
+    /**
+     * Esecuzioni il cui SQL contiene il frammento
+     */
+    List<Execution> executions(String sqlFragment) {
+        return executions.stream().filter(execution -> execution.sql().contains(sqlFragment)).toList();
+    }
+
+    int statements() {
+        return executions.size();
+    }
+
+    void clear() {
+        executions.clear();
+    }
+
+    private Connection connection() {
+        DatabaseMetaData metaData = proxy(DatabaseMetaData.class, (method, args) -> switch (method.getName()) {
+            case "supportsBatchUpdates", "supportsGetGeneratedKeys" -> true;
+            case "getDatabaseProductName" -> "MySQL";
+            default -> defaultValue(method);
+        });
+        Connection[] connection = new Connection[1];
+        connection[0] = proxy(Connection.class, (method, args) -> switch (method.getName()) {
+            case "prepareStatement" -> statement((String) args[0], connection[0]);
+            case "createStatement" -> plainStatement(connection[0]);
+            case "getMetaData" -> metaData;
+            case "getAutoCommit" -> true;
+            default -> defaultValue(method);
+        });
+        return connection[0];
+    }
+
+    private PreparedStatement statement(String sql, Connection connection) {
+        Map<Integer, Object> current = new TreeMap<>();
+        List<List<Object>> batch = new ArrayList<>();
+        List<Map<String, Object>> generatedKeys = new ArrayList<>();
+        return proxy(PreparedStatement.class, (method, args) -> {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                current.put(index, name.equals("setNull") ? null : args[1]);
+                return null;
+            }
+            switch (name) {
+                case "addBatch":
+                    batch.add(new ArrayList<>(current.values()));
+                    current.clear();
+                    return null;
+                case "executeBatch": {
+                    List<List<Object>> parameters = List.copyOf(batch);
+                    batch.clear();
+                    executions.add(new Execution(sql, parameters));
+                    int[] counts = new int[parameters.size()];
+                    for (int i = 0; i < counts.length; i++) {
+                        counts[i] = updateCount(sql, parameters.get(i));
+                        generateKey(sql, generatedKeys);
+                    }
+                    return counts;
+                }
+                case "executeUpdate": {
+                    List<Object> parameters = new ArrayList<>(current.values());
+                    executions.add(new Execution(sql, List.of(parameters)));
+                    generateKey(sql, generatedKeys);
+                    return updateCount(sql, parameters);
+                }
+                case "executeQuery":
+                    executions.add(new Execution(sql, List.of(new ArrayList<>(current.values()))));
+                    return resultSet(queryResult(sql));
+                case "getGeneratedKeys":
+                    return resultSet(List.copyOf(generatedKeys));
+                case "getConnection":
+                    return connection;
+                case "getUpdateCount":
+                    return -1;
+                case "getParameterMetaData":
+                    return proxy(ParameterMetaData.class, (m, a) -> m.getName().equals("getParameterType")
+                            ? Types.NULL : defaultValue(m));
+                default:
+                    return defaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * Statement senza parametri (JdbcTemplate lo usa per SQL senza argomenti)
+     */
+    private Statement plainStatement(Connection connection) {
+        return proxy(Statement.class, (method, args) -> switch (method.getName()) {
+            case "executeQuery" -> {
+                executions.add(new Execution((String) args[0], List.of(List.of())));
+                yield resultSet(queryResult((String) args[0]));
+            }
+            case "executeUpdate" -> {
+                executions.add(new Execution((String) args[0], List.of(List.of())));
+                yield updateCount((String) args[0], List.of());
+            }
+            case "execute" -> {
+                executions.add(new Execution((String) args[0], List.of(List.of())));
+                yield false;
+            }
+            case "getConnection" -> connection;
+            case "getUpdateCount" -> -1;
+            default -> defaultValue(method);
+        });
+    }
+
+    private void generateKey(String sql, List<Map<String, Object>> generatedKeys) {
+        if (sql.trim().toUpperCase().startsWith("INSERT")) {
+            generatedKeys.add(row("GENERATED_KEY", nextKey++));
+        }
+    }
+
+    private int updateCount(String sql, List<Object> parameters) {
+        return updateCounts.entrySet().stream()
+                .filter(entry -> sql.contains(entry.getKey()))
+                .findFirst()
+                .map(entry -> entry.getValue().applyAsInt(parameters))
+                .orElse(1);
+    }
+
+    private List<Map<String, Object>> queryResult(String sql) {
+        return queryResults.entrySet().stream()
+                .filter(entry -> sql.contains(entry.getKey()))
+                .findFirst()
+                .map(entry -> entry.getValue().size() > 1 ? entry.getValue().poll() : entry.getValue().peek())
+                .orElse(List.of());
+    }
+
+    private static ResultSet resultSet(List<Map<String, Object>> rows) {
+        int[] position = { -1 };
+        boolean[] wasNull = { false };
+        List<String> columns = rows.isEmpty() ? List.of() : new ArrayList<>(rows.get(0).keySet());
+        ResultSetMetaData metaData = proxy(ResultSetMetaData.class, (method, args) -> switch (method.getName()) {
+            case "getColumnCount" -> columns.size();
+            case "getColumnLabel", "getColumnName" -> columns.get((Integer) args[0] - 1);
+            default -> defaultValue(method);
+        });
+        return proxy(ResultSet.class, (method, args) -> {
+            String name = method.getName();
+            switch (name) {
+                case "next":
+                    return ++position[0] < rows.size();
+                case "wasNull":
+                    return wasNull[0];
+                case "getMetaData":
+                    return metaData;
+                default:
+                    break;
+            }
+            if (!name.startsWith("get") || args == null || args.length == 0) {
+                return defaultValue(method);
+            }
+            Map<String, Object> row = rows.get(position[0]);
+            Object value = args[0] instanceof Integer index ? row.get(columns.get(index - 1)) : row.get(args[0]);
+            wasNull[0] = value == null;
+            Class<?> type = args.length > 1 && args[1] instanceof Class<?> requested ? requested
+                    : method.getReturnType();
+            return convert(value, type);
+        });
+    }
+
+    private static Object convert(Object value, Class<?> type) {
+        if (value == null) {
+            return type.isPrimitive() ? defaultValue(type) : null;
+        }
+        if (type == long.class || type == Long.class) {
+            return ((Number) value).longValue();
+        }
+        if (type == int.class || type == Integer.class) {
+            return ((Number) value).intValue();
+        }
+        if (type == boolean.class || type == Boolean.class) {
+            return value instanceof Boolean bool ? bool : ((Number) value).intValue() != 0;
+        }
+        if (type == BigDecimal.class) {
+            return value instanceof BigDecimal decimal ? decimal : new BigDecimal(value.toString());
+        }
+        if (type == String.class) {
+            return value.toString();
+        }
+        if (type == Timestamp.class) {
+            return value;
+        }
+        return value;
+    }
+
+    private static Object defaultValue(Method method) {
+        return defaultValue(method.getReturnType());
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    private interface Handler {
+        Object handle(Method method, Object[] args) throws Exception;
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        InvocationHandler invocationHandler = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> type.getSimpleName() + "@recorder";
+                };
+            }
+            try {
+                return handler.handle(method, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        };
+        return type.cast(Proxy.newProxyInstance(JdbcRecorder.class.getClassLoader(), new Class<?>[] { type },
+                invocationHandler));
+    }
+}
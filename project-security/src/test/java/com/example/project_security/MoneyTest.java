@@ -0,0 +1,76 @@
+package com.example.project_security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.example.project_security.model.Cart;
+import com.example.project_security.model.CartItem;
+import com.example.project_security.model.Money;
+import com.example.project_security.model.Order;
+import com.example.project_security.model.OrderItem;
+import com.example.project_security.service.CartSnapshot;
+
+class MoneyTest {
+
+    @Test
+    @DisplayName("Should convert to and from BigDecimal at scale 2")
+    void testConversion() {
+        assertEquals(990, Money.of(new BigDecimal("9.90")).cents());
+        assertEquals(990, Money.of(new BigDecimal("9.9")).cents());
+        // Arrotondamento come una colonna DECIMAL(10,2)
+        assertEquals(991, Money.of(new BigDecimal("9.905")).cents());
+        assertEquals(new BigDecimal("9.90"), new Money(990).toBigDecimal());
+        assertEquals(new BigDecimal("-0.05"), new Money(-5).toBigDecimal());
+        assertEquals(0, Money.centsOf(null));
+    }
+
+    @Test
+    @DisplayName("Should fail on overflow instead of wrapping")
+    void testOverflow() {
+        assertThrows(ArithmeticException.class, () -> new Money(Long.MAX_VALUE).times(2));
+        assertThrows(ArithmeticException.class, () -> new Money(Long.MAX_VALUE).plus(new Money(1)));
+    }
+
+    @Test
+    @DisplayName("Should compute the same totals as BigDecimal arithmetic")
+    void testTotals() {
+        Cart cart = new Cart();
+        Order order = new Order();
+        Map<Long, CartSnapshot.Line> lines = new LinkedHashMap<>();
+        BigDecimal expected = BigDecimal.ZERO;
+        for (int i = 1; i <= 100; i++) {
+            BigDecimal price = new BigDecimal(i * 37 % 1000 + ".99");
+            int quantity = i % 7 + 1;
+            expected = expected.add(price.multiply(BigDecimal.valueOf(quantity)));
+
+            cart.getCartItems().add(CartItem.builder().quantity(quantity).unitPrice(price).build());
+            order.getOrderItems().add(OrderItem.builder().quantity(quantity).unitPrice(price).build());
+            lines.put((long) i, new CartSnapshot.Line(null, i, quantity, Money.of(price)));
+        }
+        order.calculateTotalPrice();
+
+        assertEquals(expected, cart.getTotalPrice());
+        assertEquals(expected, order.getTotalPrice());
+        assertEquals(expected, new CartSnapshot(1L, 1L, 1, lines).totalPrice().toBigDecimal());
+    }
+
+    @Test
+    @DisplayName("Should subtract the discount from the order item subtotal")
+    void testDiscount() {
+        OrderItem item = OrderItem.builder()
+                .quantity(3)
+                .unitPrice(new BigDecimal("4.50"))
+                .discountAmount(new BigDecimal("1.25"))
+                .build();
+
+        assertEquals(new BigDecimal("12.25"), item.getSubtotal());
+        assertEquals(new BigDecimal("13.50"), item.getSubtotalBeforeDiscount());
+    }
+}
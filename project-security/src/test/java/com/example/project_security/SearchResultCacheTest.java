@@ -0,0 +1,93 @@
+package com.example.project_security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.example.project_security.service.CatalogVersionService;
+import com.example.project_security.service.HotStockService;
+import com.example.project_security.service.SearchResultCache;
+
+class SearchResultCacheTest {
+
+    @Test
+    @DisplayName("Should collapse concurrent misses on the same key into one load")
+    void testSingleFlight() throws Exception {
+        SearchResultCache cache = new SearchResultCache(() -> 0L, 100, Duration.ofMinutes(1));
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(executor.submit(() -> cache.get(SearchResultCache.Key.of("keyword", "VPN", 0, 20), () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "risultati";
+            })));
+        }
+        loading.await();
+        Thread.sleep(100);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("risultati", result.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    @DisplayName("Should normalize keywords and reload after a generation bump")
+    void testNormalizationAndGeneration() {
+        AtomicLong generation = new AtomicLong();
+        SearchResultCache cache = new SearchResultCache(generation::get, 100, Duration.ofMinutes(1));
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get(SearchResultCache.Key.of("keyword", "YubiKey", 0, 20), loads::incrementAndGet);
+        cache.get(SearchResultCache.Key.of("keyword", "  yubikey ", 0, 20), loads::incrementAndGet);
+        assertEquals(1, loads.get());
+
+        generation.incrementAndGet();
+        cache.get(SearchResultCache.Key.of("keyword", "yubikey", 0, 20), loads::incrementAndGet);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    @DisplayName("Should reload cached product pages when the stock of a hot product changes")
+    void testHotStockGeneration() {
+        HotStockService hotStockService = mock(HotStockService.class);
+        when(hotStockService.hotStockFingerprint()).thenReturn(11L, 11L, 12L);
+        SearchResultCache cache = new SearchResultCache(new CatalogVersionService(hotStockService), 100, 30);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get(SearchResultCache.Key.of("keyword", "vpn", 0, 20), loads::incrementAndGet);
+        cache.get(SearchResultCache.Key.of("keyword", "vpn", 0, 20), loads::incrementAndGet);
+        assertEquals(1, loads.get());
+
+        // Una prenotazione sul contatore hot cambia l'ETag delle liste: anche la pagina va ricaricata
+        cache.get(SearchResultCache.Key.of("keyword", "vpn", 0, 20), loads::incrementAndGet);
+        assertEquals(2, loads.get());
+    }
+}
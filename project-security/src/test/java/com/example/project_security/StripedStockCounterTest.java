@@ -0,0 +1,73 @@
+package com.example.project_security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.example.project_security.service.StripedStockCounter;
+
+class StripedStockCounterTest {
+
+    @Test
+    @DisplayName("Should reserve across stripes until stock is exhausted")
+    void testReserveUntilExhausted() {
+        StripedStockCounter counter = new StripedStockCounter(10, 4);
+
+        assertTrue(counter.tryReserve(7));
+        assertEquals(3, counter.available());
+        assertFalse(counter.tryReserve(4));
+        assertTrue(counter.tryReserve(3));
+        assertEquals(0, counter.available());
+
+        counter.release(2);
+        assertTrue(counter.tryReserve(2));
+        assertFalse(counter.tryReserve(1));
+    }
+
+    @Test
+    @DisplayName("Should never oversell under concurrent reservations")
+    void testConcurrentReservationsNeverOversell() throws Exception {
+        int stock = 10_000;
+        int threads = 8;
+        StripedStockCounter counter = new StripedStockCounter(stock, threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                int reserved = 0;
+                for (int i = 0; i < 5_000; i++) {
+                    int quantity = 1 + (i % 3);
+                    if (counter.tryReserve(quantity)) {
+                        reserved += quantity;
+                    }
+                }
+                return reserved;
+            }));
+        }
+        start.countDown();
+
+        int totalReserved = 0;
+        for (Future<Integer> result : results) {
+            totalReserved += result.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(stock, totalReserved + counter.available());
+        assertTrue(totalReserved <= stock);
+    }
+}
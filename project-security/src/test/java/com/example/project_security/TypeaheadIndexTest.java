@@ -0,0 +1,64 @@
+package com.example.project_security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.example.project_security.service.TypeaheadIndex;
+import com.example.project_security.service.TypeaheadIndex.Suggestion;
+
+class TypeaheadIndexTest {
+
+    @Test
+    @DisplayName("Should match any word of the name and the SKU, most popular first")
+    void testSuggestByWordPrefixAndSku() {
+        TypeaheadIndex index = new TypeaheadIndex(5);
+        index.put(new Suggestion(1, "Apple iPhone 15", "APL-IP15", 10));
+        index.put(new Suggestion(2, "iPad Air", "APL-IPAD", 50));
+        index.put(new Suggestion(3, "Cover in pelle", "COV-001", 5));
+
+        assertEquals(List.of(2L, 1L), ids(index.suggest("ip", 10)));
+        assertEquals(List.of(1L), ids(index.suggest("IPHO", 10)));
+        assertEquals(List.of(2L, 1L), ids(index.suggest("apl", 10)));
+        assertEquals(List.of(3L), ids(index.suggest("pèlle", 10)));
+        assertTrue(index.suggest("xyz", 10).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should keep per-node top-N consistent on update and removal")
+    void testIncrementalUpdates() {
+        TypeaheadIndex index = new TypeaheadIndex(2);
+        index.put(new Suggestion(1, "Tastiera meccanica", "K-1", 30));
+        index.put(new Suggestion(2, "Tastiera wireless", "K-2", 20));
+        index.put(new Suggestion(3, "Tappetino", "M-3", 10));
+
+        assertEquals(List.of(1L, 2L), ids(index.suggest("ta", 10)));
+
+        index.remove(1);
+        assertEquals(List.of(2L, 3L), ids(index.suggest("ta", 10)));
+        assertTrue(index.suggest("mecc", 10).isEmpty());
+
+        index.put(new Suggestion(2, "Mouse wireless", "K-2", 20));
+        assertEquals(List.of(3L), ids(index.suggest("ta", 10)));
+        assertEquals(List.of(2L), ids(index.suggest("wire", 10)));
+    }
+
+    @Test
+    @DisplayName("Should resolve prefixes longer than the trie depth")
+    void testPrefixBeyondMaxDepth() {
+        TypeaheadIndex index = new TypeaheadIndex(5);
+        index.put(new Suggestion(1, "Supercalifragilistichespiralidoso edizione rossa", "S-1", 1));
+        index.put(new Suggestion(2, "Supercalifragilistichespiralidoso edizione blu", "S-2", 2));
+
+        assertEquals(List.of(2L, 1L), ids(index.suggest("supercalifragilistic", 10)));
+        assertEquals(List.of(1L), ids(index.suggest("supercalifragilistichespiralidoso edizione r", 10)));
+    }
+
+    private static List<Long> ids(List<Suggestion> suggestions) {
+        return suggestions.stream().map(Suggestion::productId).toList();
+    }
+}
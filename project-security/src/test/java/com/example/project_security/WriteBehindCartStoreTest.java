@@ -0,0 +1,180 @@
+package com.example.project_security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.example.project_security.exception.ResourceNotFoundException;
+import com.example.project_security.model.Money;
+import com.example.project_security.repository.CartJdbcRepository;
+import com.example.project_security.repository.CartJdbcRepository.LineWrite;
+import com.example.project_security.service.CartSnapshot;
+import com.example.project_security.service.WriteBehindCartStore;
+
+class WriteBehindCartStoreTest {
+
+    private static final Money PRICE = Money.of(new BigDecimal("9.90"));
+
+    private CartJdbcRepository cartJdbcRepository;
+    private WriteBehindCartStore store;
+
+    @BeforeEach
+    void setUp() {
+        cartJdbcRepository = mock(CartJdbcRepository.class);
+        when(cartJdbcRepository.findActiveCartLines(anyLong())).thenReturn(List.of());
+        when(cartJdbcRepository.insertCart(anyLong())).thenReturn(100L);
+        when(cartJdbcRepository.findItemIds(anyCollection())).thenReturn(Map.of(100L, Map.of(1L, 11L, 2L, 12L)));
+        store = new WriteBehindCartStore(cartJdbcRepository, mock(PlatformTransactionManager.class), 1000);
+    }
+
+    @Test
+    @DisplayName("Should keep mutations in memory and write them with one batch per flush")
+    @SuppressWarnings("unchecked")
+    void testWriteBehind() {
+        store.update(7L, lines -> lines.put(1L, new CartSnapshot.Line(null, 1L, 1, PRICE)));
+        store.update(7L, lines -> lines.put(2L, new CartSnapshot.Line(null, 2L, 3, PRICE)));
+        store.update(7L, lines -> lines.put(1L, lines.get(1L).withQuantityAndPrice(2, PRICE)));
+
+        verify(cartJdbcRepository, never()).upsertLines(anyList());
+        assertEquals(3, store.get(7L).version());
+        assertNull(store.get(7L).cartId());
+
+        store.flushAll();
+
+        ArgumentCaptor<List<LineWrite>> upserts = ArgumentCaptor.forClass(List.class);
+        verify(cartJdbcRepository, times(1)).insertCart(7L);
+        verify(cartJdbcRepository, times(1)).upsertLines(upserts.capture());
+        assertEquals(List.of(new LineWrite(100L, 1L, 2, PRICE), new LineWrite(100L, 2L, 3, PRICE)),
+                upserts.getValue());
+
+        CartSnapshot flushed = store.get(7L);
+        assertEquals(100L, flushed.cartId());
+        assertEquals(11L, flushed.lines().get(1L).itemId());
+        assertEquals(3, flushed.version());
+
+        // Nessuna modifica dall'ultimo flush: nessuna scrittura
+        store.flushAll();
+        verify(cartJdbcRepository, times(1)).upsertLines(anyList());
+    }
+
+    @Test
+    @DisplayName("Should reprice in-memory lines and write the new price on the next flush")
+    @SuppressWarnings("unchecked")
+    void testPricesChanged() {
+        store.update(7L, lines -> lines.put(1L, new CartSnapshot.Line(null, 1L, 2, PRICE)));
+        store.flushAll();
+
+        Money newPrice = Money.of(new BigDecimal("8.50"));
+        store.pricesChanged(Map.of(1L, newPrice, 3L, newPrice));
+
+        assertEquals(newPrice, store.get(7L).lines().get(1L).unitPrice());
+        assertEquals(2, store.get(7L).version());
+
+        store.flushAll();
+        ArgumentCaptor<List<LineWrite>> upserts = ArgumentCaptor.forClass(List.class);
+        verify(cartJdbcRepository, times(2)).upsertLines(upserts.capture());
+        assertEquals(List.of(new LineWrite(100L, 1L, 2, newPrice)), upserts.getValue());
+    }
+
+    @Test
+    @DisplayName("Should write a mutation made during the checkout flush before evicting the cart")
+    @SuppressWarnings("unchecked")
+    void testFlushAndEvictRace() {
+        store.update(7L, lines -> lines.put(1L, new CartSnapshot.Line(null, 1L, 1, PRICE)));
+        // Una richiesta concorrente modifica il carrello mentre la prima scrittura è in corso
+        doAnswer(invocation -> {
+            store.update(7L, lines -> lines.putIfAbsent(2L, new CartSnapshot.Line(null, 2L, 3, PRICE)));
+            return null;
+        }).when(cartJdbcRepository).upsertLines(anyList());
+
+        store.flushAndEvict(7L);
+
+        ArgumentCaptor<List<LineWrite>> upserts = ArgumentCaptor.forClass(List.class);
+        verify(cartJdbcRepository, times(2)).upsertLines(upserts.capture());
+        assertEquals(List.of(new LineWrite(100L, 2L, 3, PRICE)), upserts.getAllValues().get(1));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    @DisplayName("Should drop an expired cart unless it changed after the sweep read it")
+    @SuppressWarnings("unchecked")
+    void testCartExpired() {
+        store.update(7L, lines -> lines.put(1L, new CartSnapshot.Line(null, 1L, 1, PRICE)));
+        store.update(8L, lines -> lines.put(1L, new CartSnapshot.Line(null, 1L, 1, PRICE)));
+        store.flushAll();
+        when(cartJdbcRepository.insertCart(8L)).thenReturn(200L);
+
+        // Il carrello di 7 è ancora quello letto dal job: si scarta
+        store.cartExpired(7L, 100L, 1);
+        // Quello di 8 è cambiato dopo la lettura: la modifica finisce in un carrello nuovo
+        store.update(8L, lines -> lines.put(2L, new CartSnapshot.Line(null, 2L, 2, PRICE)));
+        store.cartExpired(8L, 100L, 1);
+
+        assertEquals(1, store.size());
+        assertNull(store.get(8L).cartId());
+        store.flushAll();
+
+        ArgumentCaptor<List<LineWrite>> upserts = ArgumentCaptor.forClass(List.class);
+        verify(cartJdbcRepository, times(2)).upsertLines(upserts.capture());
+        assertEquals(List.of(new LineWrite(200L, 1L, 1, PRICE), new LineWrite(200L, 2L, 2, PRICE)),
+                upserts.getValue());
+        assertEquals(200L, store.get(8L).cartId());
+    }
+
+    @Test
+    @DisplayName("Should leave the cart untouched when a mutation fails")
+    void testFailedMutation() {
+        store.update(7L, lines -> lines.put(1L, new CartSnapshot.Line(null, 1L, 1, PRICE)));
+
+        assertThrows(IllegalStateException.class, () -> store.update(7L, lines -> {
+            lines.clear();
+            throw new IllegalStateException("stock");
+        }));
+
+        assertEquals(1, store.get(7L).lines().size());
+        assertEquals(1, store.get(7L).version());
+        verify(cartJdbcRepository, never()).deleteLines(any());
+    }
+
+    @Test
+    @DisplayName("Should write the other carts one by one and drop the cart of a deleted user when a batch fails")
+    @SuppressWarnings("unchecked")
+    void testBatchFailureFallback() {
+        when(cartJdbcRepository.insertCart(8L)).thenThrow(new ResourceNotFoundException("Utente non trovato con ID: 8"));
+        store.update(7L, lines -> lines.put(1L, new CartSnapshot.Line(null, 1L, 1, PRICE)));
+        store.update(8L, lines -> lines.put(2L, new CartSnapshot.Line(null, 2L, 1, PRICE)));
+
+        store.flushAll();
+
+        // Il lotto fallisce sull'utente eliminato; il carrello dell'utente 7 viene scritto da solo
+        ArgumentCaptor<List<LineWrite>> upserts = ArgumentCaptor.forClass(List.class);
+        verify(cartJdbcRepository, times(1)).upsertLines(upserts.capture());
+        assertEquals(List.of(new LineWrite(100L, 1L, 1, PRICE)), upserts.getValue());
+        assertEquals(1, store.size());
+
+        // Al ciclo successivo non resta nulla da scrivere
+        store.flushAll();
+        verify(cartJdbcRepository, times(1)).upsertLines(anyList());
+        verify(cartJdbcRepository, times(2)).insertCart(8L);
+    }
+}